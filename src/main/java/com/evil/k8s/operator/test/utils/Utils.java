@@ -8,6 +8,14 @@ public class Utils {
     public static final String TCP = "TCP";
     public static final int redisPort = 6379;
 
+    /**
+     * API payloads and conversions between models, the API server speaks JSON.
+     */
+    public static final ObjectMapper JSON_MAPPER = new ObjectMapper();
+
+    /**
+     * Only the descriptor files inside the RateLimiter ConfigMap.
+     */
     public static final ObjectMapper YAML_MAPPER = new ObjectMapper(new YAMLFactory());
 
 
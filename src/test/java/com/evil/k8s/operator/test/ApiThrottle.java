@@ -0,0 +1,269 @@
+package com.evil.k8s.operator.test;
+
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.Request;
+import okhttp3.Response;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Client-side QPS limit of the requests to the API server, shared by all the requesters of a run: a token bucket
+ * for reads and one for writes, so that scenarios scaled to many objects queue up here instead of being throttled
+ * by API Priority and Fairness. A 429 of the server is retried after its {@code Retry-After}, and holds back every
+ * request of the same verbs until then.
+ * <p>
+ * The limit applies to the client of a {@link K8sRequester} through an {@link Interceptor}, which counts the
+ * requests and the time the callers spent waiting for their turn.
+ */
+@Slf4j
+public class ApiThrottle {
+
+    public static final String ENABLED_PROPERTY = "k8s.api.throttle.enabled";
+    public static final String READ_QPS_PROPERTY = "k8s.api.throttle.read.qps";
+    public static final String READ_BURST_PROPERTY = "k8s.api.throttle.read.burst";
+    public static final String WRITE_QPS_PROPERTY = "k8s.api.throttle.write.qps";
+    public static final String WRITE_BURST_PROPERTY = "k8s.api.throttle.write.burst";
+    public static final String RETRIES_PROPERTY = "k8s.api.throttle.retries";
+
+    /**
+     * Wait after a 429 without a {@code Retry-After}.
+     */
+    private static final Duration DEFAULT_RETRY_AFTER = Duration.ofSeconds(1);
+    private static final Duration MAX_RETRY_AFTER = Duration.ofMinutes(1);
+
+    private static volatile ApiThrottle shared;
+
+    private final TokenBucket[] buckets = new TokenBucket[Verbs.values().length];
+
+    public ApiThrottle(double readQps, int readBurst, double writeQps, int writeBurst) {
+        buckets[Verbs.READ.ordinal()] = new TokenBucket(readQps, readBurst);
+        buckets[Verbs.WRITE.ordinal()] = new TokenBucket(writeQps, writeBurst);
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"));
+    }
+
+    /**
+     * The throttle of the run, configured by the system properties.
+     */
+    public static ApiThrottle shared() {
+        if (shared == null) {
+            synchronized (ApiThrottle.class) {
+                if (shared == null) {
+                    shared = new ApiThrottle(
+                            Double.parseDouble(System.getProperty(READ_QPS_PROPERTY, "50")),
+                            Integer.getInteger(READ_BURST_PROPERTY, 100),
+                            Double.parseDouble(System.getProperty(WRITE_QPS_PROPERTY, "20")),
+                            Integer.getInteger(WRITE_BURST_PROPERTY, 40));
+                }
+            }
+        }
+        return shared;
+    }
+
+    public Interceptor interceptor() {
+        return interceptor((verbs, nanos) -> {
+        });
+    }
+
+    /**
+     * @param onWait told of every wait of a request, in nanoseconds
+     */
+    public Interceptor interceptor(ObjLongConsumer<Verbs> onWait) {
+        return new Interceptor(this, Integer.getInteger(RETRIES_PROPERTY, 5), onWait);
+    }
+
+    /**
+     * Takes a token of the verbs.
+     *
+     * @return nanoseconds to wait before sending the request
+     */
+    long reserve(Verbs verbs) {
+        return buckets[verbs.ordinal()].reserve();
+    }
+
+    /**
+     * Holds back the requests of the verbs for the duration.
+     */
+    void pause(Verbs verbs, Duration duration) {
+        buckets[verbs.ordinal()].pause(duration);
+    }
+
+    /**
+     * Verb classes with a bucket of their own: reads, watches included, and writes.
+     */
+    public enum Verbs {
+        READ, WRITE;
+
+        public static Verbs of(String method) {
+            return "GET".equals(method) || "HEAD".equals(method) ? READ : WRITE;
+        }
+    }
+
+    /**
+     * Refills at {@code qps} tokens a second up to {@code burst}. A request takes a token even when there is none,
+     * the balance goes negative and the request waits until it is paid off, so the waiting requests go in the
+     * order they came. A non-positive {@code qps} doesn't limit.
+     */
+    private static class TokenBucket {
+        private final double qps;
+        private final double burst;
+        private double tokens;
+        private long refilled = System.nanoTime();
+        private long pausedUntil = refilled;
+
+        private TokenBucket(double qps, int burst) {
+            this.qps = qps;
+            this.burst = Math.max(1, burst);
+            this.tokens = this.burst;
+        }
+
+        private synchronized long reserve() {
+            long now = System.nanoTime();
+            long paused = Math.max(0, pausedUntil - now);
+            if (qps <= 0) {
+                return paused;
+            }
+            tokens = Math.min(burst, tokens + (now - refilled) * qps / TimeUnit.SECONDS.toNanos(1));
+            refilled = now;
+            tokens -= 1;
+            long wait = tokens >= 0 ? 0 : (long) (-tokens / qps * TimeUnit.SECONDS.toNanos(1));
+            return Math.max(wait, paused);
+        }
+
+        private synchronized void pause(Duration duration) {
+            pausedUntil = Math.max(pausedUntil, System.nanoTime() + duration.toNanos());
+        }
+    }
+
+    /**
+     * Waits for a token before every request and retries a 429 up to {@code retries} times; the last 429 goes back
+     * to the caller. Counts of one interceptor cover the clients it was given to.
+     */
+    public static class Interceptor implements okhttp3.Interceptor {
+        private final ApiThrottle throttle;
+        private final int retries;
+        private final ObjLongConsumer<Verbs> onWait;
+        private final LongAdder[] requests = adders();
+        private final LongAdder[] waitedNanos = adders();
+        private final LongAdder[] throttled = adders();
+
+        private Interceptor(ApiThrottle throttle, int retries, ObjLongConsumer<Verbs> onWait) {
+            this.throttle = throttle;
+            this.retries = retries;
+            this.onWait = onWait;
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            Verbs verbs = Verbs.of(request.method());
+            for (int attempt = 0; ; attempt++) {
+                await(verbs);
+                Response response = chain.proceed(request);
+                if (response.code() != 429) {
+                    return response;
+                }
+                throttled[verbs.ordinal()].increment();
+                if (attempt >= retries) {
+                    log.warn("API server throttled {} {} {} times, giving up", request.method(), request.url(),
+                            attempt + 1);
+                    return response;
+                }
+                Duration retryAfter = retryAfter(response);
+                log.info("API server throttled {} {}, retrying in {} ms", request.method(), request.url(),
+                        retryAfter.toMillis());
+                response.close();
+                throttle.pause(verbs, retryAfter);
+            }
+        }
+
+        private void await(Verbs verbs) throws InterruptedIOException {
+            long wait = throttle.reserve(verbs);
+            requests[verbs.ordinal()].increment();
+            if (wait > 0) {
+                waitedNanos[verbs.ordinal()].add(wait);
+                onWait.accept(verbs, wait);
+                try {
+                    TimeUnit.NANOSECONDS.sleep(wait);
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted waiting for the API throttle");
+                }
+            }
+        }
+
+        public long getRequests(Verbs verbs) {
+            return requests[verbs.ordinal()].sum();
+        }
+
+        /**
+         * Time the requests of the verbs spent waiting for a token or for a {@code Retry-After}.
+         */
+        public Duration getWaited(Verbs verbs) {
+            return Duration.ofNanos(waitedNanos[verbs.ordinal()].sum());
+        }
+
+        public Duration getWaited() {
+            return getWaited(Verbs.READ).plus(getWaited(Verbs.WRITE));
+        }
+
+        /**
+         * 429 answers of the API server, retried or not.
+         */
+        public long getThrottled(Verbs verbs) {
+            return throttled[verbs.ordinal()].sum();
+        }
+
+        public String report() {
+            StringBuilder report = new StringBuilder(String.format("%-6s %9s %11s %6s", "verbs", "requests",
+                    "waited ms", "429s"));
+            for (Verbs verbs : Verbs.values()) {
+                report.append(System.lineSeparator()).append(String.format("%-6s %9d %11d %6d", verbs,
+                        getRequests(verbs), getWaited(verbs).toMillis(), getThrottled(verbs)));
+            }
+            return report.toString();
+        }
+
+        private static LongAdder[] adders() {
+            LongAdder[] adders = new LongAdder[Verbs.values().length];
+            for (int i = 0; i < adders.length; i++) {
+                adders[i] = new LongAdder();
+            }
+            return adders;
+        }
+
+        /**
+         * {@code Retry-After} in seconds or as an HTTP date.
+         */
+        private static Duration retryAfter(Response response) {
+            String header = response.header("Retry-After");
+            Duration retryAfter = DEFAULT_RETRY_AFTER;
+            if (header != null) {
+                try {
+                    retryAfter = Duration.ofSeconds(Long.parseLong(header.trim()));
+                } catch (NumberFormatException notSeconds) {
+                    try {
+                        retryAfter = Duration.between(ZonedDateTime.now(),
+                                ZonedDateTime.parse(header.trim(), DateTimeFormatter.RFC_1123_DATE_TIME));
+                    } catch (DateTimeParseException notDate) {
+                        log.debug("Unreadable Retry-After: {}", header);
+                    }
+                }
+            }
+            if (retryAfter.isNegative()) {
+                return Duration.ZERO;
+            }
+            return retryAfter.compareTo(MAX_RETRY_AFTER) > 0 ? MAX_RETRY_AFTER : retryAfter;
+        }
+    }
+}
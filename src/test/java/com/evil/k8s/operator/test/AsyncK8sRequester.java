@@ -0,0 +1,220 @@
+package com.evil.k8s.operator.test;
+
+import com.evil.k8s.operator.test.ConvergenceAwaiter.Convergence;
+import com.evil.k8s.operator.test.models.RateLimiter;
+import com.evil.k8s.operator.test.models.RateLimiterConfig;
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import me.snowdrop.istio.api.networking.v1alpha3.EnvoyFilter;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The operations of a {@link K8sRequester} as {@link CompletableFuture}s, so that a scenario can keep many API calls
+ * and their convergence waits in flight and compose them instead of making them one after another.
+ * <p>
+ * At most {@code parallelism} API calls run at once. They run on virtual threads when the JDK has them (21+, looked up
+ * reflectively since the project builds on 11), and on a fixed pool of {@code parallelism} threads otherwise.
+ * A convergence wait holds no thread: the watch callbacks complete it, and only the cache catch-up after it
+ * runs on the executor. A mutating call completes with the {@link Convergence} of its own wait; the deletes of
+ * {@link K8sRequester} only log a failure, here it fails the future.
+ */
+@Slf4j
+public class AsyncK8sRequester implements AutoCloseable {
+
+    public static final String PARALLELISM_PROPERTY = "k8s.async.parallelism";
+    public static final String VIRTUAL_THREADS_PROPERTY = "k8s.async.virtual.threads";
+
+    @Getter
+    private final K8sRequester requester;
+    private final ExecutorService executor;
+    /**
+     * Bounds the calls on virtual threads, null on the pool which bounds them itself.
+     */
+    private final Semaphore inFlight;
+    private final Set<CompletableFuture<Convergence>> converging = ConcurrentHashMap.newKeySet();
+    @Getter
+    private final boolean virtualThreads;
+
+    public AsyncK8sRequester(K8sRequester requester) {
+        this(requester, Integer.getInteger(PARALLELISM_PROPERTY, 32));
+    }
+
+    public AsyncK8sRequester(K8sRequester requester, int parallelism) {
+        this.requester = requester;
+        ExecutorService virtual = Boolean.parseBoolean(System.getProperty(VIRTUAL_THREADS_PROPERTY, "true"))
+                ? virtualThreadPerTaskExecutor()
+                : null;
+        this.virtualThreads = virtual != null;
+        this.inFlight = virtual != null ? new Semaphore(parallelism) : null;
+        this.executor = virtual != null ? virtual : fixedThreadPool(parallelism, requester.getNamespace());
+    }
+
+    public CompletableFuture<RateLimiter> getRateLimiter(String name) {
+        return supply(() -> requester.getRateLimiter(name));
+    }
+
+    public CompletableFuture<Convergence> createRateLimiter(RateLimiter rateLimiter) {
+        return mutate("create RateLimiter " + rateLimiter.getMetadata().getName(),
+                () -> requester.createRateLimiter(rateLimiter));
+    }
+
+    public CompletableFuture<Convergence> editRateLimiter(RateLimiter rateLimiter) {
+        return mutate("edit RateLimiter " + rateLimiter.getMetadata().getName(),
+                () -> requester.editRateLimiter(rateLimiter));
+    }
+
+    public CompletableFuture<Convergence> deleteRateLimiter(String name) {
+        return mutate("delete RateLimiter " + name, () -> requester.deleteRateLimiter(name));
+    }
+
+    public CompletableFuture<RateLimiterConfig> getRateLimiterConfig(String name) {
+        return supply(() -> requester.getRateLimiterConfig(name));
+    }
+
+    public CompletableFuture<Convergence> createRateLimiterConfig(RateLimiterConfig rateLimiterConfig) {
+        return mutate("create RateLimiterConfig " + rateLimiterConfig.getMetadata().getName(),
+                () -> requester.createRateLimiterConfig(rateLimiterConfig));
+    }
+
+    public CompletableFuture<Convergence> editRateLimiterConfig(RateLimiterConfig rateLimiterConfig) {
+        return mutate("edit RateLimiterConfig " + rateLimiterConfig.getMetadata().getName(),
+                () -> requester.editRateLimiterConfig(rateLimiterConfig));
+    }
+
+    public CompletableFuture<Convergence> deleteRateLimiterConfig(String name) {
+        return mutate("delete RateLimiterConfig " + name, () -> requester.deleteRateLimiterConfig(name));
+    }
+
+    public CompletableFuture<Deployment> getDeployment(String name) {
+        return supply(() -> requester.getDeployment(name));
+    }
+
+    public CompletableFuture<Convergence> editDeployment(Deployment deployment) {
+        return mutate("edit Deployment " + deployment.getMetadata().getName(),
+                () -> requester.editDeployment(deployment));
+    }
+
+    public CompletableFuture<Convergence> deleteDeployment(String name) {
+        return mutate("delete Deployment " + name, () -> requester.deleteDeployment(name));
+    }
+
+    public CompletableFuture<Service> getService(String name) {
+        return supply(() -> requester.getServiceByName(name));
+    }
+
+    public CompletableFuture<Convergence> editService(Service service) {
+        return mutate("edit Service " + service.getMetadata().getName(), () -> requester.editService(service));
+    }
+
+    public CompletableFuture<Convergence> deleteService(String name) {
+        return mutate("delete Service " + name, () -> requester.deleteService(name));
+    }
+
+    public CompletableFuture<ConfigMap> getConfigMap(String name) {
+        return supply(() -> requester.getConfigMapByName(name));
+    }
+
+    public CompletableFuture<Convergence> editConfigMap(ConfigMap configMap) {
+        return mutate("edit ConfigMap " + configMap.getMetadata().getName(), () -> requester.editConfigMap(configMap));
+    }
+
+    public CompletableFuture<Convergence> deleteConfigMap(String name) {
+        return mutate("delete ConfigMap " + name, () -> requester.deleteConfigMap(name));
+    }
+
+    public CompletableFuture<Map<String, Object>> getEnvoyFilter(String name) {
+        return supply(() -> requester.getEnvoyFilter(name));
+    }
+
+    public CompletableFuture<Convergence> editEnvoyFilter(EnvoyFilter envoyFilter) {
+        return mutate("edit EnvoyFilter " + envoyFilter.getMetadata().getName(),
+                () -> requester.editEnvoyFilter(envoyFilter));
+    }
+
+    public CompletableFuture<Convergence> deleteEnvoyFilter(String name) {
+        return mutate("delete EnvoyFilter " + name, () -> requester.deleteEnvoyFilter(name));
+    }
+
+    /**
+     * Calls run no more than {@code parallelism} at a time; a call waiting for its turn holds no platform thread
+     * on virtual threads, and waits in the queue of the pool otherwise.
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> call) {
+        if (inFlight == null) {
+            return CompletableFuture.supplyAsync(call, executor);
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            inFlight.acquireUninterruptibly();
+            try {
+                return call.get();
+            } finally {
+                inFlight.release();
+            }
+        }, executor);
+    }
+
+    private CompletableFuture<Convergence> mutate(String operation, Runnable call) {
+        return supply(() -> {
+            CompletableFuture<Convergence> convergence = requester.deferConvergence(call, executor);
+            if (convergence == null) {
+                throw new IllegalStateException(operation + " failed before its wait, see the log");
+            }
+            converging.add(convergence);
+            convergence.whenComplete((result, error) -> converging.remove(convergence));
+            return convergence;
+        }).thenCompose(Function.identity());
+    }
+
+    /**
+     * Waits for the calls in flight and their convergence.
+     */
+    @Override
+    public void close() {
+        try {
+            CompletableFuture.allOf(converging.toArray(new CompletableFuture[0])).get(1, TimeUnit.MINUTES);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException ex) {
+            log.warn("Async convergence in [{}] not complete: {}", requester.getNamespace(), ex.toString());
+        }
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.warn("Async calls in [{}] still running after a minute", requester.getNamespace());
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException ex) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * {@code Executors.newVirtualThreadPerTaskExecutor()}, null before JDK 21.
+     */
+    private static ExecutorService virtualThreadPerTaskExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException ex) {
+            return null;
+        }
+    }
+
+    private static ExecutorService fixedThreadPool(int parallelism, String namespace) {
+        AtomicInteger threads = new AtomicInteger();
+        return Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(runnable, "k8s-async-" + namespace + "-" + threads.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+}
@@ -0,0 +1,206 @@
+package com.evil.k8s.operator.test;
+
+import com.evil.k8s.operator.test.ResourceCache.Cached;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import lombok.Getter;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static com.evil.k8s.operator.test.utils.Utils.YAML_MAPPER;
+
+/**
+ * Parsed files of the RateLimiter ConfigMaps of a namespace, kept between validations.
+ * <p>
+ * A ConfigMap is parsed again only when its resourceVersion changes, and then only the files whose content changed;
+ * the domains of the files are counted as files come and go, so checking domain uniqueness doesn't touch the others.
+ * Of a changed file only the domain is read, the descriptors are read when they are compared.
+ */
+@Slf4j
+public class ConfigMapFiles {
+
+    private final Map<String, Parsed> parsed = new HashMap<>();
+
+    public synchronized Parsed parse(Cached<ConfigMap> cached) {
+        ConfigMap configMap = cached.orElseThrow();
+        Parsed previous = parsed.get(cached.getName());
+        if (previous != null && previous.resourceVersion.equals(cached.getResourceVersion())) {
+            return previous;
+        }
+        Map<String, String> data = Optional.ofNullable(configMap.getData()).orElse(Collections.emptyMap());
+        Map<String, ParsedFile> files = previous == null ? new HashMap<>() : new HashMap<>(previous.files);
+        Map<String, Integer> domains = previous == null ? new HashMap<>() : new HashMap<>(previous.domains);
+        int reparsed = 0;
+        for (Iterator<Map.Entry<String, ParsedFile>> entries = files.entrySet().iterator(); entries.hasNext(); ) {
+            Map.Entry<String, ParsedFile> entry = entries.next();
+            if (!data.containsKey(entry.getKey())) {
+                uncount(domains, entry.getValue());
+                entries.remove();
+            }
+        }
+        for (Map.Entry<String, String> entry : data.entrySet()) {
+            String content = Optional.ofNullable(entry.getValue()).orElse("");
+            ParsedFile file = files.get(entry.getKey());
+            if (file != null && file.hasContent(content)) {
+                continue;
+            }
+            if (file != null) {
+                uncount(domains, file);
+            }
+            file = ParsedFile.parse(content);
+            if (file.getDomain() != null) {
+                domains.merge(file.getDomain(), 1, Integer::sum);
+            }
+            files.put(entry.getKey(), file);
+            reparsed++;
+        }
+        log.debug("{}: parsed {} of {} files", cached, reparsed, files.size());
+        Parsed current = new Parsed(cached.getResourceVersion(), files, domains);
+        parsed.put(cached.getName(), current);
+        return current;
+    }
+
+    /**
+     * Drops the files of a deleted ConfigMap.
+     */
+    public synchronized void forget(String configMapName) {
+        parsed.remove(configMapName);
+    }
+
+    private static void uncount(Map<String, Integer> domains, ParsedFile file) {
+        if (file.getDomain() != null) {
+            domains.computeIfPresent(file.getDomain(), (domain, count) -> count == 1 ? null : count - 1);
+        }
+    }
+
+    /**
+     * Files of one resourceVersion of a ConfigMap.
+     */
+    @Value
+    public static class Parsed {
+        String resourceVersion;
+        Map<String, ParsedFile> files;
+        /**
+         * Number of files per domain.
+         */
+        Map<String, Integer> domains;
+
+        /**
+         * @return the parsed file or null if the ConfigMap has no such file
+         */
+        public ParsedFile file(String name) {
+            return files.get(name);
+        }
+
+        public Set<String> duplicateDomains() {
+            return domains.entrySet().stream()
+                    .filter(entry -> entry.getValue() > 1)
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toCollection(TreeSet::new));
+        }
+
+        /**
+         * Read errors by file name: files whose domain can't be read, and files whose tree was requested and isn't
+         * valid YAML.
+         */
+        public Map<String, String> unparsable() {
+            return files.entrySet().stream()
+                    .filter(entry -> entry.getValue().getError() != null)
+                    .collect(Collectors.toMap(Map.Entry::getKey, entry -> entry.getValue().getError(),
+                            (first, second) -> first, TreeMap::new));
+        }
+    }
+
+    /**
+     * A file of the ConfigMap. Only the domain is read up front, by streaming the top-level mapping up to the
+     * {@code domain} key: the descriptor trees are read when a validator compares them, see {@link #getTree}.
+     */
+    public static class ParsedFile {
+        private static final String DOMAIN = "domain";
+
+        @Getter
+        private final int hash;
+        @Getter
+        private final String content;
+        /**
+         * Null when the file has no domain or it can't be read.
+         */
+        @Getter
+        private final String domain;
+        private String error;
+        private JsonNode tree;
+        private boolean treeRead;
+
+        private ParsedFile(String content, String domain, String error) {
+            this.hash = content.hashCode();
+            this.content = content;
+            this.domain = domain;
+            this.error = error;
+        }
+
+        static ParsedFile parse(String content) {
+            try {
+                return new ParsedFile(content, readDomain(content), null);
+            } catch (IOException ex) {
+                return new ParsedFile(content, null, ex.getMessage());
+            }
+        }
+
+        /**
+         * Reads the file up to the domain; mappings and sequences before it are skipped without being built.
+         */
+        private static String readDomain(String content) throws IOException {
+            try (JsonParser parser = YAML_MAPPER.getFactory().createParser(content)) {
+                if (parser.nextToken() != JsonToken.START_OBJECT) {
+                    return null;
+                }
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String field = parser.getCurrentName();
+                    parser.nextToken();
+                    if (DOMAIN.equals(field)) {
+                        return parser.getValueAsString();
+                    }
+                    parser.skipChildren();
+                }
+                return null;
+            }
+        }
+
+        /**
+         * The whole file, read on the first call.
+         *
+         * @return null when the file isn't valid YAML
+         */
+        public synchronized JsonNode getTree() {
+            if (!treeRead) {
+                treeRead = true;
+                if (error == null) {
+                    try {
+                        tree = YAML_MAPPER.readTree(content);
+                    } catch (IOException ex) {
+                        error = ex.getMessage();
+                    }
+                }
+            }
+            return tree;
+        }
+
+        /**
+         * Error of the part of the file read so far: up to the domain, or the whole file once {@link #getTree}
+         * has been called.
+         */
+        public synchronized String getError() {
+            return error;
+        }
+
+        boolean hasContent(String content) {
+            return hash == content.hashCode() && this.content.equals(content);
+        }
+    }
+}
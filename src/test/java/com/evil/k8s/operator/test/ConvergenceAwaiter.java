@@ -0,0 +1,506 @@
+package com.evil.k8s.operator.test;
+
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+
+/**
+ * Blocks a mutating call until the operator has produced the expected child resource events.
+ * <p>
+ * Every expected resource is read once and then watched from the resourceVersion that was read, so
+ * the initial state and all later events are known exactly. The wait ends as soon as the expectation
+ * is met or the deadline passes; a missed deadline is reported, not thrown, and left to the validators.
+ * The watch callbacks complete the wait, so a caller can block on it or compose it without holding a thread.
+ */
+@Slf4j
+@RequiredArgsConstructor
+public class ConvergenceAwaiter {
+
+    public static final String MODE_PROPERTY = "k8s.await.mode";
+    public static final String TIMEOUT_PROPERTY = "k8s.await.timeout.ms";
+
+    private static final int SLEEP_TIME_MS = 2_000;
+
+    private final KubernetesClient client;
+    private final String namespace;
+    private final AwaitMode mode;
+    @Getter
+    private final Duration timeout;
+
+    public static ConvergenceAwaiter fromSystemProperties(KubernetesClient client, String namespace) {
+        return new ConvergenceAwaiter(client, namespace,
+                AwaitMode.valueOf(System.getProperty(MODE_PROPERTY, AwaitMode.WATCH.name())),
+                Duration.ofMillis(Long.getLong(TIMEOUT_PROPERTY, 30_000)));
+    }
+
+    /**
+     * Expectation satisfied when every registered condition holds.
+     */
+    public Expectation expect(String operation) {
+        return new Expectation(operation, true);
+    }
+
+    /**
+     * Expectation satisfied when any registered condition holds.
+     */
+    public Expectation expectAny(String operation) {
+        return new Expectation(operation, false);
+    }
+
+    public enum AwaitMode {
+        /**
+         * Fixed sleep after every mutating call, no watches.
+         */
+        SLEEP,
+        /**
+         * Wait for the expected watch events.
+         */
+        WATCH
+    }
+
+    @Value
+    public static class Convergence {
+        String operation;
+        Duration elapsed;
+        boolean converged;
+        List<String> pending;
+        /**
+         * States of the expected resources that ended the wait.
+         */
+        List<ObservedVersion> observed;
+
+        @Override
+        public String toString() {
+            return converged
+                    ? String.format("[%s] converged in %d ms", operation, elapsed.toMillis())
+                    : String.format("[%s] not converged in %d ms, pending: %s", operation, elapsed.toMillis(), pending);
+        }
+    }
+
+    @Value
+    public static class ObservedVersion {
+        ResourceKind<?> kind;
+        String name;
+        /**
+         * Null when the resource was observed absent.
+         */
+        String resourceVersion;
+        long observedAtNanos;
+    }
+
+    @Value
+    static class ObservedEvent<T> {
+        Watcher.Action action;
+        T resource;
+        ObjectMeta metadata;
+        long observedAtNanos;
+    }
+
+    private enum ConditionType {
+        APPEARS, DISAPPEARS, RECREATED, MODIFIED, REVERTED
+    }
+
+    @RequiredArgsConstructor
+    private static class Condition<T> {
+        private final ResourceKind<T> kind;
+        private final String name;
+        private final ConditionType type;
+        private final Predicate<T> predicate;
+
+        /**
+         * Served by the watch of the whole namespace that {@link Expectation#appearsAll} opens for the kind.
+         */
+        private boolean inNamespaceWatch;
+        private T initial;
+        private ObjectMeta written;
+        private final List<ObservedEvent<T>> events = new ArrayList<>();
+
+        /**
+         * @return the state that satisfies the condition, observed at {@code startNanos} if the initial state
+         * already does, or null if the condition doesn't hold yet
+         */
+        ObservedVersion satisfied(long startNanos) {
+            switch (type) {
+                case APPEARS:
+                    // A resource deleted after it appeared, e.g. collected as an orphan, hasn't appeared yet
+                    long deletedAt = events.stream()
+                            .filter(event -> event.getAction() == Watcher.Action.DELETED)
+                            .mapToLong(ObservedEvent::getObservedAtNanos)
+                            .max()
+                            .orElse(-1);
+                    if (deletedAt < 0 && initial != null && predicate.test(initial)) {
+                        return observed(kind.metadata(initial), startNanos);
+                    }
+                    return first(event -> event.getAction() != Watcher.Action.DELETED
+                            && event.getObservedAtNanos() > deletedAt && predicate.test(event.getResource()));
+                case DISAPPEARS:
+                    if (initial == null) {
+                        return observed(null, startNanos);
+                    }
+                    return first(event -> event.getAction() == Watcher.Action.DELETED);
+                case RECREATED:
+                    ObservedVersion deleted = initial == null
+                            ? observed(null, startNanos)
+                            : first(event -> event.getAction() == Watcher.Action.DELETED);
+                    return deleted == null ? null : first(event -> event.getAction() == Watcher.Action.ADDED
+                            && event.getObservedAtNanos() >= deleted.getObservedAtNanos());
+                case MODIFIED:
+                    return first(event -> event.getAction() == Watcher.Action.MODIFIED);
+                case REVERTED:
+                    if (written == null) {
+                        return null;
+                    }
+                    // Only a write after ours reverts it, not a late write of a previous reconciliation
+                    long writtenAt = events.stream()
+                            .filter(event -> Objects.equals(written.getResourceVersion(), event.getMetadata().getResourceVersion()))
+                            .mapToLong(ObservedEvent::getObservedAtNanos)
+                            .findFirst()
+                            .orElse(Long.MAX_VALUE);
+                    return first(event -> event.getAction() == Watcher.Action.MODIFIED
+                            && event.getObservedAtNanos() > writtenAt
+                            && (written.getGeneration() == null || event.getMetadata().getGeneration() == null
+                            || event.getMetadata().getGeneration() > written.getGeneration()));
+                default:
+                    throw new IllegalStateException("Unknown condition " + type);
+            }
+        }
+
+        private ObservedVersion first(Predicate<ObservedEvent<T>> predicate) {
+            return events.stream()
+                    .filter(predicate)
+                    .findFirst()
+                    .map(event -> observed(event.getAction() == Watcher.Action.DELETED ? null : event.getMetadata(),
+                            event.getObservedAtNanos()))
+                    .orElse(null);
+        }
+
+        private ObservedVersion observed(ObjectMeta metadata, long atNanos) {
+            return new ObservedVersion(kind, name, metadata == null ? null : metadata.getResourceVersion(), atNanos);
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + kind + "/" + name;
+        }
+    }
+
+    public class Expectation implements AutoCloseable {
+        private final String operation;
+        private final boolean all;
+        private final List<Condition<?>> conditions = new ArrayList<>();
+        private final List<Watch> watches = new ArrayList<>();
+        private long startNanos;
+        private CompletableFuture<Convergence> converged;
+
+        private Expectation(String operation, boolean all) {
+            this.operation = operation;
+            this.all = all;
+        }
+
+        /**
+         * The resource exists; observed on creation or any later modification.
+         */
+        public <T> Expectation appears(ResourceKind<T> kind, String name) {
+            return appears(kind, name, resource -> true);
+        }
+
+        /**
+         * The resource exists and its state matches the predicate.
+         */
+        public <T> Expectation appears(ResourceKind<T> kind, String name, Predicate<T> predicate) {
+            conditions.add(new Condition<>(kind, name, ConditionType.APPEARS, predicate));
+            return this;
+        }
+
+        /**
+         * Every resource of the batch exists. A single list and watch of the namespace serves them all, instead of
+         * a read and a watch per resource.
+         */
+        public <T> Expectation appearsAll(ResourceKind<T> kind, Collection<String> names) {
+            names.forEach(name -> {
+                Condition<T> condition = new Condition<>(kind, name, ConditionType.APPEARS, resource -> true);
+                condition.inNamespaceWatch = true;
+                conditions.add(condition);
+            });
+            return this;
+        }
+
+        /**
+         * Drops the conditions on the resource, e.g. one a batch has failed to create; the wait doesn't need to be
+         * started yet.
+         */
+        public Expectation without(ResourceKind<?> kind, String name) {
+            return update(() -> conditions.removeIf(condition -> condition.kind == kind && condition.name.equals(name)));
+        }
+
+        /**
+         * Makes a change the predicates of the conditions depend on under the lock they are tested under, so watch
+         * threads never see it halfway, and then tests them again; the wait doesn't need to be started yet.
+         */
+        public Expectation update(Runnable change) {
+            CompletableFuture<Convergence> future;
+            synchronized (this) {
+                change.run();
+                future = converged;
+            }
+            if (future != null && !future.isDone()) {
+                complete(future, convergence());
+            }
+            return this;
+        }
+
+        /**
+         * The resource is deleted.
+         */
+        public <T> Expectation disappears(ResourceKind<T> kind, String name) {
+            conditions.add(new Condition<>(kind, name, ConditionType.DISAPPEARS, resource -> true));
+            return this;
+        }
+
+        /**
+         * The resource is deleted and created again.
+         */
+        public <T> Expectation recreated(ResourceKind<T> kind, String name) {
+            conditions.add(new Condition<>(kind, name, ConditionType.RECREATED, resource -> true));
+            return this;
+        }
+
+        /**
+         * The resource is modified after the expectation was opened.
+         */
+        public <T> Expectation modified(ResourceKind<T> kind, String name) {
+            conditions.add(new Condition<>(kind, name, ConditionType.MODIFIED, resource -> true));
+            return this;
+        }
+
+        /**
+         * The resource is modified by someone else after our own write of it, see {@link #written}.
+         */
+        public <T> Expectation reverted(ResourceKind<T> kind, String name) {
+            conditions.add(new Condition<>(kind, name, ConditionType.REVERTED, resource -> true));
+            return this;
+        }
+
+        /**
+         * Registers the metadata returned by our own write, so {@link #reverted} ignores the event it produces.
+         */
+        public Expectation written(ResourceKind<?> kind, ObjectMeta metadata) {
+            CompletableFuture<Convergence> future;
+            synchronized (this) {
+                conditions.stream()
+                        .filter(condition -> condition.kind == kind && condition.name.equals(metadata.getName()))
+                        .forEach(condition -> condition.written = metadata);
+                future = converged;
+            }
+            if (future != null && !future.isDone()) {
+                complete(future, convergence());
+            }
+            return this;
+        }
+
+        public Expectation open() {
+            if (mode == AwaitMode.WATCH) {
+                conditions.stream()
+                        .filter(condition -> !condition.inNamespaceWatch)
+                        .forEach(this::watch);
+                conditions.stream()
+                        .filter(condition -> condition.inNamespaceWatch)
+                        .map(condition -> condition.kind)
+                        .distinct()
+                        .forEach(this::watchNamespace);
+            }
+            startNanos = System.nanoTime();
+            return this;
+        }
+
+        private <T> void watch(Condition<T> condition) {
+            T initial = condition.kind.get(client, namespace, condition.name);
+            condition.initial = initial;
+            String resourceVersion = initial == null ? null : condition.kind.metadata(initial).getResourceVersion();
+            watches.add(condition.kind.watch(client, namespace, condition.name, resourceVersion, new Watcher<T>() {
+                @Override
+                public void eventReceived(Action action, T resource) {
+                    onEvent(condition, new ObservedEvent<>(action, resource, condition.kind.metadata(resource), System.nanoTime()));
+                }
+
+                @Override
+                public void onClose(KubernetesClientException cause) {
+                    if (cause != null) {
+                        log.warn("Watch {} closed: {}", condition, cause.getMessage());
+                    }
+                }
+            }));
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> void watchNamespace(ResourceKind<T> kind) {
+            Map<String, Condition<T>> byName = new HashMap<>();
+            conditions.stream()
+                    .filter(condition -> condition.inNamespaceWatch && condition.kind == kind)
+                    .forEach(condition -> byName.put(condition.name, (Condition<T>) condition));
+            ResourceKind.Listed<T> listed = kind.list(client, namespace, Collections.emptyMap());
+            listed.getItems().forEach(resource -> {
+                Condition<T> condition = byName.get(kind.metadata(resource).getName());
+                if (condition != null) {
+                    condition.initial = resource;
+                }
+            });
+            watches.add(kind.watch(client, namespace, null, listed.getResourceVersion(), new Watcher<T>() {
+                @Override
+                public void eventReceived(Action action, T resource) {
+                    ObjectMeta metadata = kind.metadata(resource);
+                    Condition<T> condition = byName.get(metadata.getName());
+                    if (condition != null) {
+                        onEvent(condition, new ObservedEvent<>(action, resource, metadata, System.nanoTime()));
+                    }
+                }
+
+                @Override
+                public void onClose(KubernetesClientException cause) {
+                    if (cause != null) {
+                        log.warn("Watch {}s of [{}] closed: {}", kind, namespace, cause.getMessage());
+                    }
+                }
+            }));
+        }
+
+        private <T> void onEvent(Condition<T> condition, ObservedEvent<T> event) {
+            CompletableFuture<Convergence> future;
+            synchronized (this) {
+                condition.events.add(event);
+                future = converged;
+            }
+            if (future != null && !future.isDone()) {
+                complete(future, convergence());
+            }
+        }
+
+        /**
+         * Blocks until the expectation is met or the deadline passes.
+         */
+        public Convergence await() {
+            return converged().join();
+        }
+
+        /**
+         * Completes as soon as the expectation is met, from the watch callback that meets it, or at the deadline.
+         * The watches stay open until then even if the expectation is closed earlier.
+         */
+        public CompletableFuture<Convergence> converged() {
+            CompletableFuture<Convergence> future;
+            synchronized (this) {
+                if (converged != null) {
+                    return converged;
+                }
+                future = converged = new CompletableFuture<>();
+            }
+            future.whenComplete((convergence, error) -> closeWatches());
+            if (mode == AwaitMode.SLEEP) {
+                CompletableFuture.delayedExecutor(SLEEP_TIME_MS, TimeUnit.MILLISECONDS).execute(() -> complete(future,
+                        new Convergence(operation, Duration.ofMillis(SLEEP_TIME_MS), true,
+                                Collections.emptyList(), Collections.emptyList())));
+                return future;
+            }
+            long left = startNanos + timeout.toNanos() - System.nanoTime();
+            CompletableFuture.delayedExecutor(Math.max(0, left), TimeUnit.NANOSECONDS)
+                    .execute(() -> complete(future, expired()));
+            complete(future, convergence());
+            return future;
+        }
+
+        private Convergence complete(CompletableFuture<Convergence> future, Convergence convergence) {
+            if (convergence != null && future.complete(convergence)) {
+                report(convergence);
+            }
+            return convergence;
+        }
+
+        /**
+         * @return the convergence or null if the expectation doesn't hold yet
+         */
+        private synchronized Convergence convergence() {
+            List<ObservedVersion> observed = converged(startNanos);
+            if (observed == null) {
+                return null;
+            }
+            long convergedAt = observed.stream().mapToLong(ObservedVersion::getObservedAtNanos).max().orElse(startNanos);
+            return new Convergence(operation, Duration.ofNanos(convergedAt - startNanos), true,
+                    Collections.emptyList(), observed);
+        }
+
+        /**
+         * The convergence at the deadline, which the expectation may still have met just in time.
+         */
+        private synchronized Convergence expired() {
+            Convergence convergence = convergence();
+            if (convergence != null) {
+                return convergence;
+            }
+            List<String> pending = conditions.stream()
+                    .filter(condition -> condition.satisfied(startNanos) == null)
+                    .map(Condition::toString)
+                    .collect(Collectors.toList());
+            return new Convergence(operation, timeout, false, pending, Collections.emptyList());
+        }
+
+        /**
+         * @return states that satisfied the expectation or null if it doesn't hold yet
+         */
+        private List<ObservedVersion> converged(long startNanos) {
+            List<ObservedVersion> satisfied = conditions.stream()
+                    .map(condition -> condition.satisfied(startNanos))
+                    .collect(Collectors.toList());
+            if (all) {
+                return satisfied.contains(null) ? null : satisfied;
+            }
+            if (satisfied.isEmpty()) {
+                return satisfied;
+            }
+            return satisfied.stream()
+                    .filter(Objects::nonNull)
+                    .min(Comparator.comparingLong(ObservedVersion::getObservedAtNanos))
+                    .map(Collections::singletonList)
+                    .orElse(null);
+        }
+
+        private Convergence report(Convergence convergence) {
+            if (convergence.isConverged()) {
+                log.info("{}", convergence);
+            } else {
+                log.warn("{}", convergence);
+            }
+            return convergence;
+        }
+
+        /**
+         * Closes the watches, unless a wait is in progress: they are closed when it completes.
+         */
+        @Override
+        public void close() {
+            synchronized (this) {
+                if (converged != null) {
+                    return;
+                }
+            }
+            closeWatches();
+        }
+
+        private synchronized void closeWatches() {
+            watches.forEach(Watch::close);
+            watches.clear();
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.evil.k8s.operator.test;
+
+import com.evil.k8s.operator.test.ConfigMapFiles.Parsed;
+import com.evil.k8s.operator.test.ConfigMapFiles.ParsedFile;
+import com.evil.k8s.operator.test.ResourceCache.Cached;
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.api.model.OwnerReference;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import lombok.SneakyThrows;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+import static com.evil.k8s.operator.test.ResourceKind.*;
+
+/**
+ * Cluster-wide index of the rate limit domains, maintained from a watch on the ConfigMaps of all namespaces.
+ * <p>
+ * A domain is claimed by the file that carries it in the ConfigMap of a RateLimiter, and is shared when it is
+ * claimed under more than one RateLimiter, in one namespace or across namespaces: the rate limit services of
+ * those RateLimiters then count the same domain apart. A domain claimed twice inside one ConfigMap is what
+ * {@link ConfigMapFiles.Parsed#duplicateDomains()} reports, the index answers what a single namespace can't. Every
+ * event updates only the claims it changes, so the index can be queried at any moment without a request to the
+ * API server.
+ * <p>
+ * The watch lists ConfigMaps cluster-wide, the account of the run needs list and watch on them at cluster scope.
+ */
+@Slf4j
+public class DomainIndex implements AutoCloseable {
+
+    private final KubernetesClient client;
+    private final ExecutorService restarts = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "domain-index");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Map<ResourceKind<?>, Watch> watches = new ConcurrentHashMap<>();
+    /**
+     * Indexed RateLimiter ConfigMaps, by namespace/name.
+     */
+    private final Map<String, IndexedConfigMap> configMaps = new HashMap<>();
+    /**
+     * Parsed ConfigMap files, by namespace.
+     */
+    private final Map<String, ConfigMapFiles> files = new HashMap<>();
+    /**
+     * Claiming files of every domain, by RateLimiter namespace/name.
+     */
+    private final Map<String, Map<String, Set<String>>> domains = new HashMap<>();
+    private final Set<String> shared = new HashSet<>();
+    private volatile boolean closed;
+
+    public DomainIndex(KubernetesClient client) {
+        this.client = client;
+    }
+
+    /**
+     * Opens the watch. The index is filled from the initial events, so it may lag behind until they arrive,
+     * see {@link #awaitRateLimiters}.
+     */
+    public DomainIndex start() {
+        watch(CONFIG_MAP, this::configMapEvent);
+        return this;
+    }
+
+    /**
+     * Domains claimed under more than one RateLimiter.
+     */
+    public synchronized Set<String> shared() {
+        return new TreeSet<>(shared);
+    }
+
+    /**
+     * ConfigMap files that claim the domain, by RateLimiter namespace/name.
+     */
+    public synchronized Map<String, List<String>> owners(String domain) {
+        Map<String, List<String>> owners = new TreeMap<>();
+        domains.getOrDefault(domain, Collections.emptyMap())
+                .forEach((rateLimiter, files) -> owners.put(rateLimiter, new ArrayList<>(files)));
+        return owners;
+    }
+
+    /**
+     * RateLimiters, as namespace/name, whose ConfigMap claims the domain.
+     */
+    public synchronized Set<String> rateLimiters(String domain) {
+        return new TreeSet<>(domains.getOrDefault(domain, Collections.emptyMap()).keySet());
+    }
+
+    /**
+     * Blocks until the domain is claimed under exactly the RateLimiters, as the ConfigMaps of other namespaces may
+     * reach the index after those of the caller.
+     *
+     * @return the RateLimiters of the domain, the expected ones unless the timeout ran out
+     */
+    @SneakyThrows
+    public synchronized Set<String> awaitRateLimiters(String domain, Set<String> expected, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (!rateLimiters(domain).equals(expected)) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                break;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+        return rateLimiters(domain);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        watches.values().forEach(Watch::close);
+        restarts.shutdownNow();
+    }
+
+    private <T> void watch(ResourceKind<T> kind, BiConsumer<Watcher.Action, T> handler) {
+        watches.put(kind, kind.watch(client, null, null, null, new Watcher<T>() {
+            @Override
+            public void eventReceived(Action action, T resource) {
+                if (action != Action.ERROR) {
+                    handler.accept(action, resource);
+                }
+            }
+
+            @Override
+            public void onClose(KubernetesClientException cause) {
+                if (cause == null || closed) {
+                    return;
+                }
+                // The watch restarts from the current state, the claims it held are rebuilt from its ADDED events
+                log.warn("Domain index watch of {} closed, indexing it again", kind, cause);
+                restarts.execute(() -> {
+                    reset();
+                    watch(kind, handler);
+                });
+            }
+        }));
+    }
+
+    private synchronized void reset() {
+        configMaps.values().forEach(configMap -> configMap.claims.values().forEach(this::release));
+        configMaps.clear();
+        files.clear();
+    }
+
+    private synchronized void configMapEvent(Watcher.Action action, ConfigMap configMap) {
+        ObjectMeta metadata = configMap.getMetadata();
+        String key = key(metadata.getNamespace(), metadata.getName());
+        String rateLimiter = action == Watcher.Action.DELETED ? null : rateLimiterOwner(metadata);
+        IndexedConfigMap previous = configMaps.remove(key);
+        if (previous != null && !previous.rateLimiter.equals(rateLimiter)) {
+            previous.claims.values().forEach(this::release);
+            previous = null;
+        }
+        if (rateLimiter == null) {
+            Optional.ofNullable(files.get(metadata.getNamespace())).ifPresent(parsed -> parsed.forget(metadata.getName()));
+        } else {
+            Parsed parsed = files.computeIfAbsent(metadata.getNamespace(), namespace -> new ConfigMapFiles())
+                    .parse(new Cached<>(CONFIG_MAP, metadata.getName(), configMap, metadata.getResourceVersion(), null));
+            Map<String, ParsedFile> before = previous == null ? Collections.emptyMap() : previous.parsed.getFiles();
+            Map<String, Claim> claims = previous == null ? new HashMap<>() : previous.claims;
+            // Unchanged files keep their parsed instance, only the changed ones are released and claimed again
+            before.forEach((file, parsedFile) -> {
+                if (parsed.file(file) != parsedFile) {
+                    Optional.ofNullable(claims.remove(file)).ifPresent(this::release);
+                }
+            });
+            parsed.getFiles().forEach((file, parsedFile) -> {
+                if (before.get(file) != parsedFile && parsedFile.getDomain() != null) {
+                    Claim claim = new Claim(parsedFile.getDomain(), key(metadata.getNamespace(), rateLimiter),
+                            CONFIG_MAP + "/" + key + "/" + file);
+                    claims.put(file, claim);
+                    claim(claim);
+                }
+            });
+            configMaps.put(key, new IndexedConfigMap(rateLimiter, parsed, claims));
+        }
+        notifyAll();
+    }
+
+    private void claim(Claim claim) {
+        Map<String, Set<String>> byRateLimiter = domains.computeIfAbsent(claim.domain, name -> new HashMap<>());
+        byRateLimiter.computeIfAbsent(claim.rateLimiter, rateLimiter -> new TreeSet<>()).add(claim.owner);
+        update(claim.domain, byRateLimiter);
+    }
+
+    private void release(Claim claim) {
+        Map<String, Set<String>> byRateLimiter = domains.get(claim.domain);
+        Set<String> owners = byRateLimiter == null ? null : byRateLimiter.get(claim.rateLimiter);
+        if (owners == null) {
+            return;
+        }
+        owners.remove(claim.owner);
+        if (owners.isEmpty()) {
+            byRateLimiter.remove(claim.rateLimiter);
+        }
+        update(claim.domain, byRateLimiter);
+        if (byRateLimiter.isEmpty()) {
+            domains.remove(claim.domain);
+        }
+    }
+
+    private void update(String domain, Map<String, Set<String>> byRateLimiter) {
+        if (byRateLimiter.size() > 1) {
+            shared.add(domain);
+        } else {
+            shared.remove(domain);
+        }
+    }
+
+    /**
+     * @return name of the RateLimiter owning the ConfigMap or null if it isn't a RateLimiter ConfigMap
+     */
+    private static String rateLimiterOwner(ObjectMeta metadata) {
+        return Optional.ofNullable(metadata.getOwnerReferences()).orElse(Collections.emptyList()).stream()
+                .filter(reference -> RATE_LIMITER.getName().equals(reference.getKind()))
+                .map(OwnerReference::getName)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static String key(String namespace, String name) {
+        return namespace + "/" + name;
+    }
+
+    @Value
+    private static class Claim {
+        String domain;
+        /**
+         * namespace/name of the RateLimiter the domain is claimed under.
+         */
+        String rateLimiter;
+        /**
+         * ConfigMap file that carries the domain, as kind/namespace/name/file.
+         */
+        String owner;
+    }
+
+    @Value
+    private static class IndexedConfigMap {
+        String rateLimiter;
+        Parsed parsed;
+        /**
+         * Claims by file name.
+         */
+        Map<String, Claim> claims;
+    }
+}
@@ -0,0 +1,178 @@
+package com.evil.k8s.operator.test;
+
+import com.evil.k8s.operator.test.models.ConfigMapRateLimitProperty;
+import com.evil.k8s.operator.test.models.RateLimiter;
+import com.evil.k8s.operator.test.models.RateLimiterConfig;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.fabric8.kubernetes.api.model.ContainerBuilder;
+import io.fabric8.kubernetes.api.model.IntOrString;
+import io.fabric8.kubernetes.api.model.ServiceBuilder;
+import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
+
+import java.util.Iterator;
+
+import static com.evil.k8s.operator.test.models.RateLimiterConfig.Context.SIDECAR_INBOUND;
+import static com.evil.k8s.operator.test.utils.Utils.*;
+
+/**
+ * Renders the children the operator is expected to generate from a RateLimiter or a RateLimiterConfig, for
+ * {@link StructuralDiff}. A manifest holds only the fields the operator owns, everything else is left out.
+ */
+public class ExpectedManifests {
+
+    public static final int GRPC_PORT = 8081;
+
+    private ExpectedManifests() {
+    }
+
+    /**
+     * The runtime directory is operator configuration, not part of the RateLimiter, so it is passed in as read from
+     * the actual Deployment; when it is absent only the presence of the variables is expected.
+     */
+    public static JsonNode rateLimiterDeployment(RateLimiter rateLimiter, String runtimeRoot, String runtimeSubdirectory) {
+        String name = rateLimiter.getMetadata().getName();
+        ContainerBuilder container = new ContainerBuilder()
+                .addNewPort().withContainerPort(GRPC_PORT).endPort()
+                .addNewEnv().withName("LOG_LEVEL").withValue(rateLimiter.getSpec().getLogLevel()).endEnv()
+                .addNewEnv().withName("REDIS_SOCKET_TYPE").withValue(TCP).endEnv()
+                .addNewEnv().withName("REDIS_URL").withValue(generateRedisName(name) + ":" + redisPort).endEnv()
+                .addNewEnv().withName("RUNTIME_ROOT").withValue(runtimeRoot).endEnv()
+                .addNewEnv().withName("RUNTIME_SUBDIRECTORY").withValue(runtimeSubdirectory).endEnv()
+                .addNewEnv().withName("RUNTIME_IGNOREDOTFILES").withValue(Boolean.TRUE.toString()).endEnv()
+                .addNewEnv().withName("RUNTIME_WATCH_ROOT").withValue(Boolean.FALSE.toString()).endEnv();
+        if (runtimeRoot != null && runtimeSubdirectory != null) {
+            container.addNewVolumeMount().withMountPath(generateMountPath(runtimeRoot, runtimeSubdirectory)).endVolumeMount();
+        }
+        return manifest(new DeploymentBuilder()
+                .withNewSpec()
+                .withReplicas(rateLimiter.getSpec().getSize())
+                .withNewTemplate()
+                .withNewSpec()
+                .withContainers(container.build())
+                .endSpec()
+                .endTemplate()
+                .endSpec()
+                .build());
+    }
+
+    public static JsonNode redisDeployment(RateLimiter rateLimiter) {
+        String redisName = generateRedisName(rateLimiter.getMetadata().getName());
+        return manifest(new DeploymentBuilder()
+                .withNewSpec()
+                .withReplicas(1)
+                .withNewTemplate()
+                .withNewMetadata().addToLabels("app", redisName).endMetadata()
+                .withNewSpec()
+                .addNewContainer().addNewPort().withContainerPort(redisPort).endPort().endContainer()
+                .endSpec()
+                .endTemplate()
+                .endSpec()
+                .build());
+    }
+
+    public static JsonNode rateLimiterService(RateLimiter rateLimiter) {
+        String name = rateLimiter.getMetadata().getName();
+        return service(name, "grpc-" + name, GRPC_PORT);
+    }
+
+    public static JsonNode redisService(RateLimiter rateLimiter) {
+        String redisName = generateRedisName(rateLimiter.getMetadata().getName());
+        return service(redisName, redisName, redisPort);
+    }
+
+    /**
+     * Name of the RateLimiter ConfigMap file generated from the config.
+     */
+    public static String configMapFile(RateLimiterConfig rateLimiterConfig) {
+        return rateLimiterConfig.getMetadata().getName() + ".yaml";
+    }
+
+    /**
+     * Content of {@link #configMapFile}, the domain is the one the EnvoyFilter sends. Compared against the parsed
+     * file, so divergence paths continue past {@code /data/<file>} into it.
+     */
+    public static JsonNode configMapEntry(RateLimiterConfig rateLimiterConfig) {
+        return manifest(new ConfigMapRateLimitProperty(rateLimiterConfig.getMetadata().getName(),
+                rateLimiterConfig.getSpec().getDescriptors()));
+    }
+
+    public static JsonNode envoyFilter(RateLimiterConfig rateLimiterConfig) {
+        RateLimiterConfig.RateLimiterConfigSpec spec = rateLimiterConfig.getSpec();
+        String namespace = rateLimiterConfig.getMetadata().getNamespace();
+        String service = spec.getRateLimiter() + "." + namespace + ".svc.cluster.local";
+        String context = spec.getApplyTo().toString();
+
+        ObjectNode envoyFilter = JSON_MAPPER.createObjectNode();
+        ObjectNode envoyFilterSpec = envoyFilter.putObject("spec");
+        if (spec.getWorkloadSelector() != null) {
+            envoyFilterSpec.putObject("workloadSelector").set("labels",
+                    JSON_MAPPER.valueToTree(spec.getWorkloadSelector().getLabels()));
+        }
+        ArrayNode configPatches = envoyFilterSpec.putArray("configPatches");
+
+        ObjectNode httpFilter = configPatch(configPatches, "HTTP_FILTER", context, "INSERT_BEFORE");
+        ObjectNode filter = httpFilter.with("match").with("listener").with("filterChain").with("filter");
+        filter.put("name", "envoy.http_connection_manager");
+        filter.with("subFilter").put("name", "envoy.router");
+        ObjectNode rateLimit = httpFilter.with("patch").with("value");
+        rateLimit.put("name", "envoy.rate_limit");
+        ObjectNode rateLimitConfig = rateLimit.with("config");
+        rateLimitConfig.put("domain", rateLimiterConfig.getMetadata().getName());
+        ObjectNode grpcService = rateLimitConfig.with("rate_limit_service").with("grpc_service");
+        grpcService.with("envoy_grpc").put("cluster_name", "patched." + service);
+        grpcService.put("timeout", spec.getRateLimitRequestTimeout());
+
+        ObjectNode cluster = configPatch(configPatches, "CLUSTER", null, "MERGE");
+        cluster.with("match").with("cluster").put("service", service);
+        cluster.with("patch").with("value").put("name", "patched." + service);
+
+        ObjectNode virtualHost = configPatch(configPatches, "VIRTUAL_HOST", context, "MERGE");
+        virtualHost.with("match").with("routeConfiguration").with("vhost").put("name", spec.getApplyTo() == SIDECAR_INBOUND
+                ? "inbound|http|" + spec.getPort()
+                : spec.getHost() + ":" + spec.getPort());
+        virtualHost.with("patch").with("value").set("rate_limits", JSON_MAPPER.valueToTree(spec.getRateLimits()));
+        return prune(envoyFilter);
+    }
+
+    private static JsonNode service(String name, String portName, int port) {
+        return manifest(new ServiceBuilder()
+                .withNewSpec()
+                .addNewPort()
+                .withName(portName)
+                .withProtocol(TCP)
+                .withPort(port)
+                .withTargetPort(new IntOrString(port))
+                .endPort()
+                .addToSelector("app", name)
+                .endSpec()
+                .build());
+    }
+
+    private static ObjectNode configPatch(ArrayNode configPatches, String applyTo, String context, String operation) {
+        ObjectNode configPatch = configPatches.addObject();
+        configPatch.put("applyTo", applyTo);
+        configPatch.with("match").put("context", context);
+        configPatch.with("patch").put("operation", operation);
+        return configPatch;
+    }
+
+    private static JsonNode manifest(Object model) {
+        return prune(JSON_MAPPER.valueToTree(model));
+    }
+
+    /**
+     * Drops nulls and empty containers the models serialize for the fields a builder didn't set.
+     */
+    private static JsonNode prune(JsonNode node) {
+        Iterator<JsonNode> elements = node.elements();
+        while (elements.hasNext()) {
+            JsonNode element = prune(elements.next());
+            if (element.isNull() || element.isContainerNode() && element.size() == 0) {
+                elements.remove();
+            }
+        }
+        return node;
+    }
+}
@@ -0,0 +1,122 @@
+package com.evil.k8s.operator.test;
+
+import com.evil.k8s.operator.test.models.RateLimiterConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.envoyproxy.envoy.service.ratelimit.v3.RateLimitRequest;
+import io.envoyproxy.envoy.service.ratelimit.v3.RateLimitResponse;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Local stand-in for the gateway a RateLimiterConfig patches, for load without a cluster. Like the rate limit filter
+ * of Envoy, it turns the request headers named by the rate limit actions into descriptors
+ * ({@link RateLimitActionEvaluator}), asks the rate limit service about them in the domain of the config and answers
+ * 429 when it says OVER_LIMIT, 200 otherwise.
+ * <p>
+ * A request without descriptors isn't sent to the service. When the service fails, the request is refused with 500 if
+ * the config sets failureModeDeny and let through otherwise. Listens on localhost.
+ */
+@Slf4j
+public class GatewayStandIn implements AutoCloseable {
+
+    public static final String RATE_LIMITED_HEADER = "x-envoy-ratelimited";
+    private static final int BACKLOG = 1024;
+
+    private final RateLimiterConfig rateLimiterConfig;
+    private final RateLimitActionEvaluator evaluator;
+    private final Function<RateLimitRequest, RateLimitResponse> rateLimitService;
+    private final int threads;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    /**
+     * @param rateLimitService a gRPC stub or {@link RateLimitServiceEmulator#shouldRateLimit}; it is called from
+     *                         {@code threads} threads at most
+     */
+    public GatewayStandIn(RateLimiterConfig rateLimiterConfig,
+                          Function<RateLimitRequest, RateLimitResponse> rateLimitService, int threads) {
+        this.rateLimiterConfig = rateLimiterConfig;
+        this.evaluator = new RateLimitActionEvaluator(rateLimiterConfig);
+        this.rateLimitService = rateLimitService;
+        this.threads = threads;
+    }
+
+    public synchronized GatewayStandIn start() throws IOException {
+        if (server == null) {
+            executor = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "gateway-stand-in");
+                thread.setDaemon(true);
+                return thread;
+            });
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), BACKLOG);
+            server.createContext("/", this::handle);
+            server.setExecutor(executor);
+            server.start();
+            log.info("Gateway stand-in for {} listens on {}", rateLimiterConfig.getMetadata().getName(),
+                    server.getAddress());
+        }
+        return this;
+    }
+
+    public synchronized InetSocketAddress getAddress() {
+        if (server == null) {
+            throw new IllegalStateException("Gateway stand-in isn't started");
+        }
+        return server.getAddress();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            RateLimitRequest request = rateLimitRequest(exchange);
+            int status = 200;
+            if (request.getDescriptorsCount() > 0) {
+                try {
+                    if (rateLimitService.apply(request).getOverallCode() == RateLimitResponse.Code.OVER_LIMIT) {
+                        status = 429;
+                        exchange.getResponseHeaders().add(RATE_LIMITED_HEADER, "true");
+                    }
+                } catch (RuntimeException ex) {
+                    log.debug("Rate limit service failed", ex);
+                    status = rateLimiterConfig.getSpec().isFailureModeDeny() ? 500 : 200;
+                }
+            }
+            // HttpServer may drop an idle keep-alive connection just as the client reuses it
+            exchange.getResponseHeaders().add("Connection", "close");
+            exchange.sendResponseHeaders(status, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private RateLimitRequest rateLimitRequest(HttpExchange exchange) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        exchange.getRequestHeaders().forEach((name, values) -> headers.put(name, values.get(0)));
+        RateLimitRequest.Builder request = RateLimitRequest.newBuilder()
+                .setDomain(rateLimiterConfig.getMetadata().getName());
+        evaluator.evaluate(new RateLimitActionEvaluator.Batch().add(headers),
+                (index, descriptor) -> request.addDescriptors(descriptor.toRateLimitDescriptor()));
+        return request.build();
+    }
+
+    @Override
+    @SneakyThrows
+    public synchronized void close() {
+        if (server != null) {
+            server.stop(0);
+            executor.shutdownNow();
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+            server = null;
+        }
+    }
+}
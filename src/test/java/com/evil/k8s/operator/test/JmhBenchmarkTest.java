@@ -0,0 +1,72 @@
+package com.evil.k8s.operator.test;
+
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.util.Collection;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * Запуск JMH-бенчмарков {@link ModelSerializationBenchmark}, {@link ValidatorBenchmark},
+ * {@link RateLimitServiceBenchmark}, {@link RateLimitCountersBenchmark} и {@link RateLimitActionEvaluatorBenchmark}
+ * с профилировщиком GC: кроме пропускной способности и времени вызова печатается объем аллокаций на операцию ({@code gc.alloc.rate.norm}).
+ * Результаты сохраняются в JSON, чтобы сравнивать изменения горячих путей с базовой линией. Кластер не нужен.
+ */
+@Slf4j
+@Tag("benchmark")
+class JmhBenchmarkTest {
+
+    public static final String INCLUDE_PROPERTY = "k8s.benchmark.jmh.include";
+    public static final String FORKS_PROPERTY = "k8s.benchmark.jmh.forks";
+    public static final String WARMUP_PROPERTY = "k8s.benchmark.jmh.warmup";
+    public static final String MEASUREMENT_PROPERTY = "k8s.benchmark.jmh.measurement";
+    public static final String RESULT_PROPERTY = "k8s.benchmark.jmh.result";
+    public static final String THREADS_PROPERTY = "k8s.benchmark.jmh.threads";
+
+    /**
+     * One run per thread count of {@link #THREADS_PROPERTY}; with several counts the result file of each run gets
+     * the count as a suffix.
+     */
+    @Test
+    public void jmh() throws Exception {
+        String result = System.getProperty(RESULT_PROPERTY, "target/jmh-result.json");
+        String[] threads = System.getProperty(THREADS_PROPERTY, "1").split(",");
+        for (String count : threads) {
+            run(Integer.parseInt(count.trim()), threads.length == 1 ? result
+                    : result.replaceFirst("(\\.json)?$", "-threads-" + count.trim() + "$1"));
+        }
+    }
+
+    private void run(int threads, String result) throws Exception {
+        Options options = new OptionsBuilder()
+                .include(System.getProperty(INCLUDE_PROPERTY,
+                        ModelSerializationBenchmark.class.getSimpleName() + "|" + ValidatorBenchmark.class.getSimpleName()
+                                + "|" + RateLimitServiceBenchmark.class.getSimpleName()
+                                + "|" + RateLimitCountersBenchmark.class.getSimpleName()
+                                + "|" + RateLimitActionEvaluatorBenchmark.class.getSimpleName()))
+                .forks(Integer.getInteger(FORKS_PROPERTY, 1))
+                .threads(threads)
+                // The test classes are compiled with preview features enabled
+                .jvmArgsAppend("--enable-preview")
+                .warmupIterations(Integer.getInteger(WARMUP_PROPERTY, 3))
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(Integer.getInteger(MEASUREMENT_PROPERTY, 5))
+                .measurementTime(TimeValue.seconds(1))
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(result)
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+        assertFalse(results.isEmpty(), "No benchmark matched " + options.getIncludes());
+        log.info("{} benchmarks in {} threads, results in {}", results.size(), threads, result);
+    }
+}
@@ -3,18 +3,55 @@ package com.evil.k8s.operator.test;
 import io.fabric8.kubernetes.client.DefaultKubernetesClient;
 import lombok.SneakyThrows;
 import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
 
 public class K8sRateLimitAbstractTest extends K8sTest {
 
+    private static OfflineCluster offlineCluster;
+
+    /**
+     * Namespace of the running scenario, taken from the pool for the scenario alone.
+     */
+    protected String namespace;
+    protected K8sRequester requester;
+
     @BeforeAll
     @SneakyThrows
     public static void createClient() {
-        client = new DefaultKubernetesClient();
+        if (OfflineCluster.isEnabled()) {
+            offlineCluster = new OfflineCluster();
+            client = offlineCluster.getClient();
+        } else {
+            client = new DefaultKubernetesClient();
+        }
+        namespaces = NamespacePool.fromSystemProperties(client);
+        domains = new DomainIndex(client).start();
+    }
+
+    @BeforeEach
+    void acquireNamespace() {
+        namespace = namespaces.acquire();
+        requester = new K8sRequester(client, namespace, domains);
+    }
+
+    @AfterEach
+    void releaseNamespace() {
+        requester.close();
+        namespaces.release(namespace);
     }
 
     @AfterAll
     static void afterAll() {
-        client.close();
+        RequesterMetrics.shared().dump();
+        domains.close();
+        namespaces.close();
+        if (offlineCluster != null) {
+            offlineCluster.close();
+            offlineCluster = null;
+        } else {
+            client.close();
+        }
     }
 }
@@ -1,80 +1,406 @@
 package com.evil.k8s.operator.test;
 
+import com.evil.k8s.operator.test.ConvergenceAwaiter.Convergence;
+import com.evil.k8s.operator.test.ConvergenceAwaiter.Expectation;
+import com.evil.k8s.operator.test.ResourceCache.Cached;
+import com.evil.k8s.operator.test.ResourceKind.Listed;
 import com.evil.k8s.operator.test.models.RateLimiter;
 import com.evil.k8s.operator.test.models.RateLimiterConfig;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.Container;
 import io.fabric8.kubernetes.api.model.DoneableConfigMap;
+import io.fabric8.kubernetes.api.model.ObjectMeta;
 import io.fabric8.kubernetes.api.model.Service;
 import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.client.DefaultKubernetesClient;
+import io.fabric8.kubernetes.client.HttpClientAware;
 import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
 import io.fabric8.kubernetes.client.dsl.Resource;
-import lombok.RequiredArgsConstructor;
+import io.fabric8.kubernetes.client.dsl.base.CustomResourceDefinitionContext;
+import lombok.Getter;
 import lombok.SneakyThrows;
+import lombok.Value;
 import lombok.extern.slf4j.Slf4j;
 import me.snowdrop.istio.api.networking.v1alpha3.EnvoyFilter;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
 
-import java.util.Map;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
 
 import static com.evil.k8s.operator.test.CustomResourcesConstants.*;
-import static com.evil.k8s.operator.test.utils.Utils.YAML_MAPPER;
+import static com.evil.k8s.operator.test.ResourceKind.*;
+import static com.evil.k8s.operator.test.utils.Utils.JSON_MAPPER;
+import static com.evil.k8s.operator.test.utils.Utils.generateRedisName;
 
 @Slf4j
-@RequiredArgsConstructor
-public class K8sRequester {
+public class K8sRequester implements AutoCloseable {
 
-    private static final int SLEEP_TIME_MS = 2_000;
+    public static final String TEARDOWN_PARALLELISM_PROPERTY = "k8s.teardown.parallelism";
+    public static final String TEARDOWN_TIMEOUT_PER_RESOURCE_PROPERTY = "k8s.teardown.timeout.per.resource.ms";
+    public static final String BATCH_PARALLELISM_PROPERTY = "k8s.batch.parallelism";
+    public static final String CONFLICT_RETRIES_PROPERTY = "k8s.edit.conflict.retries";
+    public static final String CONFLICT_BACKOFF_PROPERTY = "k8s.edit.conflict.backoff.ms";
 
+    private static final Duration MAX_CONFLICT_BACKOFF = Duration.ofSeconds(5);
+    private static final int MAX_READS = 256;
+    private static final Duration CACHE_TIMEOUT = Duration.ofSeconds(30);
+    private static final Duration POLL_INTERVAL = Duration.ofMillis(250);
+
+    /**
+     * The client of the constructor limited by the {@link ApiThrottle} of the run and measured by the
+     * {@link RequesterMetrics} of the run, unless they are disabled.
+     */
     private final KubernetesClient client;
+    @Getter
+    private final ApiThrottle.Interceptor throttle;
+    private final RequesterMetrics metrics = RequesterMetrics.shared();
+    @Getter
     private final String namespace;
+    @Getter
+    private final ConvergenceAwaiter awaiter;
+    /**
+     * Local store of the child resources, null when disabled with {@link ResourceCache#ENABLED_PROPERTY}.
+     */
+    private final ResourceCache cache;
+    private final Map<String, String> snapshotSelector = ResourceSnapshot.selectorFromSystemProperties();
+    /**
+     * Snapshots taken since the last mutating call, by owner.
+     */
+    private final Map<String, ResourceSnapshot> snapshots = new ConcurrentHashMap<>();
+    /**
+     * Parsed ConfigMap files, shared by the snapshots of the namespace.
+     */
+    @Getter
+    private final ConfigMapFiles configMapFiles = new ConfigMapFiles();
+
+    /**
+     * Cluster-wide domain index shared by the requesters of a run, null when the snapshots don't check it.
+     */
+    @Getter
+    private final DomainIndex domainIndex;
+
+    /**
+     * Result of the wait that ended the last mutating call of each thread, so that calls made concurrently
+     * don't see each other's.
+     */
+    private final ThreadLocal<Convergence> lastConvergence = new ThreadLocal<>();
+    /**
+     * Executor of the convergence tails while the calling thread is in {@link #deferConvergence}, and the tail.
+     */
+    private final ThreadLocal<Executor> deferring = new ThreadLocal<>();
+    private final ThreadLocal<CompletableFuture<Convergence>> deferred = new ThreadLocal<>();
+    /**
+     * Edits, merge patch bytes of all their attempts, whole object bytes and 409 conflicts, by kind.
+     */
+    private final Map<String, long[]> edits = new ConcurrentHashMap<>();
+    private final Map<String, String> observedVersions = new ConcurrentHashMap<>();
+    /**
+     * The resources as this requester last read, created or patched them, by kind, name and resourceVersion, the
+     * latest {@value #MAX_READS}: an edit without a mutation diffs the edited object against the one it was read as.
+     */
+    private final Map<String, JsonNode> reads = Collections.synchronizedMap(new LinkedHashMap<String, JsonNode>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, JsonNode> eldest) {
+            return size() > MAX_READS;
+        }
+    });
+    private final int conflictRetries = Integer.getInteger(CONFLICT_RETRIES_PROPERTY, 5);
+    private final Duration conflictBackoff = Duration.ofMillis(Integer.getInteger(CONFLICT_BACKOFF_PROPERTY, 100));
+
+    public K8sRequester(KubernetesClient client, String namespace) {
+        this(client, namespace, (DomainIndex) null);
+    }
+
+    public K8sRequester(KubernetesClient client, String namespace, DomainIndex domainIndex) {
+        this(client, namespace, null, domainIndex);
+    }
+
+    /**
+     * @param awaiter null for the one of the system properties, on the client of the requester
+     */
+    public K8sRequester(KubernetesClient client, String namespace, ConvergenceAwaiter awaiter, DomainIndex domainIndex) {
+        this.throttle = ApiThrottle.isEnabled()
+                ? ApiThrottle.shared().interceptor((verbs, nanos) ->
+                metrics.waited("throttle " + verbs.name().toLowerCase(), nanos))
+                : null;
+        List<Interceptor> interceptors = new ArrayList<>();
+        if (throttle != null) {
+            interceptors.add(throttle);
+        }
+        if (RequesterMetrics.isEnabled()) {
+            interceptors.add(metrics.interceptor());
+        }
+        this.client = intercepted(client, interceptors);
+        this.namespace = namespace;
+        this.awaiter = awaiter != null ? awaiter : ConvergenceAwaiter.fromSystemProperties(this.client, namespace);
+        this.domainIndex = domainIndex;
+        this.cache = ResourceCache.isEnabled() ? new ResourceCache(this.client, namespace).start() : null;
+    }
+
+    /**
+     * Time the calls of the requester, its waits and cache included, have spent waiting for the {@link ApiThrottle}.
+     */
+    public Duration getThrottleWait() {
+        return throttle != null ? throttle.getWaited() : Duration.ZERO;
+    }
+
+    /**
+     * Result of the wait that ended the last mutating call made by the calling thread, null before the first one.
+     */
+    public Convergence getLastConvergence() {
+        return lastConvergence.get();
+    }
+
+    /**
+     * Makes the mutating call without waiting for its convergence: the wait is left to the watch callbacks and
+     * the cache catch-up after it runs on the executor.
+     *
+     * @return the convergence of the call, null if it failed before its wait
+     */
+    CompletableFuture<Convergence> deferConvergence(Runnable call, Executor executor) {
+        deferring.set(executor);
+        try {
+            call.run();
+            return deferred.get();
+        } finally {
+            deferring.remove();
+            deferred.remove();
+        }
+    }
+
+    /**
+     * Reads a resource from the local cache when it holds the kind, otherwise from the API server.
+     */
+    public <T> Cached<T> read(ResourceKind<T> kind, String name) {
+        try (RequesterMetrics.Call call = metrics.call("read", kind)) {
+            if (cache != null && cache.contains(kind)) {
+                return call.succeeded(cache.get(kind, name));
+            }
+            T resource = kind.get(client, namespace, name);
+            return call.succeeded(new Cached<>(kind, name, resource,
+                    resource == null ? null : kind.metadata(resource).getResourceVersion(), null));
+        }
+    }
+
+    /**
+     * Lists a kind from the local cache when it holds the kind, otherwise from the API server.
+     */
+    public <T> Listed<T> list(ResourceKind<T> kind, Map<String, String> labels) {
+        try (RequesterMetrics.Call call = metrics.call("list", kind)) {
+            if (cache != null && cache.contains(kind)) {
+                return call.succeeded(cache.list(kind, labels));
+            }
+            return call.succeeded(kind.list(client, namespace, labels));
+        }
+    }
+
+    /**
+     * RateLimiter with its Deployments, Services and ConfigMap, reused until the next mutating call.
+     */
+    public ResourceSnapshot snapshot(RateLimiter rateLimiter) {
+        String name = rateLimiter.getMetadata().getName();
+        String redisName = generateRedisName(name);
+        return snapshots.computeIfAbsent(RATE_LIMITER + "/" + name, key -> new ResourceSnapshot.Builder(this, snapshotSelector)
+                .owner(RATE_LIMITER, name)
+                .owned(DEPLOYMENT, name, redisName)
+                .owned(SERVICE, name, redisName)
+                .owned(CONFIG_MAP, name)
+                .build());
+    }
+
+    /**
+     * RateLimiterConfig with its EnvoyFilter and the ConfigMap of its RateLimiter, reused until the next mutating call.
+     */
+    public ResourceSnapshot snapshot(RateLimiterConfig rateLimiterConfig) {
+        String name = rateLimiterConfig.getMetadata().getName();
+        String rateLimiterName = rateLimiterConfig.getSpec().getRateLimiter();
+        return snapshots.computeIfAbsent(RATE_LIMITER_CONFIG + "/" + name, key -> new ResourceSnapshot.Builder(this, snapshotSelector)
+                .owner(RATE_LIMITER_CONFIG, name)
+                .owned(ENVOY_FILTER, name)
+                .ownedBy(RATE_LIMITER, rateLimiterName, CONFIG_MAP, rateLimiterName)
+                .build());
+    }
 
     @SneakyThrows
     public RateLimiter getRateLimiter(String name) {
-        Map<String, Object> stringObjectMap = client
-                .customResource(rateLimitCrdContext)
-                .get(namespace, name);
-        return YAML_MAPPER.convertValue(stringObjectMap, RateLimiter.class);
+        try (RequesterMetrics.Call call = metrics.call("get", RATE_LIMITER)) {
+            Map<String, Object> stringObjectMap = client
+                    .customResource(rateLimitCrdContext)
+                    .get(namespace, name);
+            return call.succeeded(JSON_MAPPER.convertValue(read(RATE_LIMITER, stringObjectMap), RateLimiter.class));
+        }
     }
 
     @SneakyThrows
     public RateLimiterConfig getRateLimiterConfig(String name) {
-        Map<String, Object> stringObjectMap = client
-                .customResource(rateLimitConfigCrdContext)
-                .get(namespace, name);
-        return YAML_MAPPER.convertValue(stringObjectMap, RateLimiterConfig.class);
+        try (RequesterMetrics.Call call = metrics.call("get", RATE_LIMITER_CONFIG)) {
+            Map<String, Object> stringObjectMap = client
+                    .customResource(rateLimitConfigCrdContext)
+                    .get(namespace, name);
+            return call.succeeded(JSON_MAPPER.convertValue(read(RATE_LIMITER_CONFIG, stringObjectMap),
+                    RateLimiterConfig.class));
+        }
     }
 
     @SneakyThrows
     public K8sRequester createRateLimiter(RateLimiter rateLimiter) {
-        client.customResource(rateLimitCrdContext)
-                .create(rateLimiter.getMetadata().getNamespace(), YAML_MAPPER.writeValueAsString(rateLimiter));
-        TimeUnit.MILLISECONDS.sleep(SLEEP_TIME_MS);
+        String name = rateLimiter.getMetadata().getName();
+        try (RequesterMetrics.Call call = metrics.call("create", RATE_LIMITER);
+             Expectation expectation = awaiter.expect("create RateLimiter " + name)
+                .appears(DEPLOYMENT, name, deployment -> isReconciled(deployment, rateLimiter))
+                .appears(DEPLOYMENT, generateRedisName(name))
+                .appears(SERVICE, name)
+                .appears(SERVICE, generateRedisName(name))
+                .appears(CONFIG_MAP, name)
+                .open()) {
+            observe(RATE_LIMITER, client.customResource(rateLimitCrdContext)
+                    .create(rateLimiter.getMetadata().getNamespace(), JSON_MAPPER.writeValueAsString(rateLimiter)));
+            converge(expectation);
+            call.succeeded();
+        }
         return this;
     }
 
     @SneakyThrows
     public K8sRequester createRateLimiterConfig(RateLimiterConfig rateLimiterConfig) {
-        client.customResource(rateLimitConfigCrdContext)
-                .create(rateLimiterConfig.getMetadata().getNamespace(), YAML_MAPPER.writeValueAsString(rateLimiterConfig));
-        TimeUnit.MILLISECONDS.sleep(SLEEP_TIME_MS);
+        String name = rateLimiterConfig.getMetadata().getName();
+        try (RequesterMetrics.Call call = metrics.call("create", RATE_LIMITER_CONFIG);
+             Expectation expectation = awaiter.expect("create RateLimiterConfig " + name)
+                .appears(ENVOY_FILTER, name)
+                .appears(CONFIG_MAP, rateLimiterConfig.getSpec().getRateLimiter(),
+                        configMap -> configMap.getData() != null && configMap.getData().containsKey(name + ".yaml"))
+                .open()) {
+            observe(RATE_LIMITER_CONFIG, client.customResource(rateLimitConfigCrdContext)
+                    .create(rateLimiterConfig.getMetadata().getNamespace(), JSON_MAPPER.writeValueAsString(rateLimiterConfig)));
+            converge(expectation);
+            call.succeeded();
+        }
         return this;
     }
 
+    /**
+     * Creates the RateLimiterConfigs concurrently, at most {@value #BATCH_PARALLELISM_PROPERTY} at a time, and then
+     * waits once for the EnvoyFilters of the created ones, on one watch of the namespace opened before the creates,
+     * and for their files in the ConfigMaps. A config the API server refuses, e.g. the admission webhook for a missing
+     * RateLimiter, is reported in the result and left out of the wait; the rest of the batch goes on.
+     */
+    public BatchResult createRateLimiterConfigs(List<RateLimiterConfig> rateLimiterConfigs) {
+        try (RequesterMetrics.Call call = metrics.call("create batch", RATE_LIMITER_CONFIG)) {
+            return call.succeeded(createConcurrently(rateLimiterConfigs));
+        }
+    }
+
     @SneakyThrows
+    private BatchResult createConcurrently(List<RateLimiterConfig> rateLimiterConfigs) {
+        long start = System.nanoTime();
+        List<String> created = new ArrayList<>();
+        Map<String, String> failed = new LinkedHashMap<>();
+        if (rateLimiterConfigs.isEmpty()) {
+            return new BatchResult(created, failed, null, Duration.ZERO);
+        }
+        Map<String, Set<String>> files = new HashMap<>();
+        rateLimiterConfigs.forEach(rateLimiterConfig -> files
+                .computeIfAbsent(rateLimiterConfig.getSpec().getRateLimiter(),
+                        rateLimiter -> ConcurrentHashMap.newKeySet())
+                .add(rateLimiterConfig.getMetadata().getName() + ".yaml"));
+        Expectation expectation = awaiter.expect("create " + rateLimiterConfigs.size() + " RateLimiterConfigs")
+                .appearsAll(ENVOY_FILTER, rateLimiterConfigs.stream()
+                        .map(rateLimiterConfig -> rateLimiterConfig.getMetadata().getName())
+                        .collect(Collectors.toList()));
+        files.forEach((rateLimiter, names) -> expectation.appears(CONFIG_MAP, rateLimiter, configMap ->
+                configMap.getData() != null && configMap.getData().keySet().containsAll(names)));
+        // Opened before the creates, so the reconciliation of the first ones is seen however fast it is
+        try (Expectation opened = expectation.open()) {
+            ExecutorService executor = Executors.newFixedThreadPool(
+                    Math.min(rateLimiterConfigs.size(), Integer.getInteger(BATCH_PARALLELISM_PROPERTY, 8)));
+            Map<RateLimiterConfig, Future<?>> creates = new LinkedHashMap<>();
+            try {
+                rateLimiterConfigs.forEach(rateLimiterConfig -> creates.put(rateLimiterConfig, executor.submit(() -> {
+                    observe(RATE_LIMITER_CONFIG, client.customResource(rateLimitConfigCrdContext)
+                            .create(rateLimiterConfig.getMetadata().getNamespace(),
+                                    JSON_MAPPER.writeValueAsString(rateLimiterConfig)));
+                    return null;
+                })));
+            } finally {
+                executor.shutdown();
+            }
+            for (Map.Entry<RateLimiterConfig, Future<?>> create : creates.entrySet()) {
+                String name = create.getKey().getMetadata().getName();
+                try {
+                    create.getValue().get();
+                    created.add(name);
+                } catch (ExecutionException ex) {
+                    Throwable cause = ex.getCause();
+                    failed.put(name, cause instanceof KubernetesClientException
+                            && ((KubernetesClientException) cause).getStatus() != null
+                            ? ((KubernetesClientException) cause).getStatus().getMessage()
+                            : String.valueOf(cause.getMessage()));
+                    log.warn("Rate limiter config: [{}] hasn't been created: {}", name, failed.get(name));
+                    opened.without(ENVOY_FILTER, name);
+                    // The CONFIG_MAP predicates read the file sets on the watch threads, under the expectation lock
+                    opened.update(() -> files.get(create.getKey().getSpec().getRateLimiter()).remove(name + ".yaml"));
+                }
+            }
+            if (created.isEmpty()) {
+                return new BatchResult(created, failed, null, Duration.ofNanos(System.nanoTime() - start));
+            }
+            files.forEach((rateLimiter, names) -> {
+                if (names.isEmpty()) {
+                    opened.without(CONFIG_MAP, rateLimiter);
+                }
+            });
+            converge(opened);
+        }
+        return new BatchResult(created, failed, getLastConvergence(), Duration.ofNanos(System.nanoTime() - start));
+    }
+
     public Deployment getDeployment(String name) {
-        return client.apps().deployments().list().getItems()
-                .stream()
-                .filter(deployment -> deployment.getMetadata().getName().equals(name))
-                .findFirst()
-                .orElseThrow(() -> new IllegalStateException("Non deployment: " + name));
+        try (RequesterMetrics.Call call = metrics.call("get", DEPLOYMENT)) {
+            return call.succeeded(read(DEPLOYMENT, Optional.ofNullable(client.apps().deployments()
+                    .inNamespace(namespace).withName(name).get())
+                    .orElseThrow(() -> new IllegalStateException("Non deployment: " + name))));
+        }
     }
 
-    @SneakyThrows
+    /**
+     * Applies the mutation to the RateLimiter and sends what it changed as a merge patch.
+     */
+    public void editRateLimiter(RateLimiter rateLimiter, Consumer<RateLimiter> mutation) {
+        editRateLimiter(rateLimiter, applied(rateLimiter, mutation), mutation);
+    }
+
+    /**
+     * Sends the difference between the RateLimiter as it was read, see {@link #readAs}, and this one as a merge patch.
+     */
     public void editRateLimiter(RateLimiter rateLimiter) {
-        client.customResource(rateLimitCrdContext)
-                .edit(namespace, rateLimiter.getMetadata().getName(),
-                        YAML_MAPPER.writeValueAsString(rateLimiter));
-        TimeUnit.MILLISECONDS.sleep(SLEEP_TIME_MS);
+        editRateLimiter(rateLimiter, readAs(RATE_LIMITER, rateLimiter), null);
+    }
+
+    private void editRateLimiter(RateLimiter rateLimiter, JsonNode before, Consumer<RateLimiter> mutation) {
+        String name = rateLimiter.getMetadata().getName();
+        try (RequesterMetrics.Call call = metrics.call("edit", RATE_LIMITER);
+             Expectation expectation = awaiter.expect("edit RateLimiter " + name)
+                .appears(DEPLOYMENT, name, deployment -> isReconciled(deployment, rateLimiter))
+                .open()) {
+            patch(RATE_LIMITER, name, before, rateLimiter, mutation);
+            converge(expectation);
+            call.succeeded();
+        }
     }
 
     public Resource<ConfigMap, DoneableConfigMap> getConfigMap(String name) {
@@ -83,115 +409,620 @@ public class K8sRequester {
                 .withName(name);
     }
 
-    public Service getServiceByName(String name) {
-        return client.services().list().getItems()
-                .stream()
-                .filter(service -> service.getMetadata().getName().equals(name))
-                .findFirst()
-                .orElseThrow(() -> new IllegalStateException("Not exist service: " + name));
+    public ConfigMap getConfigMapByName(String name) {
+        try (RequesterMetrics.Call call = metrics.call("get", CONFIG_MAP)) {
+            return call.succeeded(read(CONFIG_MAP, Optional.ofNullable(getConfigMap(name).get())
+                    .orElseThrow(() -> new IllegalStateException("Not exist config map: " + name))));
+        }
+    }
 
+    public Service getServiceByName(String name) {
+        try (RequesterMetrics.Call call = metrics.call("get", SERVICE)) {
+            return call.succeeded(read(SERVICE, Optional.ofNullable(client.services().inNamespace(namespace)
+                    .withName(name).get())
+                    .orElseThrow(() -> new IllegalStateException("Not exist service: " + name))));
+        }
     }
 
     public void deleteRateLimiter(String name) {
-        try {
+        try (RequesterMetrics.Call call = metrics.call("delete", RATE_LIMITER);
+             Expectation expectation = awaiter.expect("delete RateLimiter " + name)
+                .disappears(RATE_LIMITER, name)
+                .disappears(DEPLOYMENT, name)
+                .disappears(DEPLOYMENT, generateRedisName(name))
+                .disappears(SERVICE, name)
+                .disappears(SERVICE, generateRedisName(name))
+                .disappears(CONFIG_MAP, name)
+                .open()) {
             client.customResource(rateLimitCrdContext).delete(namespace, name);
             log.warn("Rate limiter: [{}] deleted", name);
-            TimeUnit.MILLISECONDS.sleep(SLEEP_TIME_MS);
+            converge(expectation);
+            call.succeeded();
         } catch (Exception e) {
             log.warn("Rate limiter: [{}] hasn't been deleted", name);
         }
     }
 
     public void deleteRateLimiterConfig(String name) {
-        try {
+        try (RequesterMetrics.Call call = metrics.call("delete", RATE_LIMITER_CONFIG);
+             Expectation expectation = awaiter.expect("delete RateLimiterConfig " + name)
+                .disappears(RATE_LIMITER_CONFIG, name)
+                .disappears(ENVOY_FILTER, name)
+                .open()) {
             client.customResource(rateLimitConfigCrdContext).delete(namespace, name);
-            TimeUnit.MILLISECONDS.sleep(SLEEP_TIME_MS);
+            converge(expectation);
             log.warn("Rate limiter: [{}] deleted", name);
+            call.succeeded();
         } catch (Exception e) {
             log.warn("Rate limiter: [{}] hasn't been deleted", name);
         }
     }
 
+    /**
+     * Deletes the RateLimiters concurrently and waits for the garbage collection of their children.
+     *
+     * @throws IllegalStateException listing the resources that are left after the teardown timeout
+     */
+    public void deleteRateLimiters(Collection<String> names) {
+        Map<ResourceKind<?>, Set<String>> expected = new LinkedHashMap<>();
+        names.forEach(name -> {
+            expected.computeIfAbsent(RATE_LIMITER, kind -> new HashSet<>()).add(name);
+            expected.computeIfAbsent(DEPLOYMENT, kind -> new HashSet<>()).addAll(List.of(name, generateRedisName(name)));
+            expected.computeIfAbsent(SERVICE, kind -> new HashSet<>()).addAll(List.of(name, generateRedisName(name)));
+            expected.computeIfAbsent(CONFIG_MAP, kind -> new HashSet<>()).add(name);
+        });
+        try (RequesterMetrics.Call call = metrics.call("delete batch", RATE_LIMITER)) {
+            deleteConcurrently(rateLimitCrdContext, names, expected);
+            call.succeeded();
+        }
+    }
+
+    /**
+     * Deletes the RateLimiterConfigs concurrently and waits for the garbage collection of their EnvoyFilters.
+     *
+     * @throws IllegalStateException listing the resources that are left after the teardown timeout
+     */
+    public void deleteRateLimiterConfigs(Collection<String> names) {
+        Map<ResourceKind<?>, Set<String>> expected = new LinkedHashMap<>();
+        expected.put(RATE_LIMITER_CONFIG, new HashSet<>(names));
+        expected.put(ENVOY_FILTER, new HashSet<>(names));
+        try (RequesterMetrics.Call call = metrics.call("delete batch", RATE_LIMITER_CONFIG)) {
+            deleteConcurrently(rateLimitConfigCrdContext, names, expected);
+            call.succeeded();
+        }
+    }
+
+    @SneakyThrows
+    private void deleteConcurrently(CustomResourceDefinitionContext context, Collection<String> names,
+                                    Map<ResourceKind<?>, Set<String>> expected) {
+        if (names.isEmpty()) {
+            return;
+        }
+        snapshots.clear();
+        long start = System.nanoTime();
+        ExecutorService executor = Executors.newFixedThreadPool(
+                Math.min(names.size(), Integer.getInteger(TEARDOWN_PARALLELISM_PROPERTY, 8)));
+        Map<String, Future<?>> deletes = new LinkedHashMap<>();
+        try {
+            names.forEach(name -> deletes.put(name, executor.submit(() -> client.customResource(context).delete(namespace, name))));
+        } finally {
+            executor.shutdown();
+        }
+        List<String> failed = new ArrayList<>();
+        for (Map.Entry<String, Future<?>> delete : deletes.entrySet()) {
+            try {
+                delete.getValue().get();
+            } catch (ExecutionException ex) {
+                if (!(ex.getCause() instanceof KubernetesClientException)
+                        || ((KubernetesClientException) ex.getCause()).getCode() != 404) {
+                    failed.add(context.getPlural() + "/" + delete.getKey() + ": " + ex.getCause().getMessage());
+                }
+            }
+        }
+        long absentStart = System.nanoTime();
+        List<String> leaked = awaitAbsent(expected, teardownTimeout(names.size()));
+        metrics.waited("teardown", System.nanoTime() - absentStart);
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        if (!failed.isEmpty() || !leaked.isEmpty()) {
+            throw new IllegalStateException(String.format("Teardown of %d %s in %s: delete failed %s, leaked after %d ms %s",
+                    names.size(), context.getPlural(), namespace, failed, elapsed.toMillis(), leaked));
+        }
+        log.info("Teardown of {} {} in [{}] took {} ms", names.size(), context.getPlural(), namespace, elapsed.toMillis());
+    }
+
+    /**
+     * The garbage collection of a batch takes longer the larger it is: the awaiter timeout of a single operation
+     * plus {@value #TEARDOWN_TIMEOUT_PER_RESOURCE_PROPERTY} for every deleted resource.
+     */
+    private Duration teardownTimeout(int deleted) {
+        return awaiter.getTimeout().plusMillis(deleted * Long.getLong(TEARDOWN_TIMEOUT_PER_RESOURCE_PROPERTY, 100));
+    }
+
+    /**
+     * Waits until none of the resources exists. Waits on cache deliveries when every remaining kind is cached,
+     * polls otherwise.
+     *
+     * @return the resources that still exist at the deadline
+     */
+    @SneakyThrows
+    private List<String> awaitAbsent(Map<ResourceKind<?>, Set<String>> expected, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (true) {
+            long deliveries = cache == null ? 0 : cache.getDeliveries();
+            Map<ResourceKind<?>, Set<String>> present = new LinkedHashMap<>();
+            expected.forEach((kind, names) -> {
+                Set<String> existing = names(kind);
+                Set<String> left = names.stream().filter(existing::contains).collect(Collectors.toCollection(TreeSet::new));
+                if (!left.isEmpty()) {
+                    present.put(kind, left);
+                }
+            });
+            long left = deadline - System.nanoTime();
+            if (present.isEmpty() || left <= 0) {
+                return present.entrySet().stream()
+                        .flatMap(entry -> entry.getValue().stream().map(name -> entry.getKey() + "/" + name))
+                        .collect(Collectors.toList());
+            }
+            if (cache != null && present.keySet().stream().allMatch(cache::contains)) {
+                cache.awaitDelivery(deliveries, Duration.ofNanos(left));
+            } else {
+                TimeUnit.NANOSECONDS.sleep(Math.min(left, POLL_INTERVAL.toNanos()));
+            }
+        }
+    }
+
+    private <T> Set<String> names(ResourceKind<T> kind) {
+        return list(kind, Collections.emptyMap()).getItems().stream()
+                .map(resource -> kind.metadata(resource).getName())
+                .collect(Collectors.toSet());
+    }
+
     public Map<String, Object> getEnvoyFilter(String name) {
-        return client.customResource(envoyFilterContext)
-                .get(namespace, name);
+        try (RequesterMetrics.Call call = metrics.call("get", ENVOY_FILTER)) {
+            return call.succeeded(read(ENVOY_FILTER, client.customResource(envoyFilterContext)
+                    .get(namespace, name)));
+        }
     }
 
 
     public void deleteDeployment(String name) {
-        try {
+        try (RequesterMetrics.Call call = metrics.call("delete", DEPLOYMENT);
+             Expectation expectation = awaiter.expect("delete Deployment " + name)
+                .recreated(DEPLOYMENT, name)
+                .open()) {
             Deployment deployment = getDeployment(name);
-            client.apps().deployments().delete(deployment);
+            client.apps().deployments().inNamespace(namespace).delete(deployment);
             log.warn("Rate limiter Deployment: [{}] deleted", name);
-            TimeUnit.MILLISECONDS.sleep(SLEEP_TIME_MS);
+            converge(expectation);
+            call.succeeded();
         } catch (Exception e) {
             log.warn("Rate limiter: [{}] hasn't been deleted", name);
         }
     }
 
     public void deleteEnvoyFilter(String name) {
-        try {
+        try (RequesterMetrics.Call call = metrics.call("delete", ENVOY_FILTER);
+             Expectation expectation = awaiter.expect("delete EnvoyFilter " + name)
+                .recreated(ENVOY_FILTER, name)
+                .open()) {
             client.customResource(envoyFilterContext).delete(namespace, name);
             log.warn("EnvoyFilter: [{}] deleted", name);
-            TimeUnit.MILLISECONDS.sleep(SLEEP_TIME_MS);
+            converge(expectation);
+            call.succeeded();
         } catch (Exception e) {
             log.warn("EnvoyFilter: [{}] hasn't been deleted", name);
         }
     }
 
     public void deleteService(String serviceName) {
-        try {
+        try (RequesterMetrics.Call call = metrics.call("delete", SERVICE);
+             Expectation expectation = awaiter.expect("delete Service " + serviceName)
+                .recreated(SERVICE, serviceName)
+                .open()) {
             Service serviceList = getServiceByName(serviceName);
-            client.services().delete(serviceList);
+            client.services().inNamespace(namespace).delete(serviceList);
             log.warn("Service: [{}] deleted", serviceName);
-            TimeUnit.MILLISECONDS.sleep(SLEEP_TIME_MS);
+            converge(expectation);
+            call.succeeded();
         } catch (Exception e) {
             log.warn("Service: [{}] hasn't been deleted", serviceName);
         }
     }
 
     public void deleteConfigMap(String name) {
-        try {
-            client.configMaps().delete(getConfigMap(name).get());
+        try (RequesterMetrics.Call call = metrics.call("delete", CONFIG_MAP);
+             Expectation expectation = awaiter.expect("delete ConfigMap " + name)
+                .recreated(CONFIG_MAP, name)
+                .open()) {
+            client.configMaps().inNamespace(namespace).delete(getConfigMap(name).get());
             log.warn("ConfigMap: [{}] deleted", name);
-            TimeUnit.MILLISECONDS.sleep(SLEEP_TIME_MS);
+            converge(expectation);
+            call.succeeded();
         } catch (Exception e) {
             log.warn("ConfigMap: [{}] hasn't been deleted", name);
         }
     }
 
-    @SneakyThrows
+    /**
+     * Applies the mutation to the RateLimiterConfig and sends what it changed as a merge patch.
+     */
+    public void editRateLimiterConfig(RateLimiterConfig rateLimiterConfig, Consumer<RateLimiterConfig> mutation) {
+        editRateLimiterConfig(rateLimiterConfig, applied(rateLimiterConfig, mutation), mutation);
+    }
+
+    /**
+     * Sends the difference between the RateLimiterConfig as it was read, see {@link #readAs}, and this one as a merge
+     * patch.
+     */
     public void editRateLimiterConfig(RateLimiterConfig currentRateLimiterConfig) {
-        client.customResource(rateLimitConfigCrdContext)
-                .edit(currentRateLimiterConfig.getMetadata().getNamespace(), currentRateLimiterConfig.getMetadata().getName(),
-                        YAML_MAPPER.writeValueAsString(currentRateLimiterConfig));
-        TimeUnit.MILLISECONDS.sleep(SLEEP_TIME_MS);
+        editRateLimiterConfig(currentRateLimiterConfig, readAs(RATE_LIMITER_CONFIG, currentRateLimiterConfig), null);
     }
 
     @SneakyThrows
+    private void editRateLimiterConfig(RateLimiterConfig currentRateLimiterConfig, JsonNode before,
+                                       Consumer<RateLimiterConfig> mutation) {
+        String name = currentRateLimiterConfig.getMetadata().getName();
+        RateLimiterConfig.RateLimiterConfigSpec previous =
+                JSON_MAPPER.treeToValue(before.path("spec"), RateLimiterConfig.RateLimiterConfigSpec.class);
+        RateLimiterConfig.RateLimiterConfigSpec edited = currentRateLimiterConfig.getSpec();
+        // Wait for every child the edit has to change; the operator doesn't write them at once
+        boolean configMapChanged = !Objects.equals(previous.getDescriptors(), edited.getDescriptors());
+        boolean envoyFilterChanged = !Objects.equals(withoutDescriptors(previous), withoutDescriptors(edited));
+        Expectation expectation = configMapChanged || envoyFilterChanged
+                ? awaiter.expect("edit RateLimiterConfig " + name)
+                : awaiter.expectAny("edit RateLimiterConfig " + name);
+        if (envoyFilterChanged || !configMapChanged) {
+            expectation.modified(ENVOY_FILTER, name);
+        }
+        if (configMapChanged || !envoyFilterChanged) {
+            expectation.modified(CONFIG_MAP, edited.getRateLimiter());
+        }
+        try (RequesterMetrics.Call call = metrics.call("edit", RATE_LIMITER_CONFIG);
+             Expectation opened = expectation.open()) {
+            patch(RATE_LIMITER_CONFIG, name, before, currentRateLimiterConfig, mutation);
+            converge(opened);
+            call.succeeded();
+        }
+    }
+
+    public void editService(Service service, Consumer<Service> mutation) {
+        editService(service, applied(service, mutation), mutation);
+    }
+
     public void editService(Service service) {
-        client.services().createOrReplace(service);
-        TimeUnit.MILLISECONDS.sleep(SLEEP_TIME_MS);
+        editService(service, readAs(SERVICE, service), null);
+    }
+
+    private void editService(Service service, JsonNode before, Consumer<Service> mutation) {
+        try (RequesterMetrics.Call call = metrics.call("edit", SERVICE);
+             Expectation expectation = awaiter.expect("edit Service " + service.getMetadata().getName())
+                .reverted(SERVICE, service.getMetadata().getName())
+                .open()) {
+            ObjectMeta edited = patch(SERVICE, service.getMetadata().getName(), before, service, mutation);
+            converge(expectation.written(SERVICE, edited));
+            call.succeeded();
+        }
+    }
+
+    public void editEnvoyFilter(EnvoyFilter envoyFilter, Consumer<EnvoyFilter> mutation) {
+        editEnvoyFilter(envoyFilter, applied(envoyFilter, mutation), mutation);
     }
 
-    @SneakyThrows
     public void editEnvoyFilter(EnvoyFilter envoyFilter) {
-        client.customResource(envoyFilterContext).edit(envoyFilter.getMetadata().getNamespace(),
-                envoyFilter.getMetadata().getName(), YAML_MAPPER.writeValueAsString(envoyFilter));
-        TimeUnit.MILLISECONDS.sleep(SLEEP_TIME_MS);
+        editEnvoyFilter(envoyFilter, readAs(ENVOY_FILTER, envoyFilter), null);
     }
 
-    @SneakyThrows
-    public void editDeployment(Deployment deployment){
-        client.apps().deployments().createOrReplace(deployment);
-        log.warn("Deployment: [{}] edited", deployment.getMetadata().getName());
-        TimeUnit.MILLISECONDS.sleep(SLEEP_TIME_MS);
+    private void editEnvoyFilter(EnvoyFilter envoyFilter, JsonNode before, Consumer<EnvoyFilter> mutation) {
+        try (RequesterMetrics.Call call = metrics.call("edit", ENVOY_FILTER);
+             Expectation expectation = awaiter.expect("edit EnvoyFilter " + envoyFilter.getMetadata().getName())
+                .reverted(ENVOY_FILTER, envoyFilter.getMetadata().getName())
+                .open()) {
+            ObjectMeta edited = patch(ENVOY_FILTER, envoyFilter.getMetadata().getName(), before, envoyFilter, mutation);
+            converge(expectation.written(ENVOY_FILTER, edited));
+            call.succeeded();
+        }
+    }
+
+    public void editDeployment(Deployment deployment, Consumer<Deployment> mutation) {
+        editDeployment(deployment, applied(deployment, mutation), mutation);
+    }
+
+    public void editDeployment(Deployment deployment) {
+        editDeployment(deployment, readAs(DEPLOYMENT, deployment), null);
+    }
+
+    private void editDeployment(Deployment deployment, JsonNode before, Consumer<Deployment> mutation) {
+        try (RequesterMetrics.Call call = metrics.call("edit", DEPLOYMENT);
+             Expectation expectation = awaiter.expect("edit Deployment " + deployment.getMetadata().getName())
+                .reverted(DEPLOYMENT, deployment.getMetadata().getName())
+                .open()) {
+            ObjectMeta edited = patch(DEPLOYMENT, deployment.getMetadata().getName(), before, deployment, mutation);
+            log.warn("Deployment: [{}] edited", deployment.getMetadata().getName());
+            converge(expectation.written(DEPLOYMENT, edited));
+            call.succeeded();
+        }
+    }
+
+    public void editConfigMap(ConfigMap configMap, Consumer<ConfigMap> mutation) {
+        editConfigMap(configMap, applied(configMap, mutation), mutation);
     }
 
-    @SneakyThrows
     public void editConfigMap(ConfigMap configMap) {
-        client.configMaps().createOrReplace(configMap);
-        log.warn("Configmap: [{}] edited", configMap.getMetadata().getName());
-        TimeUnit.MILLISECONDS.sleep(SLEEP_TIME_MS);
+        editConfigMap(configMap, readAs(CONFIG_MAP, configMap), null);
+    }
+
+    private void editConfigMap(ConfigMap configMap, JsonNode before, Consumer<ConfigMap> mutation) {
+        try (RequesterMetrics.Call call = metrics.call("edit", CONFIG_MAP);
+             Expectation expectation = awaiter.expect("edit ConfigMap " + configMap.getMetadata().getName())
+                .reverted(CONFIG_MAP, configMap.getMetadata().getName())
+                .open()) {
+            ObjectMeta edited = patch(CONFIG_MAP, configMap.getMetadata().getName(), before, configMap, mutation);
+            log.warn("Configmap: [{}] edited", configMap.getMetadata().getName());
+            converge(expectation.written(CONFIG_MAP, edited));
+            call.succeeded();
+        }
+    }
+
+    /**
+     * Edits of the requester by kind: the bytes of their merge patches against the whole objects an update would
+     * have sent, and the 409 conflicts they ran into.
+     */
+    public String editReport() {
+        StringBuilder report = new StringBuilder(String.format("%-18s %6s %12s %12s %10s",
+                "kind", "edits", "patch bytes", "full bytes", "conflicts"));
+        new TreeMap<>(edits).forEach((kind, edit) -> report.append(System.lineSeparator())
+                .append(String.format("%-18s %6d %12d %12d %10d", kind, edit[0], edit[1], edit[2], edit[3])));
+        return report.toString();
+    }
+
+    /**
+     * 409 conflicts the edits of the requester have run into, retried or not.
+     */
+    public long getEditConflicts() {
+        return edits.values().stream().mapToLong(edit -> edit[3]).sum();
+    }
+
+    @Override
+    public void close() {
+        if (!edits.isEmpty()) {
+            log.info("Edits in [{}]:{}{}", namespace, System.lineSeparator(), editReport());
+        }
+        if (throttle != null) {
+            log.info("API requests of [{}]:{}{}", namespace, System.lineSeparator(), throttle.report());
+        }
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    /**
+     * A client that sends its requests through the interceptors. It shares the connections and threads of the
+     * given client and isn't closed with the requester, closing it would shut them down for the given client too.
+     */
+    private static KubernetesClient intercepted(KubernetesClient client, List<Interceptor> interceptors) {
+        if (interceptors.isEmpty()) {
+            return client;
+        }
+        OkHttpClient.Builder httpClient = ((HttpClientAware) client).getHttpClient().newBuilder();
+        interceptors.forEach(httpClient::addInterceptor);
+        return new DefaultKubernetesClient(httpClient.build(), client.getConfiguration());
+    }
+
+    /**
+     * @return the resource as it is now on the server
+     */
+    private <T> JsonNode current(ResourceKind<T> kind, String name) {
+        T resource = kind.get(client, namespace, name);
+        if (resource == null) {
+            throw new IllegalStateException("Non " + kind + ": " + name);
+        }
+        return JSON_MAPPER.valueToTree(resource);
+    }
+
+    /**
+     * The object an edit without a mutation started from: the resource as this requester read, created or patched it
+     * at the resourceVersion of the edited object, or at the one this requester last wrote when the object has none.
+     * Diffing against the resource as it is on the server now would send nulls for whatever the object was built
+     * without, and lose the precondition on the version the caller saw.
+     */
+    private <T> JsonNode readAs(ResourceKind<T> kind, T edited) {
+        ObjectMeta metadata = kind.metadata(edited);
+        String resourceVersion = metadata.getResourceVersion() != null
+                ? metadata.getResourceVersion()
+                : observedVersions.get(kind + "/" + metadata.getName());
+        JsonNode before = reads.get(kind + "/" + metadata.getName() + "@" + resourceVersion);
+        if (before == null) {
+            throw new IllegalStateException(kind + " [" + metadata.getName() + "] at resourceVersion " + resourceVersion
+                    + " hasn't been read by the requester, edit it with a mutation");
+        }
+        return before;
+    }
+
+    /**
+     * Sends the merge patch from {@code before} to the edited resource, on condition that the resource is still at
+     * the resourceVersion {@code before} was read at, or else at the one this requester last wrote. When someone
+     * else has written it since, the API server answers 409: the resource is read again and, after a jittered
+     * backoff, the mutation is applied to it anew. Without a mutation the first diff is sent again at the fresh
+     * resourceVersion: diffing the whole edited object against the fresh read would revert the other writer's
+     * changes. Retries stop after {@value #CONFLICT_RETRIES_PROPERTY}, the last 409 is thrown.
+     *
+     * @param mutation the change of the edit, null when only its result is known
+     * @return metadata of the patched resource
+     */
+    @SneakyThrows
+    private <T> ObjectMeta patch(ResourceKind<T> kind, String name, JsonNode before, T edited, Consumer<T> mutation) {
+        JsonNode after = JSON_MAPPER.valueToTree(edited);
+        String resourceVersion = before.path("metadata").path("resourceVersion").asText(null);
+        if (resourceVersion == null) {
+            resourceVersion = observedVersions.get(kind + "/" + name);
+        }
+        if (resourceVersion == null) {
+            resourceVersion = current(kind, name).path("metadata").path("resourceVersion").asText(null);
+        }
+        int full = JSON_MAPPER.writeValueAsBytes(after).length;
+        int sent = 0;
+        int conflicts = 0;
+        for (int attempt = 0; ; attempt++) {
+            ObjectNode patch = MergePatch.between(before, after);
+            patch.with("metadata").put("resourceVersion", resourceVersion);
+            byte[] body = JSON_MAPPER.writeValueAsBytes(patch);
+            sent += body.length;
+            try {
+                ObjectMeta metadata = JSON_MAPPER.convertValue(
+                        read(kind, kind.patch(client, namespace, name, body)).path("metadata"), ObjectMeta.class);
+                observedVersions.put(kind + "/" + name, metadata.getResourceVersion());
+                log.info("{} [{}] patched: {} bytes instead of {}, {} conflicts", kind, name, sent, full, conflicts);
+                recordEdit(kind, sent, full, conflicts);
+                return metadata;
+            } catch (KubernetesClientException ex) {
+                if (ex.getCode() != 409 || attempt >= conflictRetries) {
+                    recordEdit(kind, sent, full, ex.getCode() == 409 ? conflicts + 1 : conflicts);
+                    throw ex;
+                }
+                conflicts++;
+                log.info("{} [{}] has changed since resourceVersion {}, retrying", kind, name, resourceVersion);
+            }
+            long backoff = conflictBackoff(attempt);
+            metrics.waited("conflict backoff", Duration.ofMillis(backoff));
+            Thread.sleep(backoff);
+            T fresh = kind.get(client, namespace, name);
+            if (fresh == null) {
+                throw new IllegalStateException("Non " + kind + ": " + name);
+            }
+            if (mutation != null) {
+                before = JSON_MAPPER.valueToTree(fresh);
+                mutation.accept(fresh);
+                after = JSON_MAPPER.valueToTree(fresh);
+            }
+            resourceVersion = kind.metadata(fresh).getResourceVersion();
+        }
+    }
+
+    /**
+     * Random between the half and the whole of the backoff, which doubles with every attempt up to
+     * {@link #MAX_CONFLICT_BACKOFF}, so the writers that collided don't collide again.
+     */
+    private long conflictBackoff(int attempt) {
+        long backoff = Math.min(MAX_CONFLICT_BACKOFF.toMillis(), conflictBackoff.toMillis() << Math.min(attempt, 16));
+        return ThreadLocalRandom.current().nextLong(backoff / 2, backoff + 1);
+    }
+
+    private void recordEdit(ResourceKind<?> kind, long sent, long full, long conflicts) {
+        edits.merge(kind.getName(), new long[]{1, sent, full, conflicts}, (sum, edit) -> new long[]{
+                sum[0] + edit[0], sum[1] + edit[1], sum[2] + edit[2], sum[3] + edit[3]});
+    }
+
+    /**
+     * Resource versions of the creates and patches of this requester, by kind and name, for the edits of objects
+     * that haven't been read from the server. A version that the resource has moved on from costs a retry.
+     */
+    private void observe(ResourceKind<?> kind, Map<String, Object> resource) {
+        read(kind, resource);
+        Object metadata = resource == null ? null : resource.get("metadata");
+        if (metadata instanceof Map && ((Map<?, ?>) metadata).get("resourceVersion") != null) {
+            observedVersions.put(kind + "/" + ((Map<?, ?>) metadata).get("name"),
+                    String.valueOf(((Map<?, ?>) metadata).get("resourceVersion")));
+        }
+    }
+
+    /**
+     * Keeps the resource as it is now for {@link #readAs}.
+     *
+     * @return the resource
+     */
+    private <R> R read(ResourceKind<?> kind, R resource) {
+        JsonNode tree = resource == null ? null : JSON_MAPPER.valueToTree(resource);
+        JsonNode metadata = tree == null ? null : tree.path("metadata");
+        if (metadata != null && metadata.hasNonNull("resourceVersion")) {
+            reads.put(kind + "/" + metadata.path("name").asText() + "@" + metadata.path("resourceVersion").asText(),
+                    tree);
+        }
+        return resource;
+    }
+
+    /**
+     * Applies the mutation to the resource.
+     *
+     * @return the resource as it was before
+     */
+    private static <T> JsonNode applied(T resource, Consumer<T> mutation) {
+        JsonNode before = JSON_MAPPER.valueToTree(resource);
+        mutation.accept(resource);
+        return before;
+    }
+
+    /**
+     * Waits for the expectation and then for the cache to catch up with the states that satisfied it,
+     * so validators reading from the cache see at least those versions.
+     */
+    private void converge(Expectation expectation) {
+        snapshots.clear();
+        Executor executor = deferring.get();
+        if (executor != null) {
+            deferred.set(expectation.converged().thenApplyAsync(this::caughtUp, executor));
+            return;
+        }
+        lastConvergence.set(caughtUp(expectation.await()));
+    }
+
+    private Convergence caughtUp(Convergence convergence) {
+        metrics.waited("convergence", convergence.getElapsed());
+        if (cache != null) {
+            long start = System.nanoTime();
+            convergence.getObserved().forEach(observed -> cache.awaitObserved(observed, CACHE_TIMEOUT));
+            metrics.waited("cache", System.nanoTime() - start);
+        }
+        return convergence;
+    }
+
+    /**
+     * Outcome of a batch of creates.
+     */
+    @Value
+    public static class BatchResult {
+        /**
+         * Names of the created items, in the order of the batch.
+         */
+        List<String> created;
+        /**
+         * Error of every item the API server refused by name, in the order of the batch.
+         */
+        Map<String, String> failed;
+        /**
+         * The one wait for the created items, null when none was created.
+         */
+        Convergence convergence;
+        /**
+         * From the first create to the end of the wait.
+         */
+        Duration elapsed;
+
+        @Override
+        public String toString() {
+            return String.format("created %d, failed %d %s in %d ms, %s", created.size(), failed.size(),
+                    failed, elapsed.toMillis(), convergence);
+        }
+    }
+
+    /**
+     * The part of the spec the EnvoyFilter is generated from, as a tree, so a field added to the spec takes part
+     * in the comparison without a change here.
+     */
+    private static JsonNode withoutDescriptors(RateLimiterConfig.RateLimiterConfigSpec spec) {
+        ObjectNode tree = JSON_MAPPER.valueToTree(spec);
+        tree.remove("descriptors");
+        return tree;
+    }
+
+    /**
+     * The operator has applied the RateLimiter spec to its Deployment.
+     */
+    private static boolean isReconciled(Deployment deployment, RateLimiter rateLimiter) {
+        return Objects.equals(rateLimiter.getSpec().getSize(), deployment.getSpec().getReplicas())
+                && deployment.getSpec().getTemplate().getSpec().getContainers().stream()
+                .map(Container::getEnv)
+                .flatMap(Collection::stream)
+                .anyMatch(env -> "LOG_LEVEL".equals(env.getName())
+                        && Objects.equals(rateLimiter.getSpec().getLogLevel(), env.getValue()));
     }
 }
@@ -4,4 +4,6 @@ import io.fabric8.kubernetes.client.KubernetesClient;
 
 public abstract class K8sTest {
     protected static KubernetesClient client;
+    protected static NamespacePool namespaces;
+    protected static DomainIndex domains;
 }
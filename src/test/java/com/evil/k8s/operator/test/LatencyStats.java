@@ -0,0 +1,87 @@
+package com.evil.k8s.operator.test;
+
+import com.evil.k8s.operator.test.ConvergenceAwaiter.Convergence;
+
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Convergence latencies grouped by operation type, reported as percentiles.
+ * Operations that didn't converge within the awaiter timeout are counted apart and left out of the percentiles.
+ */
+public class LatencyStats {
+
+    private final Map<String, List<Duration>> samples = new LinkedHashMap<>();
+    private final Map<String, Integer> timeouts = new LinkedHashMap<>();
+
+    public synchronized void record(String operation, Convergence convergence) {
+        samples.computeIfAbsent(operation, key -> new ArrayList<>());
+        if (convergence.isConverged()) {
+            samples.get(operation).add(convergence.getElapsed());
+        } else {
+            timeouts.merge(operation, 1, Integer::sum);
+        }
+    }
+
+    public synchronized Summary summary(String operation) {
+        long[] sorted = samples.getOrDefault(operation, Collections.emptyList()).stream()
+                .mapToLong(Duration::toNanos)
+                .sorted()
+                .toArray();
+        return new Summary(operation, sorted, timeouts.getOrDefault(operation, 0));
+    }
+
+    public synchronized List<Summary> summaries() {
+        List<Summary> summaries = new ArrayList<>();
+        samples.keySet().forEach(operation -> summaries.add(summary(operation)));
+        return summaries;
+    }
+
+    public String report() {
+        StringBuilder report = new StringBuilder(String.format("%-28s %7s %8s %8s %8s %8s %8s%n",
+                "operation", "count", "timeouts", "p50 ms", "p90 ms", "p99 ms", "max ms"));
+        summaries().forEach(summary -> report.append(summary).append(System.lineSeparator()));
+        return report.toString();
+    }
+
+    public static class Summary {
+        private final String operation;
+        private final long[] sortedNanos;
+        private final int timeouts;
+
+        private Summary(String operation, long[] sortedNanos, int timeouts) {
+            this.operation = operation;
+            this.sortedNanos = sortedNanos;
+            this.timeouts = timeouts;
+        }
+
+        public int count() {
+            return sortedNanos.length;
+        }
+
+        public int timeouts() {
+            return timeouts;
+        }
+
+        /**
+         * Nearest-rank percentile, zero when there are no samples.
+         */
+        public Duration percentile(double percentile) {
+            if (sortedNanos.length == 0) {
+                return Duration.ZERO;
+            }
+            int rank = (int) Math.ceil(percentile / 100 * sortedNanos.length);
+            return Duration.ofNanos(sortedNanos[Math.min(Math.max(rank, 1), sortedNanos.length) - 1]);
+        }
+
+        public Duration max() {
+            return percentile(100);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-28s %7d %8d %8d %8d %8d %8d", operation, count(), timeouts,
+                    percentile(50).toMillis(), percentile(90).toMillis(), percentile(99).toMillis(), max().toMillis());
+        }
+    }
+}
@@ -0,0 +1,212 @@
+package com.evil.k8s.operator.test;
+
+import com.evil.k8s.operator.test.models.EnvoyGatewayPatch;
+import com.evil.k8s.operator.test.models.RateLimiterConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.HttpTimeoutException;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop HTTP load: requests go out at a constant arrival rate, on schedule whatever the latency of the previous
+ * ones, through the non-blocking {@link HttpClient}. The latency of a request is counted from the time it was
+ * scheduled, not from when it was sent: when the target or the generator stalls, the requests that should have gone
+ * out meanwhile are sent late and carry the stall, so the histogram isn't hiding it (coordinated omission).
+ * <p>
+ * Responses are counted as allowed (2xx), limited (429) and failed (other statuses, errors, timeouts). Every
+ * request is in the histogram, a failed one too: the slowest requests are often the ones that failed, a timed-out
+ * one is recorded at no less than the timeout.
+ */
+@Slf4j
+public class LoadGenerator {
+
+    private static final long HIGHEST_LATENCY_NANOS = TimeUnit.MINUTES.toNanos(1);
+    /**
+     * Header value for a descriptor without one, any value matches it.
+     */
+    private static final String ANY_VALUE = "load";
+
+    private final HttpClient client;
+    private final Duration timeout;
+
+    public LoadGenerator(Duration timeout) {
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(timeout)
+                .build();
+        this.timeout = timeout;
+    }
+
+    /**
+     * The host and port of the config spec.
+     */
+    public static URI target(RateLimiterConfig rateLimiterConfig) {
+        RateLimiterConfig.RateLimiterConfigSpec spec = rateLimiterConfig.getSpec();
+        return URI.create("http://" + spec.getHost() + ":" + spec.getPort() + "/");
+    }
+
+    /**
+     * Headers of the rate limit actions of the config, valued as the descriptors with their keys so that every
+     * rate limit of the config applies to the requests.
+     */
+    public static Map<String, String> headers(RateLimiterConfig rateLimiterConfig) {
+        Map<String, String> values = new HashMap<>();
+        for (RateLimiterConfig.RateLimiterConfigDescriptors descriptor : Optional.ofNullable(
+                rateLimiterConfig.getSpec().getDescriptors()).orElse(Collections.emptyList())) {
+            for (RateLimiterConfig.RateLimiterConfigDescriptors level = descriptor; level != null;
+                 level = level.getRateLimiterConfigDescriptors()) {
+                values.putIfAbsent(level.getKey(), level.getValue() == null ? ANY_VALUE : level.getValue());
+            }
+        }
+        Map<String, String> headers = new TreeMap<>();
+        for (EnvoyGatewayPatch.GatewayRateLimit rateLimit : Optional.ofNullable(
+                rateLimiterConfig.getSpec().getRateLimits()).orElse(Collections.emptyList())) {
+            for (EnvoyGatewayPatch.RateLimitAction action : rateLimit.getActions()) {
+                if (action.getRequestHeaders() != null) {
+                    EnvoyGatewayPatch.ActionRequestHeader header = action.getRequestHeaders();
+                    headers.put(header.getHeaderName(), values.getOrDefault(header.getDescriptionKey(), ANY_VALUE));
+                }
+            }
+        }
+        return headers;
+    }
+
+    /**
+     * Sends {@code ratePerSecond * duration} GET requests and waits for the last of them.
+     */
+    public Result run(URI target, Map<String, String> headers, int ratePerSecond, Duration duration)
+            throws InterruptedException {
+        HttpRequest.Builder builder = HttpRequest.newBuilder(target).timeout(timeout).GET();
+        headers.forEach(builder::header);
+        HttpRequest request = builder.build();
+
+        long requests = ratePerSecond * duration.toSeconds();
+        long intervalNanos = TimeUnit.SECONDS.toNanos(1) / ratePerSecond;
+        Histogram histogram = new ConcurrentHistogram(HIGHEST_LATENCY_NANOS, 3);
+        AtomicLong allowed = new AtomicLong();
+        AtomicLong limited = new AtomicLong();
+        AtomicLong failed = new AtomicLong();
+        CountDownLatch completed = new CountDownLatch(Math.toIntExact(requests));
+        long lateNanos = 0;
+        long start = System.nanoTime();
+        for (long i = 0; i < requests; i++) {
+            long scheduled = start + i * intervalNanos;
+            long wait;
+            while ((wait = scheduled - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(wait);
+            }
+            lateNanos = Math.max(lateNanos, -wait);
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                long latency = System.nanoTime() - scheduled;
+                if (error != null && isTimeout(error)) {
+                    latency = Math.max(latency, timeout.toNanos());
+                }
+                histogram.recordValue(Math.min(latency, HIGHEST_LATENCY_NANOS));
+                if (error != null || response.statusCode() != 429 && response.statusCode() / 100 != 2) {
+                    failed.incrementAndGet();
+                } else {
+                    (response.statusCode() == 429 ? limited : allowed).incrementAndGet();
+                }
+                completed.countDown();
+            });
+        }
+        if (!completed.await(timeout.toNanos() + duration.toNanos(), TimeUnit.NANOSECONDS)) {
+            log.warn("{} of {} requests to {} haven't completed", completed.getCount(), requests, target);
+        }
+        return new Result(target, ratePerSecond, duration, histogram, allowed.get(), limited.get(), failed.get(),
+                Duration.ofNanos(lateNanos));
+    }
+
+    private static boolean isTimeout(Throwable error) {
+        for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+            if (cause instanceof HttpTimeoutException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public static class Result {
+        private final URI target;
+        private final int ratePerSecond;
+        private final Duration duration;
+        private final Histogram histogram;
+        private final long allowed;
+        private final long limited;
+        private final long failed;
+        private final Duration maxSendDelay;
+
+        private Result(URI target, int ratePerSecond, Duration duration, Histogram histogram, long allowed,
+                       long limited, long failed, Duration maxSendDelay) {
+            this.target = target;
+            this.ratePerSecond = ratePerSecond;
+            this.duration = duration;
+            this.histogram = histogram;
+            this.allowed = allowed;
+            this.limited = limited;
+            this.failed = failed;
+            this.maxSendDelay = maxSendDelay;
+        }
+
+        public long allowed() {
+            return allowed;
+        }
+
+        public long limited() {
+            return limited;
+        }
+
+        public long failed() {
+            return failed;
+        }
+
+        public double allowedPerSecond() {
+            return (double) allowed / duration.toSeconds();
+        }
+
+        public double limitedPerSecond() {
+            return (double) limited / duration.toSeconds();
+        }
+
+        /**
+         * Latency of every request from its scheduled time, failed ones included.
+         */
+        public Duration percentile(double percentile) {
+            return Duration.ofNanos(histogram.getValueAtPercentile(percentile));
+        }
+
+        /**
+         * How late the generator itself sent a request at worst; a large delay means it couldn't keep the rate.
+         */
+        public Duration maxSendDelay() {
+            return maxSendDelay;
+        }
+
+        /**
+         * @param expectedAllowedPerSecond the rate the rate limits of the config let through
+         */
+        public String report(double expectedAllowedPerSecond) {
+            return String.format("%s at %d/s for %ds: allowed %.1f/s (expected %.1f/s), limited %.1f/s, failed %d%n"
+                            + "latency ms of all requests p50 %.2f p90 %.2f p99 %.2f p99.9 %.2f max %.2f, "
+                            + "max send delay %.2f ms",
+                    target, ratePerSecond, duration.toSeconds(), allowedPerSecond(), expectedAllowedPerSecond,
+                    limitedPerSecond(), failed, millis(percentile(50)), millis(percentile(90)), millis(percentile(99)),
+                    millis(percentile(99.9)), millis(percentile(100)), millis(maxSendDelay));
+        }
+
+        private static double millis(Duration duration) {
+            return duration.toNanos() / 1e6;
+        }
+    }
+}
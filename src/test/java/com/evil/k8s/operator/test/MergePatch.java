@@ -0,0 +1,83 @@
+package com.evil.k8s.operator.test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * JSON merge patch (RFC 7386) that turns one state of a resource into another, so an edit sends the fields it
+ * changes instead of the whole object.
+ * <p>
+ * Objects are diffed field by field, a removed field becomes null; arrays and scalars are sent whole when they
+ * differ, as a merge patch can't address an element. A null field counts as a missing one. The fields the API
+ * server owns, {@code status} and the system fields of {@code metadata}, are never patched: an object read from
+ * the server and one built by a test differ there without either side meaning to change them.
+ */
+public final class MergePatch {
+
+    private static final Set<String> SERVER_OWNED_METADATA = new HashSet<>(Arrays.asList(
+            "uid", "resourceVersion", "generation", "creationTimestamp", "deletionTimestamp",
+            "deletionGracePeriodSeconds", "managedFields", "selfLink"));
+
+    private MergePatch() {
+    }
+
+    /**
+     * @return the patch, an empty object when the states don't differ
+     */
+    public static ObjectNode between(JsonNode before, JsonNode after) {
+        ObjectNode patch = JsonNodeFactory.instance.objectNode();
+        diff(withoutServerOwned(before), withoutServerOwned(after), patch);
+        return patch;
+    }
+
+    private static void diff(JsonNode before, JsonNode after, ObjectNode patch) {
+        Iterator<Map.Entry<String, JsonNode>> removed = before.fields();
+        while (removed.hasNext()) {
+            Map.Entry<String, JsonNode> field = removed.next();
+            if (!field.getValue().isNull() && isMissing(after.get(field.getKey()))) {
+                patch.putNull(field.getKey());
+            }
+        }
+        Iterator<Map.Entry<String, JsonNode>> present = after.fields();
+        while (present.hasNext()) {
+            Map.Entry<String, JsonNode> field = present.next();
+            JsonNode value = field.getValue();
+            JsonNode previous = before.get(field.getKey());
+            if (value.isNull() || value.equals(previous)) {
+                continue;
+            }
+            if (value.isObject() && previous != null && previous.isObject()) {
+                ObjectNode nested = JsonNodeFactory.instance.objectNode();
+                diff(previous, value, nested);
+                if (nested.size() > 0) {
+                    patch.set(field.getKey(), nested);
+                }
+            } else {
+                patch.set(field.getKey(), value);
+            }
+        }
+    }
+
+    private static boolean isMissing(JsonNode node) {
+        return node == null || node.isNull();
+    }
+
+    private static JsonNode withoutServerOwned(JsonNode resource) {
+        if (resource == null || !resource.isObject()) {
+            return JsonNodeFactory.instance.objectNode();
+        }
+        ObjectNode copy = resource.deepCopy();
+        copy.remove("status");
+        if (copy.path("metadata").isObject()) {
+            ((ObjectNode) copy.get("metadata")).remove(SERVER_OWNED_METADATA);
+        }
+        return copy;
+    }
+}
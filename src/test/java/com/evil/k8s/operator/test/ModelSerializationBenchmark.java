@@ -0,0 +1,99 @@
+package com.evil.k8s.operator.test;
+
+import com.evil.k8s.operator.test.models.ConfigMapRateLimitProperty;
+import com.evil.k8s.operator.test.models.RateLimiter;
+import com.evil.k8s.operator.test.models.RateLimiterConfig;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import me.snowdrop.istio.api.networking.v1alpha3.EnvoyFilter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static com.evil.k8s.operator.test.utils.Utils.JSON_MAPPER;
+import static com.evil.k8s.operator.test.utils.Utils.YAML_MAPPER;
+
+/**
+ * Throughput of writing and reading the models the tests exchange with the API server and of converting the
+ * EnvoyFilter map fabric8 returns into the snowdrop model. Run by {@link JmhBenchmarkTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ModelSerializationBenchmark {
+
+    private static final int DESCRIPTORS = 8;
+
+    @Param({"json", "yaml"})
+    public String mapper;
+
+    /**
+     * Nesting of every RateLimiterConfig descriptor.
+     */
+    @Param({"1", "8"})
+    public int depth;
+
+    private ObjectMapper objectMapper;
+    private RateLimiter rateLimiter;
+    private RateLimiterConfig rateLimiterConfig;
+    private ConfigMapRateLimitProperty configMapRateLimitProperty;
+    private Map<?, ?> envoyFilter;
+    private byte[] rateLimiterBytes;
+    private byte[] rateLimiterConfigBytes;
+    private byte[] configMapRateLimitPropertyBytes;
+
+    @Setup
+    public void setUp() throws IOException {
+        objectMapper = "yaml".equals(mapper) ? YAML_MAPPER : JSON_MAPPER;
+        rateLimiter = TestResources.rateLimiter(null, "benchmark", "rate-limiter-benchmark");
+        rateLimiterConfig = TestResources.rateLimiterConfig("benchmark", "rate-limiter-benchmark",
+                "rate-limiter-benchmark", DESCRIPTORS, depth);
+        configMapRateLimitProperty = new ConfigMapRateLimitProperty(rateLimiterConfig.getMetadata().getName(),
+                rateLimiterConfig.getSpec().getDescriptors());
+        ObjectNode envoyFilterNode = (ObjectNode) ExpectedManifests.envoyFilter(rateLimiterConfig);
+        envoyFilterNode.put("apiVersion", "networking.istio.io/v1alpha3").put("kind", "EnvoyFilter");
+        envoyFilterNode.with("metadata").put("name", "rate-limiter-benchmark").put("namespace", "benchmark");
+        envoyFilter = JSON_MAPPER.convertValue(envoyFilterNode, Map.class);
+
+        rateLimiterBytes = objectMapper.writeValueAsBytes(rateLimiter);
+        rateLimiterConfigBytes = objectMapper.writeValueAsBytes(rateLimiterConfig);
+        configMapRateLimitPropertyBytes = objectMapper.writeValueAsBytes(configMapRateLimitProperty);
+    }
+
+    @Benchmark
+    public byte[] writeRateLimiter() throws IOException {
+        return objectMapper.writeValueAsBytes(rateLimiter);
+    }
+
+    @Benchmark
+    public RateLimiter readRateLimiter() throws IOException {
+        return objectMapper.readValue(rateLimiterBytes, RateLimiter.class);
+    }
+
+    @Benchmark
+    public byte[] writeRateLimiterConfig() throws IOException {
+        return objectMapper.writeValueAsBytes(rateLimiterConfig);
+    }
+
+    @Benchmark
+    public RateLimiterConfig readRateLimiterConfig() throws IOException {
+        return objectMapper.readValue(rateLimiterConfigBytes, RateLimiterConfig.class);
+    }
+
+    @Benchmark
+    public byte[] writeConfigMapRateLimitProperty() throws IOException {
+        return objectMapper.writeValueAsBytes(configMapRateLimitProperty);
+    }
+
+    @Benchmark
+    public ConfigMapRateLimitProperty readConfigMapRateLimitProperty() throws IOException {
+        return objectMapper.readValue(configMapRateLimitPropertyBytes, ConfigMapRateLimitProperty.class);
+    }
+
+    @Benchmark
+    public EnvoyFilter convertEnvoyFilter() {
+        return objectMapper.convertValue(envoyFilter, EnvoyFilter.class);
+    }
+}
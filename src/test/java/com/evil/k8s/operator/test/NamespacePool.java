@@ -0,0 +1,111 @@
+package com.evil.k8s.operator.test;
+
+import io.fabric8.kubernetes.api.model.NamespaceBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Pool of pre-created namespaces, one per running scenario.
+ * <p>
+ * Namespaces are created ahead of time and a released namespace is deleted in the background and replaced
+ * by a fresh one, so no scenario waits for namespace creation or termination. Every namespace name is unique
+ * within the run, so a namespace that is still terminating never collides with a new one.
+ */
+@Slf4j
+public class NamespacePool implements AutoCloseable {
+
+    public static final String SIZE_PROPERTY = "k8s.namespace.pool.size";
+    public static final String PREFIX_PROPERTY = "k8s.namespace.pool.prefix";
+    public static final String POOL_LABEL = "rate-limiter-operator-test/pool";
+
+    private static final Duration ACQUIRE_TIMEOUT = Duration.ofMinutes(2);
+
+    private final KubernetesClient client;
+    private final String prefix;
+    private final BlockingQueue<String> ready = new LinkedBlockingQueue<>();
+    private final Set<String> created = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger sequence = new AtomicInteger();
+    private final ExecutorService executor;
+
+    public NamespacePool(KubernetesClient client, String prefix, int size) {
+        this.client = client;
+        this.prefix = prefix + UUID.randomUUID().toString().substring(0, 6) + "-";
+        this.executor = Executors.newFixedThreadPool(size, runnable -> {
+            Thread thread = new Thread(runnable, "namespace-pool");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (int i = 0; i < size; i++) {
+            executor.execute(this::provision);
+        }
+    }
+
+    public static NamespacePool fromSystemProperties(KubernetesClient client) {
+        return new NamespacePool(client,
+                System.getProperty(PREFIX_PROPERTY, "rl-test-"),
+                Integer.getInteger(SIZE_PROPERTY, 4));
+    }
+
+    /**
+     * Takes a ready namespace, waiting for one to be provisioned if the pool is drained.
+     */
+    @SneakyThrows
+    public String acquire() {
+        String namespace = ready.poll(ACQUIRE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        if (namespace == null) {
+            throw new IllegalStateException("No namespace provisioned in " + ACQUIRE_TIMEOUT);
+        }
+        log.info("Namespace [{}] acquired", namespace);
+        return namespace;
+    }
+
+    /**
+     * Deletes the namespace with everything left in it and provisions a replacement, both in the background.
+     */
+    public void release(String namespace) {
+        executor.execute(() -> {
+            delete(namespace);
+            provision();
+        });
+    }
+
+    @Override
+    @SneakyThrows
+    public void close() {
+        executor.shutdown();
+        executor.awaitTermination(ACQUIRE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+        created.forEach(this::delete);
+    }
+
+    private void provision() {
+        String namespace = prefix + sequence.incrementAndGet();
+        try {
+            client.namespaces().create(new NamespaceBuilder()
+                    .withNewMetadata()
+                    .withName(namespace)
+                    .addToLabels(POOL_LABEL, "true")
+                    .endMetadata()
+                    .build());
+            created.add(namespace);
+            ready.add(namespace);
+        } catch (RuntimeException ex) {
+            log.error("Namespace [{}] hasn't been created", namespace, ex);
+        }
+    }
+
+    private void delete(String namespace) {
+        try {
+            client.namespaces().withName(namespace).delete();
+            created.remove(namespace);
+        } catch (RuntimeException ex) {
+            log.error("Namespace [{}] hasn't been deleted", namespace, ex);
+        }
+    }
+}
@@ -0,0 +1,565 @@
+package com.evil.k8s.operator.test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.fabric8.kubernetes.client.dsl.base.CustomResourceDefinitionContext;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import io.fabric8.zjsonpatch.JsonPatch;
+import lombok.SneakyThrows;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.HttpUrl;
+import okhttp3.Response;
+import okhttp3.WebSocket;
+import okhttp3.WebSocketListener;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.BiPredicate;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory stand-in of the Kubernetes API server, served through the fabric8 mock web server.
+ * <p>
+ * Keeps the parts of the API semantics the tests rely on: a resourceVersion on every object and list, 409 on
+ * a create of an existing object and on a stale update, watches resumed from a resourceVersion, garbage collection
+ * of owned objects and of the namespace content. Writes are checked by the registered admission hooks and then
+ * reported to the listeners, which is how the offline operator learns about them.
+ */
+@Slf4j
+public class OfflineApiServer extends Dispatcher {
+
+    private static final ObjectMapper MAPPER = Serialization.jsonMapper();
+    private static final Pattern PATH = Pattern.compile("/(?:api|apis/(?<group>[^/]+))/(?<version>[^/]+)"
+            + "(?:/namespaces/(?<namespace>[^/]+))?/(?<plural>[^/]+)(?:/(?<name>[^/]+))?(?:/(?<subresource>[^/]+))?");
+    private static final int HISTORY_SIZE = 10_000;
+
+    private final Map<String, Kind> kinds = new HashMap<>();
+    private final Map<Key, ObjectNode> objects = new LinkedHashMap<>();
+    private final Set<String> uids = new HashSet<>();
+    private final Deque<Event> history = new ArrayDeque<>();
+    private final List<WatchSession> watches = new CopyOnWriteArrayList<>();
+    private final List<Admission> admissions = new CopyOnWriteArrayList<>();
+    private final List<Consumer<Event>> listeners = new CopyOnWriteArrayList<>();
+    private long resourceVersion;
+
+    public OfflineApiServer() {
+        register(new Kind("", "v1", "namespaces", "Namespace", false));
+        register(new Kind("", "v1", "configmaps", "ConfigMap", true));
+        register(new Kind("", "v1", "services", "Service", true));
+        register(new Kind("apps", "v1", "deployments", "Deployment", true));
+    }
+
+    /**
+     * Serves the custom resources of the context under the given kind.
+     */
+    public OfflineApiServer register(CustomResourceDefinitionContext context, String kind) {
+        return register(new Kind(context.getGroup(), context.getVersion(), context.getPlural(), kind,
+                !"Cluster".equals(context.getScope())));
+    }
+
+    public OfflineApiServer admission(Admission admission) {
+        admissions.add(admission);
+        return this;
+    }
+
+    public OfflineApiServer listener(Consumer<Event> listener) {
+        listeners.add(listener);
+        return this;
+    }
+
+    public synchronized boolean exists(String plural, String namespace, String name) {
+        return objects.keySet().stream().anyMatch(key -> key.getKind().getPlural().equals(plural)
+                && Objects.equals(key.getNamespace(), namespace) && key.getName().equals(name));
+    }
+
+    @Override
+    public MockResponse dispatch(RecordedRequest request) {
+        HttpUrl url = request.getRequestUrl();
+        Matcher path = PATH.matcher(url.encodedPath());
+        Kind kind = path.matches() ? kinds.get(kindKey(path.group("group"), path.group("plural"))) : null;
+        if (kind == null) {
+            return status(404, "NotFound", "the server could not find the requested resource " + url.encodedPath());
+        }
+        String namespace = path.group("namespace");
+        String name = path.group("name");
+        String subresource = path.group("subresource");
+        try {
+            synchronized (this) {
+                switch (request.getMethod()) {
+                    case "GET":
+                        if ("true".equals(url.queryParameter("watch"))) {
+                            return watch(kind, namespace, name, url);
+                        }
+                        return name == null ? list(kind, namespace, url) : respond(200, existing(kind, namespace, name));
+                    case "POST":
+                        return respond(201, create(kind, namespace, body(request)));
+                    case "PUT":
+                        return respond(200, replace(kind, namespace, name, subresource, body(request)));
+                    case "PATCH":
+                        return respond(200, patch(kind, namespace, name, subresource,
+                                request.getHeader("Content-Type"), request.getBody().readUtf8()));
+                    case "DELETE":
+                        if (name == null) {
+                            select(kind, namespace, url).forEach(key -> delete(key, objects.get(key)));
+                        } else {
+                            delete(new Key(kind, namespace, name), existing(kind, namespace, name));
+                        }
+                        return status(200, null, null);
+                    default:
+                        return status(405, "MethodNotAllowed", request.getMethod() + " is not supported");
+                }
+            }
+        } catch (Rejection rejection) {
+            return status(rejection.code, rejection.reason, rejection.getMessage());
+        }
+    }
+
+    private OfflineApiServer register(Kind kind) {
+        kinds.put(kindKey(kind.getGroup(), kind.getPlural()), kind);
+        return this;
+    }
+
+    private MockResponse list(Kind kind, String namespace, HttpUrl url) {
+        ObjectNode list = MAPPER.createObjectNode()
+                .put("apiVersion", kind.apiVersion())
+                .put("kind", kind.getKind() + "List");
+        list.putObject("metadata").put("resourceVersion", Long.toString(resourceVersion));
+        ArrayNode items = list.putArray("items");
+        select(kind, namespace, url).forEach(key -> items.add(objects.get(key)));
+        return respond(200, list);
+    }
+
+    private MockResponse watch(Kind kind, String namespace, String name, HttpUrl url) {
+        BiPredicate<Key, JsonNode> selected = selector(kind, namespace, url);
+        WatchSession session = new WatchSession((key, object) -> selected.test(key, object)
+                && (name == null || name.equals(key.getName())));
+        String from = url.queryParameter("resourceVersion");
+        if (from == null || from.isEmpty() || "0".equals(from)) {
+            // Unset or "0" starts from the current state, as synthetic ADDED events
+            objects.forEach((key, object) -> session.offer(new Event("ADDED", key, object)));
+        } else {
+            long after = Long.parseLong(from);
+            if (!history.isEmpty() && history.getFirst().getResourceVersion() > after + 1) {
+                throw new Rejection(410, "Expired", "too old resource version: " + after);
+            }
+            history.stream().filter(event -> event.getResourceVersion() > after).forEach(session::offer);
+        }
+        watches.add(session);
+        return new MockResponse().withWebSocketUpgrade(session);
+    }
+
+    private ObjectNode create(Kind kind, String namespace, ObjectNode object) {
+        ObjectNode metadata = object.with("metadata");
+        String name = metadata.path("name").asText(null);
+        if (name == null && metadata.hasNonNull("generateName")) {
+            name = metadata.get("generateName").asText() + UUID.randomUUID().toString().substring(0, 5);
+        }
+        if (name == null) {
+            throw new Rejection(422, "Invalid", "metadata.name: Required value");
+        }
+        if (kind.isNamespaced()) {
+            String objectNamespace = metadata.path("namespace").asText(namespace);
+            if (objectNamespace == null || (namespace != null && !namespace.equals(objectNamespace))) {
+                throw new Rejection(400, "BadRequest",
+                        "the namespace of the provided object does not match the namespace sent on the request");
+            }
+            namespace = objectNamespace;
+            if (!objects.containsKey(new Key(kinds.get(kindKey("", "namespaces")), null, namespace))) {
+                throw new Rejection(404, "NotFound", "namespaces \"" + namespace + "\" not found");
+            }
+            metadata.put("namespace", namespace);
+        }
+        Key key = new Key(kind, namespace, name);
+        if (objects.containsKey(key)) {
+            throw new Rejection(409, "AlreadyExists", kind.getPlural() + " \"" + name + "\" already exists");
+        }
+        admit("CREATE", kind, object);
+
+        object.put("apiVersion", kind.apiVersion()).put("kind", kind.getKind());
+        metadata.put("name", name)
+                .put("uid", UUID.randomUUID().toString())
+                .put("creationTimestamp", Instant.now().truncatedTo(ChronoUnit.SECONDS).toString());
+        metadata.remove(Arrays.asList("resourceVersion", "deletionTimestamp"));
+        if (object.has("spec")) {
+            metadata.put("generation", 1);
+        }
+        if ("Namespace".equals(kind.getKind())) {
+            object.with("status").put("phase", "Active");
+        }
+        write("ADDED", key, object);
+        collectIfOrphan(key, object);
+        return object;
+    }
+
+    private ObjectNode replace(Kind kind, String namespace, String name, String subresource, ObjectNode object) {
+        ObjectNode current = existing(kind, namespace, name);
+        ObjectNode updated = object;
+        if ("status".equals(subresource)) {
+            updated = current.deepCopy();
+            updated.set("status", object.get("status"));
+            updated.with("metadata").set("resourceVersion", object.path("metadata").get("resourceVersion"));
+        }
+        return update(new Key(kind, namespace, name), current, updated);
+    }
+
+    @SneakyThrows
+    private ObjectNode patch(Kind kind, String namespace, String name, String subresource,
+                             String contentType, String body) {
+        ObjectNode current = existing(kind, namespace, name);
+        JsonNode patch = MAPPER.readTree(body);
+        JsonNode patched;
+        try {
+            patched = contentType != null && contentType.startsWith("application/json-patch+json")
+                    ? JsonPatch.apply(patch, current.deepCopy())
+                    : merge(current.deepCopy(), patch);
+        } catch (RuntimeException ex) {
+            throw new Rejection(422, "Invalid", "the patch can't be applied: " + ex.getMessage());
+        }
+        if ("status".equals(subresource)) {
+            ObjectNode statusOnly = current.deepCopy();
+            statusOnly.set("status", patched.get("status"));
+            patched = statusOnly;
+        }
+        return update(new Key(kind, namespace, name), current, (ObjectNode) patched);
+    }
+
+    private ObjectNode update(Key key, ObjectNode current, ObjectNode updated) {
+        String currentVersion = current.path("metadata").path("resourceVersion").asText();
+        String expectedVersion = updated.path("metadata").path("resourceVersion").asText("");
+        if (!expectedVersion.isEmpty() && !expectedVersion.equals(currentVersion)) {
+            throw new Rejection(409, "Conflict", "Operation cannot be fulfilled on " + key.getKind().getPlural()
+                    + " \"" + key.getName() + "\": the object has been modified; please apply your changes"
+                    + " to the latest version and try again");
+        }
+        admit("UPDATE", key.getKind(), updated);
+
+        JsonNode currentMetadata = current.path("metadata");
+        ObjectNode metadata = updated.put("apiVersion", key.getKind().apiVersion())
+                .put("kind", key.getKind().getKind())
+                .with("metadata");
+        metadata.put("name", key.getName())
+                .put("resourceVersion", currentVersion)
+                .set("uid", currentMetadata.get("uid"));
+        metadata.set("creationTimestamp", currentMetadata.get("creationTimestamp"));
+        if (key.getNamespace() != null) {
+            metadata.put("namespace", key.getNamespace());
+        }
+        if (currentMetadata.has("generation")) {
+            long generation = currentMetadata.get("generation").asLong();
+            metadata.put("generation", Objects.equals(current.get("spec"), updated.get("spec")) ? generation : generation + 1);
+        }
+        if (updated.equals(current)) {
+            // A no-op update keeps the resourceVersion and emits no event
+            return current;
+        }
+        write("MODIFIED", key, updated);
+        collectIfOrphan(key, updated);
+        return updated;
+    }
+
+    /**
+     * Deletes the object together with its dependents, and the content of a deleted namespace.
+     */
+    private void delete(Key key, ObjectNode object) {
+        if (!objects.containsKey(key)) {
+            return;
+        }
+        write("DELETED", key, object.deepCopy());
+        String uid = object.path("metadata").path("uid").asText();
+        boolean namespace = "Namespace".equals(key.getKind().getKind());
+        List<Key> dependents = objects.entrySet().stream()
+                .filter(entry -> namespace
+                        ? key.getName().equals(entry.getKey().getNamespace())
+                        : isOwnedBy(entry.getValue(), uid))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+        dependents.forEach(dependent -> delete(dependent, objects.get(dependent)));
+    }
+
+    /**
+     * The garbage collector deletes an object whose owners are all gone, e.g. one written by a controller
+     * that hadn't seen the owner deletion yet.
+     */
+    private void collectIfOrphan(Key key, ObjectNode object) {
+        JsonNode ownerReferences = object.path("metadata").path("ownerReferences");
+        if (ownerReferences.size() == 0) {
+            return;
+        }
+        for (JsonNode ownerReference : ownerReferences) {
+            if (uids.contains(ownerReference.path("uid").asText())) {
+                return;
+            }
+        }
+        delete(key, object);
+    }
+
+    private ObjectNode write(String type, Key key, ObjectNode object) {
+        object.with("metadata").put("resourceVersion", Long.toString(++resourceVersion));
+        String uid = object.path("metadata").path("uid").asText();
+        if ("DELETED".equals(type)) {
+            objects.remove(key);
+            uids.remove(uid);
+        } else {
+            objects.put(key, object);
+            uids.add(uid);
+        }
+        Event event = new Event(type, key, object.deepCopy());
+        history.addLast(event);
+        if (history.size() > HISTORY_SIZE) {
+            history.removeFirst();
+        }
+        watches.forEach(session -> session.offer(event));
+        listeners.forEach(listener -> {
+            try {
+                listener.accept(event);
+            } catch (RuntimeException ex) {
+                log.error("Listener failed on {}", event, ex);
+            }
+        });
+        return object;
+    }
+
+    private void admit(String operation, Kind kind, ObjectNode object) {
+        for (Admission admission : admissions) {
+            String denied = admission.review(operation, kind.getPlural(), object);
+            if (denied != null) {
+                throw new Rejection(400, "BadRequest", "admission webhook denied the request: " + denied);
+            }
+        }
+    }
+
+    private ObjectNode existing(Kind kind, String namespace, String name) {
+        ObjectNode object = objects.get(new Key(kind, namespace, name));
+        if (object == null) {
+            throw new Rejection(404, "NotFound", kind.getPlural() + " \"" + name + "\" not found");
+        }
+        return object;
+    }
+
+    private List<Key> select(Kind kind, String namespace, HttpUrl url) {
+        BiPredicate<Key, JsonNode> selected = selector(kind, namespace, url);
+        return objects.entrySet().stream()
+                .filter(entry -> selected.test(entry.getKey(), entry.getValue()))
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toList());
+    }
+
+    private static BiPredicate<Key, JsonNode> selector(Kind kind, String namespace, HttpUrl url) {
+        BiPredicate<Key, JsonNode> selected = (key, object) -> key.getKind().equals(kind)
+                && (namespace == null || namespace.equals(key.getNamespace()));
+        for (String requirement : split(url.queryParameter("fieldSelector"))) {
+            String[] field = requirement.split("!=|==|=", 2);
+            boolean negated = requirement.contains("!=");
+            BiPredicate<Key, JsonNode> matches;
+            switch (field[0]) {
+                case "metadata.name":
+                    matches = (key, object) -> key.getName().equals(field[1]);
+                    break;
+                case "metadata.namespace":
+                    matches = (key, object) -> field[1].equals(key.getNamespace());
+                    break;
+                default:
+                    throw new Rejection(400, "BadRequest", "field label not supported: " + field[0]);
+            }
+            selected = selected.and(negated ? matches.negate() : matches);
+        }
+        for (String requirement : split(url.queryParameter("labelSelector"))) {
+            String[] label = requirement.split("!=|==|=", 2);
+            Predicate<JsonNode> matches;
+            if (label.length == 2) {
+                boolean negated = requirement.contains("!=");
+                matches = labels -> labels.path(label[0]).asText("").equals(label[1]) != negated;
+            } else if (requirement.startsWith("!")) {
+                matches = labels -> !labels.has(requirement.substring(1));
+            } else {
+                matches = labels -> labels.has(requirement);
+            }
+            selected = selected.and((key, object) -> matches.test(object.path("metadata").path("labels")));
+        }
+        return selected;
+    }
+
+    private static List<String> split(String selector) {
+        return selector == null || selector.isEmpty()
+                ? Collections.emptyList()
+                : Arrays.asList(selector.split(","));
+    }
+
+    private static boolean isOwnedBy(JsonNode object, String uid) {
+        for (JsonNode ownerReference : object.path("metadata").path("ownerReferences")) {
+            if (uid.equals(ownerReference.path("uid").asText())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * JSON merge patch (RFC 7386), also used for strategic merge patches, which the tests don't rely on.
+     */
+    private static JsonNode merge(JsonNode target, JsonNode patch) {
+        if (!patch.isObject()) {
+            return patch;
+        }
+        ObjectNode result = target.isObject() ? (ObjectNode) target : MAPPER.createObjectNode();
+        patch.fields().forEachRemaining(field -> {
+            if (field.getValue().isNull()) {
+                result.remove(field.getKey());
+            } else {
+                result.set(field.getKey(), merge(result.path(field.getKey()), field.getValue()));
+            }
+        });
+        return result;
+    }
+
+    @SneakyThrows
+    private static ObjectNode body(RecordedRequest request) {
+        JsonNode body = MAPPER.readTree(request.getBody().readUtf8());
+        if (!body.isObject()) {
+            throw new Rejection(400, "BadRequest", "the body of the request is not an object");
+        }
+        return (ObjectNode) body;
+    }
+
+    private static MockResponse respond(int code, JsonNode body) {
+        return new MockResponse()
+                .setResponseCode(code)
+                .setHeader("Content-Type", "application/json")
+                .setBody(body.toString());
+    }
+
+    private static MockResponse status(int code, String reason, String message) {
+        ObjectNode status = MAPPER.createObjectNode()
+                .put("apiVersion", "v1")
+                .put("kind", "Status")
+                .put("status", code < 400 ? "Success" : "Failure")
+                .put("code", code);
+        if (reason != null) {
+            status.put("reason", reason).put("message", message);
+        }
+        return respond(code, status);
+    }
+
+    private static String kindKey(String group, String plural) {
+        return (group == null ? "" : group) + "/" + plural;
+    }
+
+    /**
+     * Validating admission hook.
+     */
+    @FunctionalInterface
+    public interface Admission {
+        /**
+         * @return the reason to deny the write or null to admit it
+         */
+        String review(String operation, String plural, ObjectNode object);
+    }
+
+    @Value
+    public static class Kind {
+        String group;
+        String version;
+        String plural;
+        String kind;
+        boolean namespaced;
+
+        String apiVersion() {
+            return group.isEmpty() ? version : group + "/" + version;
+        }
+    }
+
+    @Value
+    public static class Key {
+        Kind kind;
+        String namespace;
+        String name;
+    }
+
+    @Value
+    public static class Event {
+        String type;
+        Key key;
+        ObjectNode object;
+
+        long getResourceVersion() {
+            return object.path("metadata").path("resourceVersion").asLong();
+        }
+
+        @Override
+        public String toString() {
+            return type + " " + key.getKind().getKind() + " " + key.getNamespace() + "/" + key.getName()
+                    + "@" + getResourceVersion();
+        }
+    }
+
+    private static class Rejection extends RuntimeException {
+        private final int code;
+        private final String reason;
+
+        Rejection(int code, String reason, String message) {
+            super(message);
+            this.code = code;
+            this.reason = reason;
+        }
+    }
+
+    /**
+     * Single watch connection. Events that happen before the web socket is open are kept and sent on open.
+     */
+    private class WatchSession extends WebSocketListener {
+        private final BiPredicate<Key, JsonNode> selected;
+        private final List<String> pending = new ArrayList<>();
+        private WebSocket socket;
+
+        WatchSession(BiPredicate<Key, JsonNode> selected) {
+            this.selected = selected;
+        }
+
+        void offer(Event event) {
+            if (!selected.test(event.getKey(), event.getObject())) {
+                return;
+            }
+            String frame = MAPPER.createObjectNode()
+                    .put("type", event.getType())
+                    .set("object", event.getObject())
+                    .toString();
+            if (socket == null) {
+                pending.add(frame);
+            } else {
+                socket.send(frame);
+            }
+        }
+
+        @Override
+        public void onOpen(WebSocket webSocket, Response response) {
+            synchronized (OfflineApiServer.this) {
+                socket = webSocket;
+                pending.forEach(webSocket::send);
+                pending.clear();
+            }
+        }
+
+        @Override
+        public void onClosing(WebSocket webSocket, int code, String reason) {
+            watches.remove(this);
+            webSocket.close(code, reason);
+        }
+
+        @Override
+        public void onFailure(WebSocket webSocket, Throwable cause, Response response) {
+            watches.remove(this);
+        }
+    }
+}
@@ -0,0 +1,59 @@
+package com.evil.k8s.operator.test;
+
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.server.mock.KubernetesMockServer;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import io.fabric8.mockwebserver.Context;
+import lombok.Getter;
+import okhttp3.mockwebserver.MockWebServer;
+
+import java.util.HashMap;
+
+import static com.evil.k8s.operator.test.CustomResourcesConstants.*;
+
+/**
+ * Cluster without a network: the fabric8 mock web server backed by {@link OfflineApiServer}, the RateLimiterConfig
+ * webhook and {@link OfflineOperator} in place of the operator. Enabled by {@value #OFFLINE_PROPERTY}.
+ */
+public class OfflineCluster implements AutoCloseable {
+
+    public static final String OFFLINE_PROPERTY = "k8s.offline";
+
+    private final KubernetesMockServer server;
+    private final OfflineOperator operator;
+    @Getter
+    private final KubernetesClient client;
+
+    public OfflineCluster() {
+        OfflineApiServer apiServer = new OfflineApiServer()
+                .register(rateLimitCrdContext, "RateLimiter")
+                .register(rateLimitConfigCrdContext, "RateLimiterConfig")
+                .register(envoyFilterContext, "EnvoyFilter");
+        apiServer.admission((operation, plural, object) -> {
+            if (!rateLimitConfigCrdContext.getPlural().equals(plural)) {
+                return null;
+            }
+            String rateLimiter = object.path("spec").path("rateLimiter").asText();
+            String namespace = object.path("metadata").path("namespace").asText();
+            return apiServer.exists(rateLimitCrdContext.getPlural(), namespace, rateLimiter)
+                    ? null
+                    : "RateLimiter [" + rateLimiter + "] doesn't exist in namespace [" + namespace + "]";
+        });
+        server = new KubernetesMockServer(new Context(Serialization.jsonMapper()), new MockWebServer(),
+                new HashMap<>(), apiServer, false);
+        server.init();
+        client = server.createClient();
+        operator = new OfflineOperator(client, apiServer);
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.getBoolean(OFFLINE_PROPERTY);
+    }
+
+    @Override
+    public void close() {
+        operator.close();
+        client.close();
+        server.destroy();
+    }
+}
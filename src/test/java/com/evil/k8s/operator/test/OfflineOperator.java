@@ -0,0 +1,285 @@
+package com.evil.k8s.operator.test;
+
+import com.evil.k8s.operator.test.models.*;
+import io.fabric8.kubernetes.api.model.*;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.api.model.apps.DeploymentBuilder;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.evil.k8s.operator.test.CustomResourcesConstants.envoyFilterContext;
+import static com.evil.k8s.operator.test.ResourceKind.RATE_LIMITER;
+import static com.evil.k8s.operator.test.ResourceKind.RATE_LIMITER_CONFIG;
+import static com.evil.k8s.operator.test.models.RateLimiterConfig.Context.SIDECAR_INBOUND;
+import static com.evil.k8s.operator.test.utils.Utils.*;
+
+/**
+ * Reference reconciler for the offline mode: generates the children of RateLimiters and RateLimiterConfigs
+ * in the shape the validators expect and reverts manual changes of them, the way the operator does.
+ * <p>
+ * Every write in a namespace queues a full reconciliation of that namespace on a single thread. Children are
+ * written unconditionally; the API server drops writes that change nothing, so a converged namespace goes quiet.
+ */
+@Slf4j
+public class OfflineOperator implements AutoCloseable {
+
+    private static final String RUNTIME_ROOT = "/data";
+    private static final String RUNTIME_SUBDIRECTORY = "ratelimit";
+    private static final int GRPC_PORT = 8081;
+
+    private final KubernetesClient client;
+    private final Set<String> queued = ConcurrentHashMap.newKeySet();
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "offline-operator");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public OfflineOperator(KubernetesClient client, OfflineApiServer server) {
+        this.client = client;
+        server.listener(event -> {
+            if (event.getKey().getNamespace() != null) {
+                enqueue(event.getKey().getNamespace());
+            }
+        });
+    }
+
+    @Override
+    @SneakyThrows
+    public void close() {
+        executor.shutdownNow();
+        executor.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    private void enqueue(String namespace) {
+        if (queued.add(namespace)) {
+            try {
+                executor.execute(() -> {
+                    queued.remove(namespace);
+                    reconcile(namespace);
+                });
+            } catch (RejectedExecutionException ex) {
+                queued.remove(namespace);
+            }
+        }
+    }
+
+    @SneakyThrows
+    private void reconcile(String namespace) {
+        try {
+            List<RateLimiter> rateLimiters = RATE_LIMITER.list(client, namespace, Collections.emptyMap()).getItems();
+            List<RateLimiterConfig> configs = RATE_LIMITER_CONFIG.list(client, namespace, Collections.emptyMap()).getItems();
+            Set<String> rateLimiterNames = rateLimiters.stream()
+                    .map(rateLimiter -> rateLimiter.getMetadata().getName())
+                    .collect(Collectors.toSet());
+            // Config children go first and back to back: an edit of a config is awaited on either of them
+            for (RateLimiterConfig config : configs) {
+                if (rateLimiterNames.contains(config.getSpec().getRateLimiter())) {
+                    client.customResource(envoyFilterContext).createOrReplace(namespace, envoyFilter(config));
+                }
+            }
+            for (RateLimiter rateLimiter : rateLimiters) {
+                client.configMaps().inNamespace(namespace).createOrReplace(configMap(namespace, rateLimiter, configs));
+            }
+            for (RateLimiter rateLimiter : rateLimiters) {
+                reconcile(namespace, rateLimiter);
+            }
+        } catch (KubernetesClientException ex) {
+            if (ex.getCode() == 409) {
+                // Lost a race with a concurrent write, which has queued another pass
+                log.debug("Namespace [{}] reconciliation conflicted: {}", namespace, ex.getMessage());
+            } else if (ex.getCode() != 404) {
+                log.warn("Namespace [{}] hasn't been reconciled", namespace, ex);
+            }
+        }
+    }
+
+    private void reconcile(String namespace, RateLimiter rateLimiter) {
+        String name = rateLimiter.getMetadata().getName();
+        String redisName = generateRedisName(name);
+        OwnerReference owner = owner(rateLimiter.getKind(), rateLimiter.getApiVersion(), rateLimiter.getMetadata());
+
+        client.apps().deployments().inNamespace(namespace).createOrReplace(deployment(namespace, rateLimiter, owner));
+        client.apps().deployments().inNamespace(namespace).createOrReplace(redisDeployment(namespace, redisName, owner));
+        client.services().inNamespace(namespace).createOrReplace(service(namespace, name, "grpc-" + name, GRPC_PORT, owner));
+        client.services().inNamespace(namespace).createOrReplace(service(namespace, redisName, redisName, redisPort, owner));
+    }
+
+    private static ConfigMap configMap(String namespace, RateLimiter rateLimiter, List<RateLimiterConfig> configs) {
+        String name = rateLimiter.getMetadata().getName();
+        Map<String, String> data = new TreeMap<>();
+        for (RateLimiterConfig config : configs) {
+            if (name.equals(config.getSpec().getRateLimiter())) {
+                data.put(config.getMetadata().getName() + ".yaml", configFile(config));
+            }
+        }
+        return new ConfigMapBuilder()
+                .withMetadata(metadata(namespace, name,
+                        owner(rateLimiter.getKind(), rateLimiter.getApiVersion(), rateLimiter.getMetadata())))
+                .withData(data)
+                .build();
+    }
+
+    private static Deployment deployment(String namespace, RateLimiter rateLimiter, OwnerReference owner) {
+        String name = rateLimiter.getMetadata().getName();
+        return new DeploymentBuilder()
+                .withMetadata(metadata(namespace, name, owner))
+                .withNewSpec()
+                .withReplicas(rateLimiter.getSpec().getSize())
+                .withNewSelector().addToMatchLabels("app", name).endSelector()
+                .withNewTemplate()
+                .withNewMetadata().addToLabels("app", name).endMetadata()
+                .withNewSpec()
+                .addNewContainer()
+                .withName("ratelimit")
+                .withImage("envoyproxy/ratelimit:v1.4.0")
+                .withImagePullPolicy("IfNotPresent")
+                .withCommand("/bin/ratelimit")
+                .addNewPort().withContainerPort(GRPC_PORT).withProtocol(TCP).endPort()
+                .addNewEnv().withName("LOG_LEVEL").withValue(rateLimiter.getSpec().getLogLevel()).endEnv()
+                .addNewEnv().withName("REDIS_SOCKET_TYPE").withValue(TCP).endEnv()
+                .addNewEnv().withName("REDIS_URL").withValue(generateRedisName(name) + ":" + redisPort).endEnv()
+                .addNewEnv().withName("RUNTIME_ROOT").withValue(RUNTIME_ROOT).endEnv()
+                .addNewEnv().withName("RUNTIME_SUBDIRECTORY").withValue(RUNTIME_SUBDIRECTORY).endEnv()
+                .addNewEnv().withName("RUNTIME_IGNOREDOTFILES").withValue("true").endEnv()
+                .addNewEnv().withName("RUNTIME_WATCH_ROOT").withValue("false").endEnv()
+                .addNewVolumeMount()
+                .withName("config")
+                .withMountPath(generateMountPath(RUNTIME_ROOT, RUNTIME_SUBDIRECTORY))
+                .endVolumeMount()
+                .endContainer()
+                .addNewVolume().withName("config").withNewConfigMap().withName(name).endConfigMap().endVolume()
+                .endSpec()
+                .endTemplate()
+                .endSpec()
+                .build();
+    }
+
+    private static Deployment redisDeployment(String namespace, String redisName, OwnerReference owner) {
+        return new DeploymentBuilder()
+                .withMetadata(metadata(namespace, redisName, owner))
+                .withNewSpec()
+                .withReplicas(1)
+                .withNewSelector().addToMatchLabels("app", redisName).endSelector()
+                .withNewTemplate()
+                .withNewMetadata().addToLabels("app", redisName).endMetadata()
+                .withNewSpec()
+                .addNewContainer()
+                .withName("redis")
+                .withImage("redis:alpine")
+                .withImagePullPolicy("IfNotPresent")
+                .addNewPort().withContainerPort(redisPort).withProtocol(TCP).endPort()
+                .endContainer()
+                .endSpec()
+                .endTemplate()
+                .endSpec()
+                .build();
+    }
+
+    private static Service service(String namespace, String name, String portName, int port, OwnerReference owner) {
+        return new ServiceBuilder()
+                .withMetadata(metadata(namespace, name, owner))
+                .withNewSpec()
+                .addNewPort()
+                .withName(portName)
+                .withProtocol(TCP)
+                .withPort(port)
+                .withTargetPort(new IntOrString(port))
+                .endPort()
+                .addToSelector("app", name)
+                .endSpec()
+                .build();
+    }
+
+    @SneakyThrows
+    private static String configFile(RateLimiterConfig config) {
+        return YAML_MAPPER.writeValueAsString(new ConfigMapRateLimitProperty(
+                config.getMetadata().getName(), config.getSpec().getDescriptors()));
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> envoyFilter(RateLimiterConfig config) {
+        RateLimiterConfig.RateLimiterConfigSpec spec = config.getSpec();
+        String namespace = config.getMetadata().getNamespace();
+        String service = spec.getRateLimiter() + "." + namespace + ".svc.cluster.local";
+        String context = spec.getApplyTo().name();
+        String virtualHost = spec.getApplyTo() == SIDECAR_INBOUND
+                ? "inbound|http|" + spec.getPort()
+                : spec.getHost() + ":" + spec.getPort();
+
+        EnvoyHttpFilterPatch httpFilter = EnvoyHttpFilterPatch.builder()
+                .name("envoy.rate_limit")
+                .config(EnvoyHttpFilterPatch.EnvoyRateLimitConfig.builder()
+                        .domain(config.getMetadata().getName())
+                        .failure_mode_deny(spec.isFailureModeDeny())
+                        .rateLimitService(EnvoyHttpFilterPatch.RateLimitService.builder()
+                                .grpcService(EnvoyHttpFilterPatch.GrpcService.builder()
+                                        .envoyGrpc(new EnvoyHttpFilterPatch.EnvoyGrpc("patched." + service))
+                                        .timeout(spec.getRateLimitRequestTimeout())
+                                        .build())
+                                .build())
+                        .build())
+                .build();
+
+        Map<String, String> labels = spec.getWorkloadSelector() == null || spec.getWorkloadSelector().getLabels() == null
+                ? Collections.emptyMap()
+                : spec.getWorkloadSelector().getLabels();
+        List<Map<String, Object>> configPatches = List.of(
+                Map.of("applyTo", "HTTP_FILTER",
+                        "match", Map.of("context", context,
+                                "listener", Map.of("filterChain", Map.of("filter", Map.of(
+                                        "name", "envoy.http_connection_manager",
+                                        "subFilter", Map.of("name", "envoy.router"))))),
+                        "patch", Map.of("operation", "INSERT_BEFORE",
+                                "value", JSON_MAPPER.convertValue(httpFilter, Map.class))),
+                Map.of("applyTo", "CLUSTER",
+                        "match", Map.of("context", context,
+                                "cluster", Map.of("service", service)),
+                        "patch", Map.of("operation", "MERGE",
+                                "value", JSON_MAPPER.convertValue(new EnvoyClusterPatch("patched." + service), Map.class))),
+                Map.of("applyTo", "VIRTUAL_HOST",
+                        "match", Map.of("context", context,
+                                "routeConfiguration", Map.of("vhost", Map.of("name", virtualHost))),
+                        "patch", Map.of("operation", "MERGE",
+                                "value", JSON_MAPPER.convertValue(new EnvoyGatewayPatch(spec.getRateLimits()), Map.class))));
+
+        Map<String, Object> envoyFilter = new LinkedHashMap<>();
+        envoyFilter.put("apiVersion", envoyFilterContext.getGroup() + "/" + envoyFilterContext.getVersion());
+        envoyFilter.put("kind", "EnvoyFilter");
+        envoyFilter.put("metadata", JSON_MAPPER.convertValue(metadata(namespace, config.getMetadata().getName(),
+                owner(config.getKind(), config.getApiVersion(), config.getMetadata())), Map.class));
+        envoyFilter.put("spec", Map.of(
+                "workloadSelector", Map.of("labels", labels),
+                "configPatches", configPatches));
+        return envoyFilter;
+    }
+
+    private static ObjectMeta metadata(String namespace, String name, OwnerReference owner) {
+        return new ObjectMetaBuilder()
+                .withName(name)
+                .withNamespace(namespace)
+                .withOwnerReferences(owner)
+                .build();
+    }
+
+    private static OwnerReference owner(String kind, String apiVersion, ObjectMeta ownerMetadata) {
+        return new OwnerReferenceBuilder()
+                .withApiVersion(apiVersion)
+                .withKind(kind)
+                .withName(ownerMetadata.getName())
+                .withUid(ownerMetadata.getUid())
+                .withController(true)
+                .withBlockOwnerDeletion(true)
+                .build();
+    }
+}
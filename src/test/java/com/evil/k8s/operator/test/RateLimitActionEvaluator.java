@@ -0,0 +1,411 @@
+package com.evil.k8s.operator.test;
+
+import com.evil.k8s.operator.test.models.EnvoyGatewayPatch;
+import com.evil.k8s.operator.test.models.RateLimiterConfig;
+import io.envoyproxy.envoy.extensions.common.ratelimit.v3.RateLimitDescriptor;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * The rate_limits actions of a RateLimiterConfig compiled for evaluation: turns the headers of requests into the
+ * descriptors the rate limit filter of Envoy sends, one per rate limit whose every action has its header, with the
+ * entries in the order of the actions. Of a repeated header the first value counts, like in {@link GatewayStandIn}.
+ * <p>
+ * Requests come in batches of raw HTTP/1.1 header blocks ({@link Batch}) and are scanned in place: header names are
+ * matched against the configured ones as bytes, ignoring ASCII case, and a descriptor hands the values to the
+ * {@link Sink} as ranges of the batch buffer. Nothing is allocated per request unless the sink asks for strings, so
+ * recorded traffic can be replayed to see which descriptors a config makes of it ({@link DistinctDescriptors}).
+ */
+public class RateLimitActionEvaluator {
+
+    private static final int NONE = -1;
+
+    /**
+     * Distinct configured header names, lower case.
+     */
+    private final byte[][] headerNames;
+    /**
+     * Open-addressing index of {@link #headerNames} by the hash of the name, so that a header line costs one probe
+     * whatever the number of configured headers.
+     */
+    private final int[] headerTable;
+    /**
+     * Per rate limit, the index in {@link #headerNames} of the header of every action; {@link #NONE} for an action
+     * without request_headers, which never produces an entry.
+     */
+    private final int[][] actionHeaders;
+    private final String[][] descriptorKeys;
+    private final long[][] keyHashes;
+
+    public RateLimitActionEvaluator(RateLimiterConfig rateLimiterConfig) {
+        this(Optional.ofNullable(rateLimiterConfig.getSpec().getRateLimits()).orElse(Collections.emptyList()));
+    }
+
+    public RateLimitActionEvaluator(List<EnvoyGatewayPatch.GatewayRateLimit> rateLimits) {
+        Map<String, Integer> headers = new LinkedHashMap<>();
+        actionHeaders = new int[rateLimits.size()][];
+        descriptorKeys = new String[rateLimits.size()][];
+        keyHashes = new long[rateLimits.size()][];
+        for (int i = 0; i < rateLimits.size(); i++) {
+            List<EnvoyGatewayPatch.RateLimitAction> actions = Optional.ofNullable(rateLimits.get(i).getActions())
+                    .orElse(Collections.emptyList());
+            actionHeaders[i] = new int[actions.size()];
+            descriptorKeys[i] = new String[actions.size()];
+            keyHashes[i] = new long[actions.size()];
+            for (int j = 0; j < actions.size(); j++) {
+                EnvoyGatewayPatch.ActionRequestHeader header = actions.get(j).getRequestHeaders();
+                if (header == null || header.getHeaderName() == null) {
+                    actionHeaders[i][j] = NONE;
+                    continue;
+                }
+                actionHeaders[i][j] = headers.computeIfAbsent(header.getHeaderName().toLowerCase(Locale.ROOT),
+                        name -> headers.size());
+                descriptorKeys[i][j] = header.getDescriptionKey();
+                keyHashes[i][j] = RateLimitCounters.hash(RateLimitCounters.hash(), header.getDescriptionKey());
+            }
+        }
+        headerNames = new byte[headers.size()][];
+        headerTable = new int[Math.max(2, Integer.highestOneBit(headers.size() * 4))];
+        Arrays.fill(headerTable, NONE);
+        headers.forEach((name, index) -> {
+            headerNames[index] = name.getBytes(StandardCharsets.ISO_8859_1);
+            int slot = hash(headerNames[index], 0, headerNames[index].length) & (headerTable.length - 1);
+            while (headerTable[slot] != NONE) {
+                slot = (slot + 1) & (headerTable.length - 1);
+            }
+            headerTable[slot] = index;
+        });
+    }
+
+    public int rateLimits() {
+        return actionHeaders.length;
+    }
+
+    /**
+     * Calls the sink for every descriptor of every request of the batch, in order. Thread-safe: the scratch space
+     * belongs to the call.
+     */
+    public void evaluate(Batch batch, Sink sink) {
+        int[] valueStarts = new int[headerNames.length];
+        int[] valueEnds = new int[headerNames.length];
+        Descriptor descriptor = new Descriptor(batch.buffer, valueStarts, valueEnds);
+        for (int request = 0; request < batch.size; request++) {
+            Arrays.fill(valueStarts, NONE);
+            scan(batch.buffer, batch.starts[request], batch.starts[request + 1], valueStarts, valueEnds);
+            for (int rateLimit = 0; rateLimit < actionHeaders.length; rateLimit++) {
+                if (complete(actionHeaders[rateLimit], valueStarts)) {
+                    descriptor.rateLimit = rateLimit;
+                    sink.descriptor(request, descriptor);
+                }
+            }
+        }
+    }
+
+    private static boolean complete(int[] headers, int[] valueStarts) {
+        if (headers.length == 0) {
+            return false;
+        }
+        for (int header : headers) {
+            if (header == NONE || valueStarts[header] == NONE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Finds the values of the configured headers among the "name: value" lines of a header block; lines without a
+     * colon, like the request line, are skipped. A name may start with a colon, as the pseudo-headers do.
+     */
+    private void scan(byte[] buffer, int from, int to, int[] valueStarts, int[] valueEnds) {
+        int line = from;
+        while (line < to) {
+            int end = line;
+            while (end < to && buffer[end] != '\n') {
+                end++;
+            }
+            int next = end + 1;
+            if (end > line && buffer[end - 1] == '\r') {
+                end--;
+            }
+            int colon = line + 1;
+            while (colon < end && buffer[colon] != ':') {
+                colon++;
+            }
+            if (colon < end) {
+                int header = header(buffer, line, colon);
+                if (header != NONE && valueStarts[header] == NONE) {
+                    int start = colon + 1;
+                    while (start < end && (buffer[start] == ' ' || buffer[start] == '\t')) {
+                        start++;
+                    }
+                    int stop = end;
+                    while (stop > start && (buffer[stop - 1] == ' ' || buffer[stop - 1] == '\t')) {
+                        stop--;
+                    }
+                    valueStarts[header] = start;
+                    valueEnds[header] = stop;
+                }
+            }
+            line = next;
+        }
+    }
+
+    private int header(byte[] buffer, int from, int to) {
+        for (int slot = hash(buffer, from, to) & (headerTable.length - 1); ; slot = (slot + 1) & (headerTable.length - 1)) {
+            int header = headerTable[slot];
+            if (header == NONE) {
+                return NONE;
+            }
+            byte[] name = headerNames[header];
+            if (name.length == to - from && equalsIgnoreCase(name, buffer, from)) {
+                return header;
+            }
+        }
+    }
+
+    private static boolean equalsIgnoreCase(byte[] lowerCase, byte[] buffer, int from) {
+        for (int i = 0; i < lowerCase.length; i++) {
+            if (lowerCase[i] != lowerCase(buffer[from + i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static byte lowerCase(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + ('a' - 'A')) : b;
+    }
+
+    private static int hash(byte[] buffer, int from, int to) {
+        int hash = 0;
+        for (int i = from; i < to; i++) {
+            hash = 31 * hash + lowerCase(buffer[i]);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    public interface Sink {
+        /**
+         * @param descriptor valid during the call only
+         */
+        void descriptor(int request, Descriptor descriptor);
+    }
+
+    /**
+     * A descriptor of the request being evaluated, reused for all of them: the values are ranges of the batch buffer.
+     */
+    public class Descriptor {
+        private final byte[] buffer;
+        private final int[] valueStarts;
+        private final int[] valueEnds;
+        private int rateLimit;
+
+        private Descriptor(byte[] buffer, int[] valueStarts, int[] valueEnds) {
+            this.buffer = buffer;
+            this.valueStarts = valueStarts;
+            this.valueEnds = valueEnds;
+        }
+
+        /**
+         * Index of the rate limit in the config.
+         */
+        public int rateLimit() {
+            return rateLimit;
+        }
+
+        public int size() {
+            return actionHeaders[rateLimit].length;
+        }
+
+        public String key(int entry) {
+            return descriptorKeys[rateLimit][entry];
+        }
+
+        public byte[] buffer() {
+            return buffer;
+        }
+
+        public int valueOffset(int entry) {
+            return valueStarts[actionHeaders[rateLimit][entry]];
+        }
+
+        public int valueLength(int entry) {
+            int header = actionHeaders[rateLimit][entry];
+            return valueEnds[header] - valueStarts[header];
+        }
+
+        public String value(int entry) {
+            return new String(buffer, valueOffset(entry), valueLength(entry), StandardCharsets.ISO_8859_1);
+        }
+
+        /**
+         * 64-bit FNV-1a over the rate limit, the hashes of the keys and the value bytes; equal descriptors of one
+         * config hash the same.
+         */
+        public long hash() {
+            long hash = RateLimitCounters.hash() ^ rateLimit;
+            for (int entry = 0; entry < size(); entry++) {
+                hash = (hash ^ keyHashes[rateLimit][entry]) * 0x100000001B3L;
+                for (int i = valueOffset(entry), end = i + valueLength(entry); i < end; i++) {
+                    hash = (hash ^ (buffer[i] & 0xFF)) * 0x100000001B3L;
+                }
+            }
+            return hash;
+        }
+
+        public RateLimitDescriptor toRateLimitDescriptor() {
+            RateLimitDescriptor.Builder descriptor = RateLimitDescriptor.newBuilder();
+            for (int entry = 0; entry < size(); entry++) {
+                descriptor.addEntriesBuilder().setKey(key(entry)).setValue(value(entry));
+            }
+            return descriptor.build();
+        }
+    }
+
+    /**
+     * Header blocks of requests back to back in one growing buffer.
+     */
+    public static class Batch {
+        private byte[] buffer = new byte[4096];
+        private int[] starts = new int[65];
+        private int size;
+
+        /**
+         * Requests of a file of raw HTTP/1.1 request heads, each ended by an empty line, as recorded.
+         */
+        public static Batch read(Path path) throws IOException {
+            byte[] bytes = Files.readAllBytes(path);
+            Batch batch = new Batch();
+            int from = 0;
+            int line = 0;
+            while (line < bytes.length) {
+                int end = line;
+                while (end < bytes.length && bytes[end] != '\n') {
+                    end++;
+                }
+                int next = Math.min(end + 1, bytes.length);
+                if (end == line || end == line + 1 && bytes[line] == '\r') {
+                    if (line > from) {
+                        batch.add(bytes, from, line - from);
+                    }
+                    from = next;
+                }
+                line = next;
+            }
+            if (from < bytes.length) {
+                batch.add(bytes, from, bytes.length - from);
+            }
+            return batch;
+        }
+
+        public Batch add(byte[] headers, int offset, int length) {
+            ensure(length);
+            System.arraycopy(headers, offset, buffer, starts[size], length);
+            starts[size + 1] = starts[size] + length;
+            size++;
+            return this;
+        }
+
+        public Batch add(Map<String, String> headers) {
+            StringBuilder block = new StringBuilder();
+            headers.forEach((name, value) -> block.append(name).append(": ").append(value).append("\r\n"));
+            byte[] bytes = block.toString().getBytes(StandardCharsets.ISO_8859_1);
+            return add(bytes, 0, bytes.length);
+        }
+
+        public int size() {
+            return size;
+        }
+
+        public void clear() {
+            size = 0;
+        }
+
+        private void ensure(int length) {
+            if (size + 2 > starts.length) {
+                starts = Arrays.copyOf(starts, starts.length * 2);
+            }
+            int needed = starts[size] + length;
+            if (needed > buffer.length) {
+                buffer = Arrays.copyOf(buffer, Math.max(needed, buffer.length * 2));
+            }
+        }
+    }
+
+    /**
+     * Counts descriptors and the distinct ones, overall and per rate limit, in an open-addressing set of their
+     * {@link Descriptor#hash}es; a collision of two 64-bit hashes would count two descriptors as one.
+     */
+    public static class DistinctDescriptors implements Sink {
+        private final long[] distinctPerRateLimit;
+        private final long[] totalPerRateLimit;
+        private static final long EMPTY = 0;
+
+        private long[] hashes = new long[1024];
+        private int distinct;
+
+        public DistinctDescriptors(RateLimitActionEvaluator evaluator) {
+            this.distinctPerRateLimit = new long[evaluator.rateLimits()];
+            this.totalPerRateLimit = new long[evaluator.rateLimits()];
+        }
+
+        @Override
+        public void descriptor(int request, Descriptor descriptor) {
+            totalPerRateLimit[descriptor.rateLimit()]++;
+            if (insert(descriptor.hash())) {
+                distinctPerRateLimit[descriptor.rateLimit()]++;
+            }
+        }
+
+        public long total() {
+            return Arrays.stream(totalPerRateLimit).sum();
+        }
+
+        public long total(int rateLimit) {
+            return totalPerRateLimit[rateLimit];
+        }
+
+        public long distinct() {
+            return distinct;
+        }
+
+        public long distinct(int rateLimit) {
+            return distinctPerRateLimit[rateLimit];
+        }
+
+        private boolean insert(long hash) {
+            if (distinct * 2 >= hashes.length) {
+                long[] previous = hashes;
+                hashes = new long[previous.length * 2];
+                for (long value : previous) {
+                    if (value != EMPTY) {
+                        put(value);
+                    }
+                }
+            }
+            if (put(hash == EMPTY ? 1 : hash)) {
+                distinct++;
+                return true;
+            }
+            return false;
+        }
+
+        private boolean put(long hash) {
+            int mask = hashes.length - 1;
+            for (int index = (int) (hash ^ (hash >>> 32)) & mask; ; index = (index + 1) & mask) {
+                if (hashes[index] == hash) {
+                    return false;
+                }
+                if (hashes[index] == EMPTY) {
+                    hashes[index] = hash;
+                    return true;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package com.evil.k8s.operator.test;
+
+import com.evil.k8s.operator.test.models.EnvoyGatewayPatch;
+import com.evil.k8s.operator.test.models.RateLimiterConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Replay of a batch of recorded requests through {@link RateLimitActionEvaluator}, counting distinct descriptors,
+ * against the same evaluation over header strings. Run by {@link JmhBenchmarkTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@OperationsPerInvocation(RateLimitActionEvaluatorBenchmark.REQUESTS)
+public class RateLimitActionEvaluatorBenchmark {
+
+    static final int REQUESTS = 1024;
+    private static final int RATE_LIMITS = 8;
+    /**
+     * Headers of a request the actions don't name.
+     */
+    private static final String[] OTHER_HEADERS = {"Host", "User-Agent", "Accept", "Accept-Encoding",
+            "Accept-Language", "Cookie", "X-Request-Id", "X-Forwarded-For"};
+
+    /**
+     * Actions of every rate limit.
+     */
+    @Param({"1", "4"})
+    public int depth;
+
+    /**
+     * Values every header takes in the batch.
+     */
+    @Param({"16", "4096"})
+    public int cardinality;
+
+    private List<EnvoyGatewayPatch.GatewayRateLimit> rateLimits;
+    private RateLimitActionEvaluator evaluator;
+    private RateLimitActionEvaluator.Batch batch;
+    private byte[][] requests;
+
+    @Setup
+    public void setUp() {
+        RateLimiterConfig rateLimiterConfig = TestResources.rateLimiterConfig("benchmark", "rate-limiter-config",
+                "rate-limiter", RATE_LIMITS, depth);
+        rateLimits = rateLimiterConfig.getSpec().getRateLimits();
+        evaluator = new RateLimitActionEvaluator(rateLimiterConfig);
+        Random random = new Random(42);
+        batch = new RateLimitActionEvaluator.Batch();
+        requests = new byte[REQUESTS][];
+        for (int i = 0; i < REQUESTS; i++) {
+            StringBuilder block = new StringBuilder("GET /api HTTP/1.1\r\n");
+            for (String header : OTHER_HEADERS) {
+                block.append(header).append(": value-").append(random.nextInt(cardinality)).append("\r\n");
+            }
+            for (EnvoyGatewayPatch.GatewayRateLimit rateLimit : rateLimits) {
+                for (EnvoyGatewayPatch.RateLimitAction action : rateLimit.getActions()) {
+                    block.append(action.getRequestHeaders().getHeaderName()).append(": value-")
+                            .append(random.nextInt(cardinality)).append("\r\n");
+                }
+            }
+            requests[i] = block.toString().getBytes(StandardCharsets.ISO_8859_1);
+            batch.add(requests[i], 0, requests[i].length);
+        }
+        long distinct = evaluate();
+        if (distinct != strings()) {
+            throw new IllegalStateException("Evaluators disagree on " + distinct + " distinct descriptors");
+        }
+    }
+
+    @Benchmark
+    public long evaluate() {
+        RateLimitActionEvaluator.DistinctDescriptors distinct = new RateLimitActionEvaluator.DistinctDescriptors(evaluator);
+        evaluator.evaluate(batch, distinct);
+        return distinct.distinct();
+    }
+
+    /**
+     * The header block of every request parsed into strings, descriptors as lists of entries in a hash set.
+     */
+    @Benchmark
+    public long strings() {
+        Set<List<String>> distinct = new HashSet<>();
+        for (byte[] request : requests) {
+            Map<String, String> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+            for (String line : new String(request, StandardCharsets.ISO_8859_1).split("\r\n")) {
+                int colon = line.indexOf(':');
+                if (colon > 0) {
+                    headers.putIfAbsent(line.substring(0, colon), line.substring(colon + 1).trim());
+                }
+            }
+            for (int i = 0; i < rateLimits.size(); i++) {
+                List<String> descriptor = new ArrayList<>();
+                descriptor.add(String.valueOf(i));
+                for (EnvoyGatewayPatch.RateLimitAction action : rateLimits.get(i).getActions()) {
+                    String value = headers.get(action.getRequestHeaders().getHeaderName());
+                    if (value == null) {
+                        descriptor = null;
+                        break;
+                    }
+                    descriptor.add(action.getRequestHeaders().getDescriptionKey());
+                    descriptor.add(value);
+                }
+                if (descriptor != null) {
+                    distinct.add(descriptor);
+                }
+            }
+        }
+        return distinct.size();
+    }
+}
@@ -0,0 +1,178 @@
+package com.evil.k8s.operator.test;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Hit counters of rate limit windows, keyed by a 64-bit hash of the domain and descriptor path (see {@link #hash}).
+ * <p>
+ * Keys live in an open-addressing table of primitive longs, claimed by CAS and never removed, so a key keeps its slot
+ * for the life of the store. Every slot has a counter in each of the stripes, separate arrays so that the stripes of a
+ * hot key don't share a cache line; a thread adds to the stripe of its id and reads the others, so threads hitting the
+ * same key don't contend on one CAS. A counter packs the window number with the hits of that window: the first hit of
+ * a new window resets it in the same CAS, nothing is allocated per request.
+ * <p>
+ * The total is the stripe just updated plus a read of the others, not a snapshot: concurrent hits may all see the
+ * count before each other's, so a limit can let through up to one hit per stripe more than the real service would.
+ * Reading stops once the total is past the limit, and the first hit that finds a window past it marks the window in
+ * a third array, written once per window: the next hits of that window read only their own stripe.
+ */
+public class RateLimitCounters {
+
+    private static final long MAX_HITS = 0xFFFFFFFFL;
+    private static final long EMPTY = 0;
+
+    private final int mask;
+    private final AtomicLongArray keys;
+    private final AtomicLongArray[] stripes;
+    /**
+     * Window past the limit of every slot, packed as the window bits with a low bit that tells it from an empty slot.
+     */
+    private final AtomicLongArray overLimit;
+
+    /**
+     * @param capacity number of keys, rounded up to a power of two
+     * @param stripes  counters per key, rounded up to a power of two; 1 makes the count exact
+     */
+    public RateLimitCounters(int capacity, int stripes) {
+        int size = powerOfTwo(capacity);
+        this.mask = size - 1;
+        this.keys = new AtomicLongArray(size);
+        this.stripes = new AtomicLongArray[powerOfTwo(stripes)];
+        for (int i = 0; i < this.stripes.length; i++) {
+            this.stripes[i] = new AtomicLongArray(size);
+        }
+        this.overLimit = new AtomicLongArray(size);
+    }
+
+    /**
+     * A stripe per processor, up to 16.
+     */
+    public static int defaultStripes() {
+        return Math.min(16, powerOfTwo(Runtime.getRuntime().availableProcessors()));
+    }
+
+    /**
+     * @param limit hits the window allows, past it the count is only known to exceed it
+     * @return hits of the key in the window, including these; at least {@code limit + 1} once past the limit
+     * @throws IllegalStateException when the key is new and every slot is taken
+     */
+    public long add(long key, long window, int hits, long limit) {
+        int slot = slot(key);
+        int windowBits = (int) window;
+        AtomicLongArray own = stripes[stripe()];
+        long count;
+        while (true) {
+            long current = own.get(slot);
+            long previous = (int) (current >>> 32) == windowBits ? current & MAX_HITS : 0;
+            long next = Math.min(previous + hits, MAX_HITS);
+            if (own.compareAndSet(slot, current, (long) windowBits << 32 | next)) {
+                count = next;
+                break;
+            }
+        }
+        long marker = (long) windowBits << 32 | 1;
+        if (overLimit.get(slot) == marker) {
+            return Math.max(count, limit + 1);
+        }
+        for (int i = 0; i < stripes.length && count <= limit; i++) {
+            if (stripes[i] != own) {
+                count += hits(stripes[i].get(slot), windowBits);
+            }
+        }
+        if (count > limit) {
+            overLimit.set(slot, marker);
+        }
+        return count;
+    }
+
+    /**
+     * @return hits of the key in the window, 0 for a key that has never been hit
+     */
+    public long get(long key, long window) {
+        int windowBits = (int) window;
+        int index = (int) mix(key) & mask;
+        for (int probe = 0; probe <= mask; probe++, index = (index + 1) & mask) {
+            long current = keys.get(index);
+            if (current == EMPTY) {
+                return 0;
+            }
+            if (current == key(key)) {
+                long count = 0;
+                for (AtomicLongArray stripe : stripes) {
+                    count += hits(stripe.get(index), windowBits);
+                }
+                return count;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 64-bit FNV-1a of the characters of the value, continuing the hash of the preceding parts of a key; null and
+     * the empty string hash differently.
+     */
+    public static long hash(long hash, String value) {
+        long result = (hash ^ (value == null ? 0xFF : 0x1F)) * 0x100000001B3L;
+        if (value != null) {
+            for (int i = 0; i < value.length(); i++) {
+                result = (result ^ value.charAt(i)) * 0x100000001B3L;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Seed of {@link #hash}.
+     */
+    public static long hash() {
+        return 0xCBF29CE484222325L;
+    }
+
+    private int slot(long key) {
+        long stored = key(key);
+        int index = (int) mix(key) & mask;
+        for (int probe = 0; probe <= mask; probe++, index = (index + 1) & mask) {
+            long current = keys.get(index);
+            if (current == stored) {
+                return index;
+            }
+            if (current == EMPTY) {
+                if (keys.compareAndSet(index, EMPTY, stored)) {
+                    return index;
+                }
+                if (keys.get(index) == stored) {
+                    return index;
+                }
+            }
+        }
+        throw new IllegalStateException("All " + (mask + 1) + " rate limit counters are taken");
+    }
+
+    private int stripe() {
+        return (int) mix(Thread.currentThread().getId()) & (stripes.length - 1);
+    }
+
+    private static long hits(long counter, int windowBits) {
+        return (int) (counter >>> 32) == windowBits ? counter & MAX_HITS : 0;
+    }
+
+    /**
+     * 0 marks an empty slot, the one key that hashes to it is stored as another value.
+     */
+    private static long key(long key) {
+        return key == EMPTY ? -1 : key;
+    }
+
+    /**
+     * Finalizer of SplitMix64, spreads the bits of keys and thread ids over the slot index.
+     */
+    private static long mix(long value) {
+        value = (value ^ (value >>> 30)) * 0xBF58476D1CE4E5B9L;
+        value = (value ^ (value >>> 27)) * 0x94D049BB133111EBL;
+        return value ^ (value >>> 31);
+    }
+
+    private static int powerOfTwo(int value) {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+}
@@ -0,0 +1,94 @@
+package com.evil.k8s.operator.test;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Hits of {@link RateLimitCounters} from many threads at once, over keys drawn uniformly or from a Zipf distribution
+ * where a few keys take most of the hits. Thread counts are set by {@link JmhBenchmarkTest}, e.g.
+ * {@code -Dk8s.benchmark.jmh.threads=1,2,4,8,16,32,64}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class RateLimitCountersBenchmark {
+
+    private static final int KEYS = 1024;
+    private static final int SEQUENCE = 4096;
+    /**
+     * The hottest of 1024 keys takes about 40% of the hits, the top ten about 80%.
+     */
+    private static final double ZIPF_EXPONENT = 1.5;
+
+    @Param({"uniform", "skewed"})
+    public String distribution;
+
+    @Param({"1", "16"})
+    public int stripes;
+
+    /**
+     * Hits a window allows: 100 is passed at once, so the hot keys take the over-limit path; a billion is never
+     * reached in a run, so every hit reads all the stripes.
+     */
+    @Param({"100", "1000000000"})
+    public long limit;
+
+    private RateLimitCounters counters;
+    private long[] keys;
+    private double[] cumulative;
+
+    @Setup
+    public void setUp() {
+        counters = new RateLimitCounters(KEYS * 2, stripes);
+        keys = new long[KEYS];
+        for (int i = 0; i < KEYS; i++) {
+            keys[i] = RateLimitCounters.hash(RateLimitCounters.hash(RateLimitCounters.hash(), "benchmark"),
+                    "key-" + i);
+        }
+        cumulative = new double[KEYS];
+        double sum = 0;
+        for (int i = 0; i < KEYS; i++) {
+            sum += "skewed".equals(distribution) ? 1 / Math.pow(i + 1, ZIPF_EXPONENT) : 1;
+            cumulative[i] = sum;
+        }
+        for (int i = 0; i < KEYS; i++) {
+            cumulative[i] /= sum;
+        }
+    }
+
+    /**
+     * Keys a thread hits, in a precomputed order so that drawing them costs nothing.
+     */
+    @State(Scope.Thread)
+    public static class Hits {
+        private long[] sequence;
+        private int next;
+
+        @Setup
+        public void setUp(RateLimitCountersBenchmark benchmark) {
+            Random random = new Random(ThreadLocalRandom.current().nextLong());
+            sequence = new long[SEQUENCE];
+            for (int i = 0; i < SEQUENCE; i++) {
+                int index = Arrays.binarySearch(benchmark.cumulative, random.nextDouble());
+                sequence[i] = benchmark.keys[Math.min(KEYS - 1, index < 0 ? -index - 1 : index)];
+            }
+        }
+
+        long next() {
+            next = (next + 1) & (SEQUENCE - 1);
+            return sequence[next];
+        }
+    }
+
+    /**
+     * One window for the whole run: the counters of the hot keys stay contended.
+     */
+    @Benchmark
+    public long add(Hits hits) {
+        return counters.add(hits.next(), 0, 1, limit);
+    }
+}
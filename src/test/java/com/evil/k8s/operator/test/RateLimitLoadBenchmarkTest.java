@@ -0,0 +1,106 @@
+package com.evil.k8s.operator.test;
+
+import com.evil.k8s.operator.test.models.RateLimiterConfig;
+import io.envoyproxy.envoy.service.ratelimit.v3.RateLimitRequest;
+import io.envoyproxy.envoy.service.ratelimit.v3.RateLimitResponse;
+import io.envoyproxy.envoy.service.ratelimit.v3.RateLimitServiceGrpc;
+import io.grpc.ManagedChannel;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Открытая нагрузка ({@link LoadGenerator}) с постоянной частотой запросов на host:port из RateLimiterConfig
+ * с заголовками, которые действия рейтлимита превращают в дескрипторы. Печатает пропущенные и ограниченные (429)
+ * запросы в секунду рядом с ожидаемыми по requests_per_unit и перцентили задержки от запланированного времени запроса.
+ * <p>
+ * Без {@code k8s.benchmark.load.host} нагрузка идет на локальный {@link GatewayStandIn}, который спрашивает
+ * {@link RateLimitServiceEmulator} в том же процессе, а с {@code k8s.benchmark.load.grpc=true} по gRPC; тогда
+ * проверяется, что пропущено ровно столько, сколько разрешают лимиты.
+ */
+@Slf4j
+@Tag("benchmark")
+class RateLimitLoadBenchmarkTest {
+
+    public static final String HOST_PROPERTY = "k8s.benchmark.load.host";
+    public static final String PORT_PROPERTY = "k8s.benchmark.load.port";
+    public static final String RATE_PROPERTY = "k8s.benchmark.load.rate";
+    public static final String DURATION_PROPERTY = "k8s.benchmark.load.duration.seconds";
+    public static final String LIMIT_PROPERTY = "k8s.benchmark.load.limit";
+    public static final String GRPC_PROPERTY = "k8s.benchmark.load.grpc";
+
+    private final String rateLimiterName = "rate-limiter-load";
+
+    @Test
+    public void load() throws Exception {
+        int rate = Integer.getInteger(RATE_PROPERTY, 500);
+        Duration duration = Duration.ofSeconds(Integer.getInteger(DURATION_PROPERTY, 10));
+        RateLimiterConfig rateLimiterConfig = TestResources.rateLimiterConfig("benchmark", rateLimiterName, rateLimiterName);
+        rateLimiterConfig.getSpec().getDescriptors().forEach(descriptor -> descriptor.getRateLimit()
+                .setRequestsPerUnit(Integer.getInteger(LIMIT_PROPERTY, 100))
+                .setUnit("second"));
+        double expected = Math.min(rate, allowedPerSecond(rateLimiterConfig));
+        LoadGenerator generator = new LoadGenerator(Duration.ofSeconds(5));
+
+        String host = System.getProperty(HOST_PROPERTY);
+        if (host != null) {
+            rateLimiterConfig.getSpec().setHost(host).setPort(Integer.getInteger(PORT_PROPERTY, 80));
+            LoadGenerator.Result result = generator.run(LoadGenerator.target(rateLimiterConfig),
+                    LoadGenerator.headers(rateLimiterConfig), rate, duration);
+            log.info("{}", result.report(expected));
+            return;
+        }
+
+        try (RateLimitServiceEmulator rateLimitService = new RateLimitServiceEmulator()
+                .load(TestResources.rateLimiterConfigMap(rateLimiterName, "1", Collections.singletonList(rateLimiterConfig)))
+                .start()) {
+            ManagedChannel channel = rateLimitService.channel();
+            Function<RateLimitRequest, RateLimitResponse> shouldRateLimit = Boolean.getBoolean(GRPC_PROPERTY)
+                    ? RateLimitServiceGrpc.newBlockingStub(channel)::shouldRateLimit
+                    : rateLimitService::shouldRateLimit;
+            try (GatewayStandIn gateway = new GatewayStandIn(rateLimiterConfig, shouldRateLimit, 16).start()) {
+                InetSocketAddress address = gateway.getAddress();
+                rateLimiterConfig.getSpec().setHost(address.getHostString()).setPort(address.getPort());
+                LoadGenerator.Result result = generator.run(LoadGenerator.target(rateLimiterConfig),
+                        LoadGenerator.headers(rateLimiterConfig), rate, duration);
+                log.info("{}", result.report(expected));
+
+                assertEquals(0, result.failed(), "Failed requests");
+                // Fixed windows: the first and the last window of the run may be partial
+                long seconds = duration.toSeconds();
+                assertTrue(result.allowed() >= expected * (seconds - 1) && result.allowed() <= expected * (seconds + 1),
+                        "Allowed " + result.allowed() + " requests, expected " + expected + "/s for " + seconds + "s");
+            } finally {
+                channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            }
+        }
+    }
+
+    /**
+     * A request is let through when every rate limit lets it, so the slowest descriptor sets the rate: the requests
+     * of {@link LoadGenerator#headers} reach the deepest level of every descriptor.
+     */
+    private static double allowedPerSecond(RateLimiterConfig rateLimiterConfig) {
+        double allowed = Double.MAX_VALUE;
+        for (RateLimiterConfig.RateLimiterConfigDescriptors descriptor : rateLimiterConfig.getSpec().getDescriptors()) {
+            RateLimiterConfig.RateLimiterConfigDescriptors level = descriptor;
+            while (level.getRateLimiterConfigDescriptors() != null) {
+                level = level.getRateLimiterConfigDescriptors();
+            }
+            if (level.getRateLimit() != null) {
+                allowed = Math.min(allowed, level.getRateLimit().getRequestsPerUnit() * 1000.0
+                        / RateLimitServiceEmulator.unitMillis(level.getRateLimit().getUnit()));
+            }
+        }
+        return allowed;
+    }
+}
@@ -0,0 +1,96 @@
+package com.evil.k8s.operator.test;
+
+import com.evil.k8s.operator.test.ConvergenceAwaiter.Convergence;
+import com.evil.k8s.operator.test.models.RateLimiter;
+import com.evil.k8s.operator.test.models.RateLimiterConfig;
+import io.envoyproxy.envoy.extensions.common.ratelimit.v3.RateLimitDescriptor;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static com.evil.k8s.operator.test.ResourceKind.CONFIG_MAP;
+
+/**
+ * Замер времени, за которое изменение requests_per_unit в RateLimiterConfig начинает применяться: от записи в API
+ * до ответа сервиса рейтлимитов с новым лимитом ({@link RateLimitReloadProbe}). Кроме реконсиляции оператора сюда
+ * входит синхронизация смонтированной ConfigMap kubelet'ом и перечитывание файлов сервисом; опрашиваются все поды
+ * Deployment рейтлимитера, лимит считается примененным, когда его применяют все.
+ * <p>
+ * Без кластера ({@code k8s.offline}) подов нет: их заменяет {@link RateLimitServiceEmulator}, который загружает
+ * ConfigMap с периодом синхронизации {@code k8s.benchmark.reload.offline.sync.ms}.
+ */
+@Slf4j
+@Tag("benchmark")
+class RateLimitReloadLatencyBenchmarkTest extends K8sRateLimitAbstractTest {
+
+    public static final String ITERATIONS_PROPERTY = "k8s.benchmark.reload.iterations";
+    public static final String TIMEOUT_PROPERTY = "k8s.benchmark.reload.timeout.seconds";
+    public static final String POLL_PROPERTY = "k8s.benchmark.reload.poll.ms";
+    public static final String OFFLINE_SYNC_PROPERTY = "k8s.benchmark.reload.offline.sync.ms";
+
+    private final String rateLimiterName = "rate-limiter-reload";
+
+    @Test
+    public void reloadLatency() {
+        int iterations = Integer.getInteger(ITERATIONS_PROPERTY, 10);
+        Duration timeout = Duration.ofSeconds(Integer.getInteger(TIMEOUT_PROPERTY, 180));
+        Duration poll = Duration.ofMillis(Integer.getInteger(POLL_PROPERTY, 250));
+        RateLimiter rateLimiter = TestResources.rateLimiter(client, namespace, rateLimiterName);
+        RateLimiterConfig rateLimiterConfig = TestResources.rateLimiterConfig(namespace, rateLimiterName, rateLimiterName);
+        RateLimiterConfig.RateLimiterConfigDescriptors descriptor = rateLimiterConfig.getSpec().getDescriptors().get(0);
+        RateLimitDescriptor probed = RateLimitDescriptor.newBuilder()
+                .addEntries(RateLimitDescriptor.Entry.newBuilder()
+                        .setKey(descriptor.getKey())
+                        .setValue(descriptor.getValue()))
+                .build();
+        String domain = rateLimiterConfig.getMetadata().getName();
+        LatencyStats stats = new LatencyStats();
+        try (
+                RateLimiterProcessor rateLimiterProcessor = new RateLimiterProcessor(requester);
+                RateLimiterConfigProcessor rateLimiterConfigProcessor = new RateLimiterConfigProcessor(requester);
+        ) {
+            rateLimiterProcessor.create(rateLimiter);
+            try (RateLimitReloadProbe probe = probe(timeout)) {
+                long start = System.nanoTime();
+                rateLimiterConfigProcessor.create(rateLimiterConfig);
+                stats.record("operator: create", requester.getLastConvergence());
+                record(stats, probe.awaitLimit("enforced: create", domain, probed,
+                        descriptor.getRateLimit().getRequestsPerUnit(), start, timeout, poll));
+
+                for (int i = 0; i < iterations; i++) {
+                    int requestsPerUnit = descriptor.getRateLimit().getRequestsPerUnit() + 1;
+                    start = System.nanoTime();
+                    rateLimiterConfigProcessor.edit(rlConfig -> rlConfig.getSpec().getDescriptors().get(0)
+                            .getRateLimit().setRequestsPerUnit(requestsPerUnit));
+                    stats.record("operator: edit", requester.getLastConvergence());
+                    record(stats, probe.awaitLimit("enforced: edit", domain, probed, requestsPerUnit, start,
+                            timeout, poll));
+                }
+            }
+        }
+        log.info("Rate limit reload latency, {} edits of requests_per_unit:{}{}",
+                iterations, System.lineSeparator(), stats.report());
+    }
+
+    @SneakyThrows
+    private RateLimitReloadProbe probe(Duration timeout) {
+        if (OfflineCluster.isEnabled()) {
+            return RateLimitReloadProbe.emulated(() -> requester.read(CONFIG_MAP, rateLimiterName),
+                    Duration.ofMillis(Integer.getInteger(OFFLINE_SYNC_PROPERTY, 1000)));
+        }
+        return RateLimitReloadProbe.pods(client, namespace, client.apps().deployments().inNamespace(namespace)
+                .withName(rateLimiterName)
+                .waitUntilReady(timeout.toMillis(), TimeUnit.MILLISECONDS));
+    }
+
+    private static void record(LatencyStats stats, Convergence convergence) {
+        if (!convergence.isConverged()) {
+            log.warn("{}", convergence);
+        }
+        stats.record(convergence.getOperation(), convergence);
+    }
+}
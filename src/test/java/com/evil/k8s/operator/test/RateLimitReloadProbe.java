@@ -0,0 +1,170 @@
+package com.evil.k8s.operator.test;
+
+import com.evil.k8s.operator.test.ConvergenceAwaiter.Convergence;
+import com.evil.k8s.operator.test.ResourceCache.Cached;
+import io.envoyproxy.envoy.extensions.common.ratelimit.v3.RateLimitDescriptor;
+import io.envoyproxy.envoy.service.ratelimit.v3.RateLimitRequest;
+import io.envoyproxy.envoy.service.ratelimit.v3.RateLimitResponse;
+import io.envoyproxy.envoy.service.ratelimit.v3.RateLimitServiceGrpc;
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.Pod;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.LocalPortForward;
+import io.grpc.ManagedChannel;
+import io.grpc.StatusRuntimeException;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import static com.evil.k8s.operator.test.ExpectedManifests.GRPC_PORT;
+
+/**
+ * Asks every instance of a rate limit service which limit it applies to a descriptor, to time how long a change of a
+ * RateLimiterConfig takes to be enforced. The answer is the {@code current_limit} of {@code ShouldRateLimit}: it
+ * changes only once the service has reloaded its files, which for a ratelimit pod also waits for the kubelet to sync
+ * the mounted ConfigMap.
+ * <p>
+ * Every probe is a hit on the descriptor; the limit is read whatever the code of the answer.
+ */
+@Slf4j
+public class RateLimitReloadProbe implements AutoCloseable {
+
+    private final List<String> instances = new ArrayList<>();
+    private final List<RateLimitServiceGrpc.RateLimitServiceBlockingStub> stubs = new ArrayList<>();
+    private final List<AutoCloseable> resources = new ArrayList<>();
+
+    private RateLimitReloadProbe() {
+    }
+
+    /**
+     * The pods of the ratelimit Deployment, each through a port forward of its gRPC port.
+     */
+    @SneakyThrows
+    public static RateLimitReloadProbe pods(KubernetesClient client, String namespace, Deployment deployment) {
+        List<Pod> pods = client.pods().inNamespace(namespace)
+                .withLabels(deployment.getSpec().getSelector().getMatchLabels())
+                .list().getItems().stream()
+                .filter(pod -> "Running".equals(pod.getStatus().getPhase()))
+                .collect(Collectors.toList());
+        if (pods.isEmpty()) {
+            throw new IllegalStateException("No running pods of Deployment " + deployment.getMetadata().getName());
+        }
+        RateLimitReloadProbe probe = new RateLimitReloadProbe();
+        for (Pod pod : pods) {
+            LocalPortForward portForward = client.pods().inNamespace(namespace).withName(pod.getMetadata().getName())
+                    .portForward(GRPC_PORT);
+            probe.resources.add(portForward);
+            probe.add(pod.getMetadata().getName(), NettyChannelBuilder
+                    .forAddress(portForward.getLocalAddress().getHostAddress(), portForward.getLocalPort())
+                    .usePlaintext()
+                    .build());
+        }
+        return probe;
+    }
+
+    /**
+     * A {@link RateLimitServiceEmulator} in place of a ratelimit pod for a cluster without pods. Like the kubelet, a
+     * sync every {@code syncPeriod} looks at the ConfigMap and loads its files when its resourceVersion has changed.
+     */
+    public static RateLimitReloadProbe emulated(Supplier<Cached<ConfigMap>> configMap, Duration syncPeriod) {
+        RateLimitServiceEmulator rateLimitService = new RateLimitServiceEmulator().start();
+        ScheduledExecutorService kubelet = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "kubelet-sync");
+            thread.setDaemon(true);
+            return thread;
+        });
+        RateLimitReloadProbe probe = new RateLimitReloadProbe();
+        probe.resources.add(rateLimitService);
+        probe.resources.add(kubelet::shutdownNow);
+        String[] synced = {null};
+        kubelet.scheduleWithFixedDelay(() -> {
+            try {
+                Cached<ConfigMap> cached = configMap.get();
+                if (cached.exists() && !cached.getResourceVersion().equals(synced[0])) {
+                    rateLimitService.load(cached);
+                    synced[0] = cached.getResourceVersion();
+                }
+            } catch (RuntimeException ex) {
+                log.warn("Emulated ratelimit pod didn't load the ConfigMap", ex);
+            }
+        }, 0, syncPeriod.toMillis(), TimeUnit.MILLISECONDS);
+        probe.add("emulator:" + rateLimitService.getPort(), rateLimitService.channel());
+        return probe;
+    }
+
+    private void add(String instance, ManagedChannel channel) {
+        instances.add(instance);
+        stubs.add(RateLimitServiceGrpc.newBlockingStub(channel));
+        resources.add(() -> channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * @return requests_per_unit each instance applies to the descriptor, 0 when it has no rate limit for it or
+     * doesn't answer
+     */
+    public Map<String, Integer> currentLimits(String domain, RateLimitDescriptor descriptor) {
+        RateLimitRequest request = RateLimitRequest.newBuilder().setDomain(domain).addDescriptors(descriptor).build();
+        Map<String, Integer> limits = new LinkedHashMap<>();
+        for (int i = 0; i < stubs.size(); i++) {
+            int limit = 0;
+            try {
+                RateLimitResponse.DescriptorStatus status = stubs.get(i)
+                        .withDeadlineAfter(5, TimeUnit.SECONDS)
+                        .shouldRateLimit(request)
+                        .getStatuses(0);
+                limit = status.hasCurrentLimit() ? status.getCurrentLimit().getRequestsPerUnit() : 0;
+            } catch (StatusRuntimeException ex) {
+                log.debug("{} didn't answer", instances.get(i), ex);
+            }
+            limits.put(instances.get(i), limit);
+        }
+        return limits;
+    }
+
+    /**
+     * Polls every instance until all of them apply {@code requestsPerUnit} to the descriptor.
+     *
+     * @param startNanos when the change was made, the elapsed time is counted from it
+     */
+    @SneakyThrows
+    public Convergence awaitLimit(String operation, String domain, RateLimitDescriptor descriptor, int requestsPerUnit,
+                                  long startNanos, Duration timeout, Duration pollInterval) {
+        while (true) {
+            Map<String, Integer> limits = currentLimits(domain, descriptor);
+            long elapsed = System.nanoTime() - startNanos;
+            List<String> pending = limits.entrySet().stream()
+                    .filter(limit -> limit.getValue() != requestsPerUnit)
+                    .map(limit -> limit.getKey() + " applies " + limit.getValue())
+                    .collect(Collectors.toList());
+            if (pending.isEmpty() || elapsed >= timeout.toNanos()) {
+                return new Convergence(operation, Duration.ofNanos(elapsed), pending.isEmpty(), pending,
+                        Collections.emptyList());
+            }
+            Thread.sleep(pollInterval.toMillis());
+        }
+    }
+
+    /**
+     * Closes the channels first, then what they lead to.
+     */
+    @Override
+    public void close() {
+        for (int i = resources.size() - 1; i >= 0; i--) {
+            AutoCloseable resource = resources.get(i);
+            try {
+                resource.close();
+            } catch (Exception ex) {
+                log.warn("Failed to close {}", resource, ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.evil.k8s.operator.test;
+
+import com.evil.k8s.operator.test.models.RateLimiterConfig;
+import io.envoyproxy.envoy.extensions.common.ratelimit.v3.RateLimitDescriptor;
+import io.envoyproxy.envoy.service.ratelimit.v3.RateLimitRequest;
+import io.envoyproxy.envoy.service.ratelimit.v3.RateLimitResponse;
+import io.envoyproxy.envoy.service.ratelimit.v3.RateLimitServiceGrpc;
+import io.grpc.ManagedChannel;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decisions of {@link RateLimitServiceEmulator} for the deepest descriptor of a domain: matching alone, a whole
+ * {@code ShouldRateLimit} response, and a gRPC round trip over localhost. Run by {@link JmhBenchmarkTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RateLimitServiceBenchmark {
+
+    private static final String RATE_LIMITER = "rate-limiter-benchmark";
+    private static final int DESCRIPTORS = 8;
+
+    /**
+     * Number of domains, one file each.
+     */
+    @Param({"1", "64"})
+    public int domains;
+
+    /**
+     * Nesting of every descriptor, the number of entries a request descriptor has.
+     */
+    @Param({"1", "8"})
+    public int depth;
+
+    private RateLimitServiceEmulator rateLimitService;
+    private ManagedChannel channel;
+    private RateLimitServiceGrpc.RateLimitServiceBlockingStub stub;
+    private String domain;
+    private RateLimitDescriptor descriptor;
+    private RateLimitRequest request;
+
+    @Setup
+    public void setUp() {
+        List<RateLimiterConfig> rateLimiterConfigs = new ArrayList<>();
+        for (int i = 0; i < domains; i++) {
+            rateLimiterConfigs.add(TestResources.rateLimiterConfig("benchmark", "rate-limiter-config-" + i,
+                    RATE_LIMITER, DESCRIPTORS, depth));
+        }
+        RateLimiterConfig rateLimiterConfig = rateLimiterConfigs.get(domains - 1);
+        rateLimitService = new RateLimitServiceEmulator()
+                .load(TestResources.rateLimiterConfigMap(RATE_LIMITER, "1", rateLimiterConfigs))
+                .start();
+        channel = rateLimitService.channel();
+        stub = RateLimitServiceGrpc.newBlockingStub(channel);
+
+        domain = rateLimiterConfig.getMetadata().getName();
+        RateLimitDescriptor.Builder path = RateLimitDescriptor.newBuilder();
+        for (RateLimiterConfig.RateLimiterConfigDescriptors level = rateLimiterConfig.getSpec().getDescriptors()
+                .get(DESCRIPTORS - 1); level != null; level = level.getRateLimiterConfigDescriptors()) {
+            path.addEntriesBuilder().setKey(level.getKey()).setValue(level.getValue());
+        }
+        descriptor = path.build();
+        request = RateLimitRequest.newBuilder().setDomain(domain).addDescriptors(descriptor).build();
+        RateLimitResponse response = stub.shouldRateLimit(request);
+        if (response.getStatuses(0).getCurrentLimit().getRequestsPerUnit() != DESCRIPTORS) {
+            throw new IllegalStateException("Descriptor doesn't match its rate limit: " + response);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws InterruptedException {
+        channel.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+        rateLimitService.close();
+    }
+
+    @Benchmark
+    public RateLimitResponse.Code decide() {
+        return rateLimitService.decide(domain, descriptor, 1);
+    }
+
+    @Benchmark
+    public RateLimitResponse shouldRateLimit() {
+        return rateLimitService.shouldRateLimit(request);
+    }
+
+    @Benchmark
+    public RateLimitResponse grpcRoundTrip() {
+        return stub.shouldRateLimit(request);
+    }
+}
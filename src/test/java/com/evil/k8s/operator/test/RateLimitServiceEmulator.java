@@ -0,0 +1,332 @@
+package com.evil.k8s.operator.test;
+
+import com.evil.k8s.operator.test.ResourceCache.Cached;
+import com.evil.k8s.operator.test.models.ConfigMapRateLimitProperty;
+import com.evil.k8s.operator.test.models.RateLimiterConfig;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.protobuf.Duration;
+import io.envoyproxy.envoy.extensions.common.ratelimit.v3.RateLimitDescriptor;
+import io.envoyproxy.envoy.service.ratelimit.v3.RateLimitRequest;
+import io.envoyproxy.envoy.service.ratelimit.v3.RateLimitResponse;
+import io.envoyproxy.envoy.service.ratelimit.v3.RateLimitResponse.Code;
+import io.envoyproxy.envoy.service.ratelimit.v3.RateLimitResponse.DescriptorStatus;
+import io.envoyproxy.envoy.service.ratelimit.v3.RateLimitResponse.RateLimit.Unit;
+import io.envoyproxy.envoy.service.ratelimit.v3.RateLimitServiceGrpc;
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.grpc.ManagedChannel;
+import io.grpc.Server;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.netty.shaded.io.grpc.netty.NettyChannelBuilder;
+import io.grpc.netty.shaded.io.grpc.netty.NettyServerBuilder;
+import io.grpc.stub.StreamObserver;
+import lombok.SneakyThrows;
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import static com.evil.k8s.operator.test.utils.Utils.YAML_MAPPER;
+
+/**
+ * In-process Envoy rate limit service: answers {@code ShouldRateLimit} of the v3 RLS API the way envoyproxy/ratelimit
+ * does, with the domain files of a RateLimiter ConfigMap as its configuration and in-memory counters instead of Redis.
+ * Serves gRPC on localhost after {@link #start}, and can be called directly with {@link #shouldRateLimit}.
+ * <p>
+ * The descriptors of every domain are compiled into a trie of key, then value, with descriptors that have only a key
+ * matching any value. Matching a request descriptor walks the trie by its entries and applies the rate limit of the
+ * node of its last entry; it only looks strings up in maps and doesn't allocate. Hits are counted in
+ * {@link RateLimitCounters}, in fixed windows of the unit of the rate limit, under a hash of the domain and the
+ * descriptor path, with the values of the key-only entries on it: loading new files doesn't reset the descriptors that
+ * stay.
+ */
+@Slf4j
+public class RateLimitServiceEmulator implements AutoCloseable {
+
+    private final LongSupplier clock;
+    private final ConfigMapFiles configMapFiles = new ConfigMapFiles();
+    private final RateLimitCounters counters;
+    private volatile Map<String, Node> domains = Collections.emptyMap();
+    private Server server;
+
+    public RateLimitServiceEmulator() {
+        this(System::currentTimeMillis);
+    }
+
+    /**
+     * @param clock milliseconds the counter windows are computed from; a constant clock never resets them
+     */
+    public RateLimitServiceEmulator(LongSupplier clock) {
+        this(clock, new RateLimitCounters(1 << 16, RateLimitCounters.defaultStripes()));
+    }
+
+    public RateLimitServiceEmulator(LongSupplier clock, RateLimitCounters counters) {
+        this.clock = clock;
+        this.counters = counters;
+    }
+
+    /**
+     * Replaces the configuration with the files of the ConfigMap. Like the real service refuses to load them, throws
+     * on a file that isn't valid YAML, a file without a domain, a domain of two files, an unknown unit and a
+     * descriptor path that has two rate limits.
+     */
+    @SneakyThrows
+    public synchronized RateLimitServiceEmulator load(Cached<ConfigMap> cached) {
+        ConfigMapFiles.Parsed parsed = configMapFiles.parse(cached);
+        Map<String, Node> compiled = new HashMap<>();
+        for (Map.Entry<String, ConfigMapFiles.ParsedFile> entry : new TreeMap<>(parsed.getFiles()).entrySet()) {
+            String source = cached + " file " + entry.getKey();
+            JsonNode tree = entry.getValue().getTree();
+            if (tree == null) {
+                throw new IllegalStateException(source + " isn't valid YAML: " + entry.getValue().getError());
+            }
+            ConfigMapRateLimitProperty property = YAML_MAPPER.treeToValue(tree, ConfigMapRateLimitProperty.class);
+            String domain = property.getDomain();
+            if (domain == null || domain.isEmpty()) {
+                throw new IllegalStateException(source + " has no domain");
+            }
+            Node root = new Node(domain, RateLimitCounters.hash(RateLimitCounters.hash(), domain), 0, new int[0]);
+            if (compiled.putIfAbsent(domain, root) != null) {
+                throw new IllegalStateException(source + " repeats domain " + domain);
+            }
+            for (RateLimiterConfig.RateLimiterConfigDescriptors descriptor : Optional.ofNullable(property.getDescriptors())
+                    .orElse(Collections.emptyList())) {
+                compile(source, root, descriptor);
+            }
+        }
+        domains = compiled;
+        log.debug("{}: loaded domains {}", cached, domains());
+        return this;
+    }
+
+    public Set<String> domains() {
+        return new TreeSet<>(domains.keySet());
+    }
+
+    private void compile(String source, Node parent, RateLimiterConfig.RateLimiterConfigDescriptors descriptor) {
+        String key = descriptor.getKey();
+        if (key == null || key.isEmpty()) {
+            throw new IllegalStateException(source + ": descriptor without a key under " + parent.path);
+        }
+        String value = descriptor.getValue() == null || descriptor.getValue().isEmpty() ? null : descriptor.getValue();
+        Map<String, Node> byValue = parent.children.computeIfAbsent(key, k -> new HashMap<>());
+        Node node = byValue.get(value);
+        if (node == null) {
+            int[] wildcards = parent.wildcards;
+            if (value == null) {
+                wildcards = Arrays.copyOf(wildcards, wildcards.length + 1);
+                wildcards[wildcards.length - 1] = parent.depth;
+            }
+            node = new Node(parent.path + "." + key + (value == null ? "" : "_" + value),
+                    RateLimitCounters.hash(RateLimitCounters.hash(parent.key, key), value), parent.depth + 1, wildcards);
+            byValue.put(value, node);
+        }
+        if (descriptor.getRateLimit() != null) {
+            if (node.unit != null) {
+                throw new IllegalStateException(source + ": second rate limit of " + node.path);
+            }
+            node.limit(source, descriptor.getRateLimit());
+        }
+        if (descriptor.getRateLimiterConfigDescriptors() != null) {
+            compile(source, node, descriptor.getRateLimiterConfigDescriptors());
+        }
+    }
+
+    /**
+     * The decision for one descriptor, without building a response.
+     *
+     * @return OK as well when no rate limit applies to the descriptor
+     */
+    public Code decide(String domain, RateLimitDescriptor descriptor, int hits) {
+        Node root = domains.get(domain);
+        Node node = root == null ? null : match(root, descriptor);
+        if (node == null) {
+            return Code.OK;
+        }
+        return count(node, descriptor, hits, clock.getAsLong()) > node.requestsPerUnit ? Code.OVER_LIMIT : Code.OK;
+    }
+
+    /**
+     * @throws StatusRuntimeException INVALID_ARGUMENT for a request without a domain or descriptors
+     */
+    public RateLimitResponse shouldRateLimit(RateLimitRequest request) {
+        if (request.getDomain().isEmpty()) {
+            throw Status.INVALID_ARGUMENT.withDescription("rate limit domain must not be empty").asRuntimeException();
+        }
+        if (request.getDescriptorsCount() == 0) {
+            throw Status.INVALID_ARGUMENT.withDescription("rate limit descriptor list must not be empty")
+                    .asRuntimeException();
+        }
+        Node root = domains.get(request.getDomain());
+        int hits = Math.max(1, request.getHitsAddend());
+        long now = clock.getAsLong();
+        Code overall = Code.OK;
+        RateLimitResponse.Builder response = RateLimitResponse.newBuilder();
+        for (int i = 0; i < request.getDescriptorsCount(); i++) {
+            RateLimitDescriptor descriptor = request.getDescriptors(i);
+            Node node = root == null ? null : match(root, descriptor);
+            if (node == null) {
+                response.addStatuses(DescriptorStatus.newBuilder().setCode(Code.OK));
+                continue;
+            }
+            long count = count(node, descriptor, hits, now);
+            Code code = count > node.requestsPerUnit ? Code.OVER_LIMIT : Code.OK;
+            if (code == Code.OVER_LIMIT) {
+                overall = Code.OVER_LIMIT;
+            }
+            long untilReset = node.unitMillis - Math.floorMod(now, node.unitMillis);
+            response.addStatuses(DescriptorStatus.newBuilder()
+                    .setCode(code)
+                    .setCurrentLimit(RateLimitResponse.RateLimit.newBuilder()
+                            .setRequestsPerUnit(node.requestsPerUnit)
+                            .setUnit(node.unit))
+                    .setLimitRemaining((int) Math.max(0, node.requestsPerUnit - count))
+                    .setDurationUntilReset(Duration.newBuilder()
+                            .setSeconds(untilReset / 1000)
+                            .setNanos((int) (untilReset % 1000) * 1_000_000)));
+        }
+        return response.setOverallCode(overall).build();
+    }
+
+    /**
+     * The node of the last entry of the descriptor, if it has a rate limit. An entry matches its key and value, or
+     * the key alone.
+     */
+    private static Node match(Node root, RateLimitDescriptor descriptor) {
+        int entries = descriptor.getEntriesCount();
+        Node node = root;
+        for (int i = 0; i < entries; i++) {
+            RateLimitDescriptor.Entry entry = descriptor.getEntries(i);
+            Map<String, Node> byValue = node.children.get(entry.getKey());
+            if (byValue == null) {
+                return null;
+            }
+            Node next = byValue.get(entry.getValue());
+            node = next == null ? byValue.get(null) : next;
+            if (node == null) {
+                return null;
+            }
+        }
+        return entries == 0 || node.unit == null ? null : node;
+    }
+
+    private long count(Node node, RateLimitDescriptor descriptor, int hits, long now) {
+        long key = node.key;
+        for (int depth : node.wildcards) {
+            key = RateLimitCounters.hash(key, descriptor.getEntries(depth).getValue());
+        }
+        return counters.add(key, Math.floorDiv(now, node.unitMillis), hits, node.requestsPerUnit);
+    }
+
+    /**
+     * @return length of the windows of a rate limit unit, case-insensitive; 0 for a unit the service doesn't know
+     */
+    public static long unitMillis(String unit) {
+        switch (unit == null ? "" : unit.toUpperCase(Locale.ROOT)) {
+            case "SECOND":
+                return TimeUnit.SECONDS.toMillis(1);
+            case "MINUTE":
+                return TimeUnit.MINUTES.toMillis(1);
+            case "HOUR":
+                return TimeUnit.HOURS.toMillis(1);
+            case "DAY":
+                return TimeUnit.DAYS.toMillis(1);
+            default:
+                return 0;
+        }
+    }
+
+    @SneakyThrows
+    public synchronized RateLimitServiceEmulator start() {
+        if (server == null) {
+            server = NettyServerBuilder.forAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                    // Decisions don't block, the event loop answers them itself
+                    .directExecutor()
+                    .addService(new Service())
+                    .build()
+                    .start();
+            log.info("Rate limit service listens on {}", server.getListenSockets());
+        }
+        return this;
+    }
+
+    public synchronized int getPort() {
+        if (server == null) {
+            throw new IllegalStateException("Rate limit service isn't started");
+        }
+        return server.getPort();
+    }
+
+    /**
+     * A plaintext channel to the started service, closed by the caller.
+     */
+    public ManagedChannel channel() {
+        return NettyChannelBuilder.forAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), getPort()))
+                .usePlaintext()
+                .build();
+    }
+
+    @Override
+    @SneakyThrows
+    public synchronized void close() {
+        if (server != null) {
+            server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+            server = null;
+        }
+    }
+
+    private class Service extends RateLimitServiceGrpc.RateLimitServiceImplBase {
+
+        @Override
+        public void shouldRateLimit(RateLimitRequest request, StreamObserver<RateLimitResponse> responseObserver) {
+            RateLimitResponse response;
+            try {
+                response = RateLimitServiceEmulator.this.shouldRateLimit(request);
+            } catch (StatusRuntimeException ex) {
+                responseObserver.onError(ex);
+                return;
+            }
+            responseObserver.onNext(response);
+            responseObserver.onCompleted();
+        }
+    }
+
+    /**
+     * A descriptor of a domain: its children by key and value, null standing for any value.
+     */
+    private static class Node {
+        private final String path;
+        /**
+         * Hash of the domain and the keys and values of the path, null for the key-only entries.
+         */
+        private final long key;
+        private final Map<String, Map<String, Node>> children = new HashMap<>();
+        /**
+         * Depths of the entries on the path that are matched by key alone.
+         */
+        private final int[] wildcards;
+        private final int depth;
+        private Unit unit;
+        private int requestsPerUnit;
+        private long unitMillis;
+
+        private Node(String path, long key, int depth, int[] wildcards) {
+            this.path = path;
+            this.key = key;
+            this.depth = depth;
+            this.wildcards = wildcards;
+        }
+
+        private void limit(String source, RateLimiterConfig.RateLimit rateLimit) {
+            unitMillis = unitMillis(rateLimit.getUnit());
+            if (unitMillis == 0) {
+                throw new IllegalStateException(source + ": unknown unit " + rateLimit.getUnit() + " of " + path);
+            }
+            unit = Unit.valueOf(rateLimit.getUnit().toUpperCase(Locale.ROOT));
+            requestsPerUnit = rateLimit.getRequestsPerUnit();
+        }
+    }
+}
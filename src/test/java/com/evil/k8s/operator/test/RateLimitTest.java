@@ -2,7 +2,6 @@ package com.evil.k8s.operator.test;
 
 import com.evil.k8s.operator.test.models.*;
 import io.fabric8.kubernetes.api.model.IntOrString;
-import io.fabric8.kubernetes.api.model.ObjectMeta;
 import io.fabric8.kubernetes.api.model.ServicePort;
 import io.fabric8.kubernetes.api.model.ServiceSpec;
 import lombok.SneakyThrows;
@@ -11,19 +10,19 @@ import me.snowdrop.istio.api.networking.v1alpha3.EnvoyConfigObjectPatch;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static com.evil.k8s.operator.test.models.RateLimiterConfig.Context.*;
-import static com.evil.k8s.operator.test.utils.Utils.YAML_MAPPER;
+import static com.evil.k8s.operator.test.utils.Utils.JSON_MAPPER;
 
 @Slf4j
 class RateLimitTest extends K8sRateLimitAbstractTest {
 
-    private final String namespace = "test-project";
     private final String rateLimiterName = "rate-limiter-test";
-    private K8sRequester requester = new K8sRequester(client, namespace);
 
     /**
      * Тест проверяет работу оператора.
@@ -165,6 +164,100 @@ class RateLimitTest extends K8sRateLimitAbstractTest {
     }
 
 
+    /**
+     * Тест проверяет смысл дескрипторов конфиг мапы, а не только их YAML: файлы загружаются в эмулятор сервиса
+     * рейтлимитов, и каждая вложенная цепочка дескрипторов пропускает requests_per_unit запросов и ограничивает следующий.
+     * Дескриптор без значения ограничивает любое значение ключа.
+     */
+    @Test
+    public void nestedDescriptorsRateLimits() {
+        RateLimiterConfig rateLimiterConfig = TestResources.rateLimiterConfig(namespace, rateLimiterName, rateLimiterName, 3, 3);
+        try (
+                RateLimiterProcessor rateLimiterProcessor = new RateLimiterProcessor(requester);
+                RateLimiterConfigProcessor rateLimiterConfigProcessor = new RateLimiterConfigProcessor(requester);
+        ) {
+            rateLimiterProcessor.create(preparedRateLimiter());
+
+            rateLimiterConfigProcessor
+                    .create(rateLimiterConfig)
+                    .validateConfigMap()
+                    .validateRateLimits()
+                    .edit(rlConfig -> rlConfig
+                            .updateSpec(rateLimiterConfigSpec -> rateLimiterConfigSpec.getDescriptors().get(0)
+                                    .getRateLimiterConfigDescriptors()
+                                    .setValue(null)
+                                    .getRateLimit().setRequestsPerUnit(2)))
+                    .validateConfigMap()
+                    .validateRateLimits();
+        }
+    }
+
+    /**
+     * Тест проверяет, что лимиты следуют за редактированием дескрипторов: после смены ключа, значения и
+     * requests_per_unit эмулятор сервиса рейтлимитов ограничивает запросы по новым дескрипторам.
+     */
+    @Test
+    public void editDescriptorsRateLimits() {
+        RateLimiterConfig rateLimiterConfig = preparedRateLimiterConfig();
+        try (
+                RateLimiterProcessor rateLimiterProcessor = new RateLimiterProcessor(requester);
+                RateLimiterConfigProcessor rateLimiterConfigProcessor = new RateLimiterConfigProcessor(requester);
+        ) {
+            rateLimiterProcessor.create(preparedRateLimiter());
+
+            rateLimiterConfigProcessor
+                    .create(rateLimiterConfig)
+                    .validateConfigMap()
+                    .validateRateLimits()
+                    .edit(rlConfig -> rlConfig
+                            .updateSpec(rateLimiterConfigSpec -> {
+                                rateLimiterConfigSpec.getDescriptors()
+                                        .forEach(d -> d.setKey("new-header-key").setValue("new-header-val"));
+                                rateLimiterConfigSpec.getDescriptors()
+                                        .forEach(d -> d.getRateLimit().setRequestsPerUnit(5));
+                            }))
+                    .validateConfigMap()
+                    .validateRateLimits();
+        }
+    }
+
+    /**
+     * Тест создает несколько рейтлимитер конфигов одной пачкой: создания идут параллельно, ожидание одно на всю пачку.
+     * Конфиг без рейтлимитера отклоняет webhook, это попадает в результат пачки, остальные создаются.
+     */
+    @Test
+    public void createRateLimiterConfigsBatch() {
+        List<RateLimiterConfig> rateLimiterConfigs = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            RateLimiterConfig rateLimiterConfig = preparedRateLimiterConfig();
+            rateLimiterConfig.getMetadata().setName(rateLimiterName + "-batch-" + i);
+            rateLimiterConfig.getSpec().getWorkloadSelector().setLabels(Collections.singletonMap("app", "batch-app-" + i));
+            rateLimiterConfigs.add(rateLimiterConfig);
+        }
+        RateLimiterConfig rejected = preparedRateLimiterConfig();
+        rejected.getMetadata().setName(rateLimiterName + "-batch-rejected");
+        rejected.getSpec().setRateLimiter("missing-rate-limiter");
+        rateLimiterConfigs.add(2, rejected);
+        try (
+                RateLimiterProcessor rateLimiterProcessor = new RateLimiterProcessor(requester);
+                RateLimiterConfigProcessor rateLimiterConfigProcessor = new RateLimiterConfigProcessor(requester);
+        ) {
+            rateLimiterProcessor.create(preparedRateLimiter());
+
+            K8sRequester.BatchResult result = rateLimiterConfigProcessor.createAll(rateLimiterConfigs);
+            log.info("Batch: {}", result);
+            Assertions.assertEquals(5, result.getCreated().size(), () -> "Created " + result);
+            Assertions.assertEquals(Collections.singleton(rejected.getMetadata().getName()), result.getFailed().keySet());
+            Assertions.assertTrue(result.getConvergence().isConverged(), () -> "Not converged " + result);
+
+            rateLimiterConfigProcessor
+                    .validateRatelimiterConfig()
+                    .validateEnvoyFilter()
+                    .validateConfigMap()
+                    .validateRateLimits();
+        }
+    }
+
     /**
      * Тест проверяет, что домены в файлах конфиг мапы уникальны.
      */
@@ -194,6 +287,40 @@ class RateLimitTest extends K8sRateLimitAbstractTest {
         }
     }
 
+    /**
+     * Тест создает рейтлимитер и конфиг с теми же именами во втором namespace и проверяет по индексу доменов, что домен
+     * конфига обслуживают оба рейтлимитера, а после удаления второго конфига — только первый.
+     */
+    @Test
+    public void sharedDomainAcrossNamespaces() {
+        String otherNamespace = namespaces.acquire();
+        try (
+                K8sRequester otherRequester = new K8sRequester(client, otherNamespace, domains);
+                RateLimiterProcessor rateLimiterProcessor = new RateLimiterProcessor(requester);
+                RateLimiterConfigProcessor rateLimiterConfigProcessor = new RateLimiterConfigProcessor(requester);
+                RateLimiterProcessor otherRateLimiterProcessor = new RateLimiterProcessor(otherRequester);
+                RateLimiterConfigProcessor otherRateLimiterConfigProcessor = new RateLimiterConfigProcessor(otherRequester);
+        ) {
+            rateLimiterProcessor.create(preparedRateLimiter());
+            rateLimiterConfigProcessor
+                    .create(preparedRateLimiterConfig())
+                    .validateConfigMap()
+                    .validateDomainRateLimiters(Set.of(namespace + "/" + rateLimiterName));
+
+            otherRateLimiterProcessor.create(TestResources.rateLimiter(client, otherNamespace, rateLimiterName));
+            otherRateLimiterConfigProcessor
+                    .create(TestResources.rateLimiterConfig(otherNamespace, rateLimiterName, rateLimiterName))
+                    .validateConfigMap();
+            rateLimiterConfigProcessor.validateDomainRateLimiters(
+                    Set.of(namespace + "/" + rateLimiterName, otherNamespace + "/" + rateLimiterName));
+
+            otherRateLimiterConfigProcessor.delete();
+            rateLimiterConfigProcessor.validateDomainRateLimiters(Set.of(namespace + "/" + rateLimiterName));
+        } finally {
+            namespaces.release(otherNamespace);
+        }
+    }
+
     /**
      * Тест редактирует RateLimiter конфиг и проверяет, что изменения откатываются к необходимым.
      */
@@ -300,13 +427,13 @@ class RateLimitTest extends K8sRateLimitAbstractTest {
                                 .findFirst()
                                 .orElseThrow(() -> new IllegalStateException("Dont find HTTP_FILTER block from envoy filter"));
 
-                        EnvoyHttpFilterPatch envoyRateLimit = YAML_MAPPER.convertValue(envoyFilterConfigPatchesHttpFilter.getPatch().getValue(), EnvoyHttpFilterPatch.class);
+                        EnvoyHttpFilterPatch envoyRateLimit = JSON_MAPPER.convertValue(envoyFilterConfigPatchesHttpFilter.getPatch().getValue(), EnvoyHttpFilterPatch.class);
                         envoyRateLimit.getConfig().setDomain("another domain");
                         envoyRateLimit.getConfig().setFailure_mode_deny(false);
                         envoyRateLimit.getConfig().getRateLimitService().getGrpcService().getEnvoyGrpc().setCluster_name("edited cluster name");
                         envoyRateLimit.getConfig().getRateLimitService().getGrpcService().setTimeout("5s");
                         envoyRateLimit.setName("new name");
-                        envoyFilterConfigPatchesHttpFilter.getPatch().setValue(YAML_MAPPER.convertValue(envoyRateLimit, Map.class));
+                        envoyFilterConfigPatchesHttpFilter.getPatch().setValue(JSON_MAPPER.convertValue(envoyRateLimit, Map.class));
                         envoyFilter.getSpec().setConfigPatches(Collections.singletonList(envoyFilterConfigPatchesHttpFilter));
                     })
                     .validateEnvoyFilter();
@@ -453,57 +580,10 @@ class RateLimitTest extends K8sRateLimitAbstractTest {
     }
 
     private RateLimiter preparedRateLimiter() {
-        return new RateLimiter(client)
-                .updateMetadata(objectMeta -> {
-                    objectMeta.setName(rateLimiterName);
-                    objectMeta.setNamespace(namespace);
-                })
-                .setSpec(new RateLimiter.RateLimiterSpec(1, "INFO"));
+        return TestResources.rateLimiter(client, namespace, rateLimiterName);
     }
 
     private RateLimiterConfig preparedRateLimiterConfig() {
-        ObjectMeta objectMeta = new ObjectMeta();
-        objectMeta.setName(rateLimiterName);
-        objectMeta.setNamespace(namespace);
-
-        RateLimiterConfig.RateLimit rateLimit = new RateLimiterConfig.RateLimit()
-                .setRequestsPerUnit(1)
-                .setUnit("minute");
-
-        RateLimiterConfig.RateLimiterConfigDescriptors rateLimiterConfigDescriptors =
-                new RateLimiterConfig.RateLimiterConfigDescriptors()
-                        .setKey("header-key")
-                        .setValue("header-val")
-                        .setRateLimit(rateLimit);
-
-        List<RateLimiterConfig.RateLimiterConfigDescriptors> descriptors =
-                Collections.singletonList(rateLimiterConfigDescriptors);
-
-        EnvoyGatewayPatch.RateLimitAction action = new EnvoyGatewayPatch.RateLimitAction()
-                .setRequestHeaders(
-                        new EnvoyGatewayPatch.ActionRequestHeader()
-                                .setDescriptionKey("header-key")
-                                .setHeaderName("header-key"));
-
-        EnvoyGatewayPatch.GatewayRateLimit envoyFilterRateLimit = new EnvoyGatewayPatch.GatewayRateLimit()
-                .setActions(Collections.singletonList(action));
-
-        List<EnvoyGatewayPatch.GatewayRateLimit> rateLimits = Collections.singletonList(envoyFilterRateLimit);
-
-        RateLimiterConfig.RateLimiterConfigSpec rateLimiterConfigSpec =
-                new RateLimiterConfig.RateLimiterConfigSpec()
-                        .setApplyTo(GATEWAY)
-                        .setHost("host-info-srv.org")
-                        .setPort(80)
-                        .setRateLimiter("rate-limiter-test")
-                        .setDescriptors(descriptors)
-                        .setRateLimits(rateLimits)
-                        .setRateLimitRequestTimeout("1s")
-                        .setWorkloadSelector(new WorkloadSelector(Collections.singletonMap("app", "application-app")));
-
-        return RateLimiterConfig.builder()
-                .metadata(objectMeta)
-                .spec(rateLimiterConfigSpec)
-                .build();
+        return TestResources.rateLimiterConfig(namespace, rateLimiterName, rateLimiterName);
     }
 }
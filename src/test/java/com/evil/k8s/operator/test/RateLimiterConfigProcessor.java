@@ -1,26 +1,33 @@
 package com.evil.k8s.operator.test;
 
+import com.evil.k8s.operator.test.ResourceCache.Cached;
 import com.evil.k8s.operator.test.models.*;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.protobuf.TextFormat;
+import io.envoyproxy.envoy.extensions.common.ratelimit.v3.RateLimitDescriptor;
+import io.envoyproxy.envoy.service.ratelimit.v3.RateLimitRequest;
+import io.envoyproxy.envoy.service.ratelimit.v3.RateLimitResponse;
 import io.fabric8.kubernetes.api.model.ConfigMap;
-import io.fabric8.kubernetes.api.model.DoneableConfigMap;
-import io.fabric8.kubernetes.client.KubernetesClientException;
-import io.fabric8.kubernetes.client.dsl.Resource;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
-import me.snowdrop.istio.api.networking.v1alpha3.*;
+import me.snowdrop.istio.api.networking.v1alpha3.EnvoyFilter;
 
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+import static com.evil.k8s.operator.test.ResourceKind.*;
+import static com.evil.k8s.operator.test.StructuralDiff.*;
+import static com.evil.k8s.operator.test.utils.Utils.JSON_MAPPER;
 import static com.evil.k8s.operator.test.utils.Utils.YAML_MAPPER;
 import static org.junit.jupiter.api.Assertions.assertEquals;
-import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -42,58 +49,96 @@ public class RateLimiterConfigProcessor implements AutoCloseable {
         return this;
     }
 
+    /**
+     * Creates the configs as one batch, see {@link K8sRequester#createRateLimiterConfigs}; the last created one
+     * becomes the current config.
+     */
+    public K8sRequester.BatchResult createAll(List<RateLimiterConfig> rateLimiterConfigs) {
+        K8sRequester.BatchResult result = requester.createRateLimiterConfigs(rateLimiterConfigs);
+        Set<String> created = new HashSet<>(result.getCreated());
+        for (RateLimiterConfig rateLimiterConfig : rateLimiterConfigs) {
+            if (created.contains(rateLimiterConfig.getMetadata().getName())) {
+                currentStatus = Status.CREATED;
+                currentRateLimiterConfig = rateLimiterConfig;
+                this.rateLimiterConfigs.add(rateLimiterConfig);
+            }
+        }
+        return result;
+    }
+
     public RateLimiterConfigProcessor edit(Consumer<RateLimiterConfig> function) {
-        function.accept(currentRateLimiterConfig);
-        requester.editRateLimiterConfig(currentRateLimiterConfig);
+        requester.editRateLimiterConfig(currentRateLimiterConfig, function);
         return this;
     }
 
     public RateLimiterConfigProcessor validateRatelimiterConfig() {
-        currentStatus.getInstance().validateRatelimiterConfig(currentRateLimiterConfig, requester);
+        currentStatus.getInstance().validateRatelimiterConfig(currentRateLimiterConfig, requester.snapshot(currentRateLimiterConfig));
         return this;
     }
 
     public RateLimiterConfigProcessor validateConfigMap() {
-        currentStatus.getInstance().validateConfigMap(currentRateLimiterConfig, requester);
+        currentStatus.getInstance().validateConfigMap(currentRateLimiterConfig, requester.snapshot(currentRateLimiterConfig));
         return this;
     }
 
     @SneakyThrows
     public RateLimiterConfigProcessor editConfigMap(Consumer<List<RateLimiterConfig.RateLimiterConfigDescriptors>> rateLimitDescriptorsConsumer) {
         ConfigMap configMap = requester.getConfigMap(currentRateLimiterConfig.getSpec().getRateLimiter()).get();
-        Map<String, String> configData = configMap.getData();
         String yamlFileName = currentRateLimiterConfig.getMetadata().getName() + ".yaml";
-        String configMapDescriptors = configData.get(yamlFileName);
+        String configMapDescriptors = configMap.getData().get(yamlFileName);
 
         ConfigMapRateLimitProperty configMapRateLimitProperty =
                 YAML_MAPPER.readValue(configMapDescriptors, ConfigMapRateLimitProperty.class);
 
         rateLimitDescriptorsConsumer.accept(configMapRateLimitProperty.getDescriptors());
 
-        configData.replace(yamlFileName, YAML_MAPPER.writeValueAsString(configMapRateLimitProperty));
+        String editedDescriptors = YAML_MAPPER.writeValueAsString(configMapRateLimitProperty);
+        requester.editConfigMap(configMap, edited -> edited.getData().replace(yamlFileName, editedDescriptors));
+        return this;
+    }
 
-        configMap.setData(configData);
-        requester.editConfigMap(configMap);
+    /**
+     * Checks what the rate limit service makes of the ConfigMap, see {@link RateLimitServiceEmulator}.
+     */
+    public RateLimiterConfigProcessor validateRateLimits() {
+        currentStatus.getInstance().validateRateLimits(currentRateLimiterConfig, requester.snapshot(currentRateLimiterConfig));
         return this;
     }
 
     public RateLimiterConfigProcessor validateEnvoyFilter() {
-        currentStatus.getInstance().validateEnvoyFilter(currentRateLimiterConfig, requester);
+        currentStatus.getInstance().validateEnvoyFilter(currentRateLimiterConfig, requester.snapshot(currentRateLimiterConfig));
+        return this;
+    }
+
+    /**
+     * Checks the RateLimiters, as namespace/name, whose ConfigMaps carry the domain of the current config according
+     * to the cluster-wide {@link DomainIndex}: configs of the same name under other RateLimiters share it.
+     */
+    public RateLimiterConfigProcessor validateDomainRateLimiters(Set<String> rateLimiters) {
+        DomainIndex domainIndex = requester.getDomainIndex();
+        if (domainIndex == null) {
+            throw new IllegalStateException("Requester of " + requester.getNamespace() + " has no domain index");
+        }
+        String domain = currentRateLimiterConfig.getMetadata().getName();
+        assertEquals(rateLimiters, domainIndex.awaitRateLimiters(domain, rateLimiters, requester.getAwaiter().getTimeout()),
+                "RateLimiters of domain " + domain);
         return this;
     }
 
     public RateLimiterConfigProcessor editEnvoyFilter(Consumer<EnvoyFilter> consumer) {
         Map<String, Object> stringObjectMap = requester.getEnvoyFilter(currentRateLimiterConfig.getMetadata().getName());
-        EnvoyFilter envoyFilter = YAML_MAPPER.convertValue(stringObjectMap, EnvoyFilter.class);
-        consumer.accept(envoyFilter);
-        requester.editEnvoyFilter(envoyFilter);
+        EnvoyFilter envoyFilter = JSON_MAPPER.convertValue(stringObjectMap, EnvoyFilter.class);
+        requester.editEnvoyFilter(envoyFilter, consumer);
         return this;
     }
 
     @Override
     public void close() {
-        rateLimiterConfigs.stream().forEach(this::delete);
+        List<String> names = rateLimiterConfigs.stream()
+                .map(rateLimiterConfig -> rateLimiterConfig.getMetadata().getName())
+                .collect(Collectors.toList());
         rateLimiterConfigs.clear();
+        requester.deleteRateLimiterConfigs(names);
     }
 
     public RateLimiterConfigProcessor delete() {
@@ -127,17 +172,22 @@ public class RateLimiterConfigProcessor implements AutoCloseable {
         private static final RateLimiterConfigValidator undefined = new RateLimiterConfigValidator() {
 
             @Override
-            public void validateRatelimiterConfig(RateLimiterConfig rateLimiterConfig, K8sRequester requester) {
+            public void validateRatelimiterConfig(RateLimiterConfig rateLimiterConfig, ResourceSnapshot snapshot) {
                 throw new UnsupportedOperationException("Illegal operation with status UNDEFINED");
             }
 
             @Override
-            public void validateConfigMap(RateLimiterConfig rateLimiterConfig, K8sRequester requester) {
+            public void validateConfigMap(RateLimiterConfig rateLimiterConfig, ResourceSnapshot snapshot) {
                 throw new UnsupportedOperationException("Illegal operation with status UNDEFINED");
             }
 
             @Override
-            public void validateEnvoyFilter(RateLimiterConfig rateLimiterConfig, K8sRequester requester) {
+            public void validateRateLimits(RateLimiterConfig rateLimiterConfig, ResourceSnapshot snapshot) {
+                throw new UnsupportedOperationException("Illegal operation with status UNDEFINED");
+            }
+
+            @Override
+            public void validateEnvoyFilter(RateLimiterConfig rateLimiterConfig, ResourceSnapshot snapshot) {
                 throw new UnsupportedOperationException("Illegal operation with status UNDEFINED");
             }
         };
@@ -156,171 +206,123 @@ public class RateLimiterConfigProcessor implements AutoCloseable {
     }
 
     interface RateLimiterConfigValidator {
-        void validateRatelimiterConfig(RateLimiterConfig rateLimiterConfig, K8sRequester requester);
+        void validateRatelimiterConfig(RateLimiterConfig rateLimiterConfig, ResourceSnapshot snapshot);
+
+        void validateConfigMap(RateLimiterConfig rateLimiterConfig, ResourceSnapshot snapshot);
 
-        void validateConfigMap(RateLimiterConfig rateLimiterConfig, K8sRequester requester);
+        void validateRateLimits(RateLimiterConfig rateLimiterConfig, ResourceSnapshot snapshot);
 
-        void validateEnvoyFilter(RateLimiterConfig rateLimiterConfig, K8sRequester requester);
+        void validateEnvoyFilter(RateLimiterConfig rateLimiterConfig, ResourceSnapshot snapshot);
 
     }
 
     public static class RateLimiterConfigCreatedValidator implements RateLimiterConfigValidator {
 
         @Override
-        public void validateRatelimiterConfig(RateLimiterConfig rateLimiterConfig, K8sRequester requester) {
-            assertEquals(rateLimiterConfig, requester.getRateLimiterConfig(rateLimiterConfig.getMetadata().getName()));
+        public void validateRatelimiterConfig(RateLimiterConfig rateLimiterConfig, ResourceSnapshot snapshot) {
+            Cached<RateLimiterConfig> cached = snapshot.get(RATE_LIMITER_CONFIG, rateLimiterConfig.getMetadata().getName());
+            assertEquals(rateLimiterConfig, cached.orElseThrow(), cached.toString());
         }
 
-        @SneakyThrows
         @Override
-        public void validateConfigMap(RateLimiterConfig rateLimiterConfig, K8sRequester requester) {
-            Map<String, String> configData = requester.getConfigMap(rateLimiterConfig.getSpec().getRateLimiter()).get().getData();
-
-            String configMapDescriptors = configData
-                    .get(rateLimiterConfig.getMetadata().getName() + ".yaml");
-            assertNotNull(configMapDescriptors, "Config map data is Null for file:" + rateLimiterConfig.getMetadata().getName());
-
-            ConfigMapRateLimitProperty configMapRateLimitProperty =
-                    YAML_MAPPER.readValue(configMapDescriptors, ConfigMapRateLimitProperty.class);
-            assertEquals(configMapRateLimitProperty.getDescriptors(), rateLimiterConfig.getSpec().getDescriptors());
-
-            List<String> domains = configData.values().stream()
-                    .map(descriptors -> {
-                        try {
-                            return YAML_MAPPER.readValue(descriptors, ConfigMapRateLimitProperty.class);
-                        } catch (JsonProcessingException e) {
-                            throw new RuntimeException(e);
-                        }
-                    })
-                    .map(ConfigMapRateLimitProperty::getDomain)
-                    .collect(Collectors.toList());
-            assertEquals(domains.size(), new HashSet<>(domains).size(), "Exists not unique domain!!!");
+        public void validateConfigMap(RateLimiterConfig rateLimiterConfig, ResourceSnapshot snapshot) {
+            String rateLimiterName = rateLimiterConfig.getSpec().getRateLimiter();
+            ConfigMapFiles.Parsed files = snapshot.files(rateLimiterName);
+            Cached<ConfigMap> cached = snapshot.get(CONFIG_MAP, rateLimiterName);
+
+            String file = ExpectedManifests.configMapFile(rateLimiterConfig);
+            ConfigMapFiles.ParsedFile parsed = files.file(file);
+            JsonNode tree = parsed == null ? null : parsed.getTree();
+            assertNull(parsed == null ? null : parsed.getError(), cached + " file " + file + " isn't valid YAML");
+            assertNoDivergences(cached, diff(pointer("/data", file), ExpectedManifests.configMapEntry(rateLimiterConfig), tree));
+            assertEquals(Collections.emptySet(), files.duplicateDomains(), "Exists not unique domain in " + cached);
         }
 
+        /**
+         * Every descriptor with a rate limit lets requests_per_unit hits of its path through and limits the next one.
+         * Descriptors without a value are sent with an arbitrary one. The clock of the service stands still, so the
+         * window can't roll over between the hits.
+         */
         @Override
-        public void validateEnvoyFilter(RateLimiterConfig rateLimiterConfig, K8sRequester requester) {
-            String namespace = rateLimiterConfig.getMetadata().getNamespace();
-            String rateLimiterConfigName = rateLimiterConfig.getMetadata().getName();
-            String rateLimiterName = rateLimiterConfig.getSpec().getRateLimiter();
-
-            Map<String, Object> stringObjectMap = requester.getEnvoyFilter(rateLimiterConfigName);
-            EnvoyFilter envoyFilter = YAML_MAPPER.convertValue(stringObjectMap, EnvoyFilter.class);
-
-            //applyTo: HTTP_FILTER
-            EnvoyConfigObjectPatch envoyFilterConfigPatchesHttpFilter = envoyFilter.getSpec().getConfigPatches().stream()
-                    .filter(i -> i.getApplyTo().name().equals("HTTP_FILTER"))
-                    .findFirst()
-                    .orElseThrow(() -> new IllegalStateException("Dont find HTTP_FILTER block from envoy filter"));
-
-            // check→ context: GATEWAY
-            assertEquals(rateLimiterConfig.getSpec().getApplyTo().toString(),
-                    envoyFilterConfigPatchesHttpFilter.getMatch().getContext().name());
-
-            // match-> listener -> filterChain->filter-> {name, subFilter->name}
-            ListenerObjectTypes listenerMatch = (ListenerObjectTypes) envoyFilterConfigPatchesHttpFilter
-                    .getMatch().getObjectTypes();
-            assertEquals("envoy.http_connection_manager", listenerMatch.getListener()
-                    .getFilterChain().getFilter().getName());
-            assertEquals("envoy.router", listenerMatch.getListener().getFilterChain()
-                    .getFilter().getSubFilter().getName());
-
-            // check patch:
-            //        operation: INSERT_BEFORE
-            assertEquals("INSERT_BEFORE", envoyFilterConfigPatchesHttpFilter.getPatch().getOperation().name());
-
-            // patch -> value -> config -> {domain , ...->cluster_name}
-            EnvoyHttpFilterPatch envoyRateLimit = YAML_MAPPER.convertValue(envoyFilterConfigPatchesHttpFilter.getPatch().getValue(), EnvoyHttpFilterPatch.class);
-            assertEquals("envoy.rate_limit", envoyRateLimit.getName());
-            assertEquals(rateLimiterConfig.getMetadata().getName(), envoyRateLimit.getConfig().getDomain());
-            assertEquals("patched." + rateLimiterName + "." + namespace + ".svc.cluster.local",
-                    envoyRateLimit.getConfig().getRateLimitService().getGrpcService().getEnvoyGrpc().getCluster_name());
-            assertEquals(rateLimiterConfig.getSpec().getRateLimitRequestTimeout(),
-                    envoyRateLimit.getConfig().getRateLimitService().getGrpcService().getTimeout());
-
-
-            //applyTo: CLUSTER
-            EnvoyConfigObjectPatch envoyFilterConfigPatchesCluster = envoyFilter.getSpec().getConfigPatches().stream()
-                    .filter(i -> i.getApplyTo().name().equals("CLUSTER"))
-                    .findFirst()
-                    .orElseThrow(() -> new IllegalStateException("Dont find CLUSTER block from envoy filter"));
-            // match -> cluster -> service
-            ClusterObjectTypes clusterMatch = (ClusterObjectTypes) envoyFilterConfigPatchesCluster.getMatch().getObjectTypes();
-            assertEquals(rateLimiterName + "." + namespace + ".svc.cluster.local",
-                    clusterMatch.getCluster().getService()); // check service
-
-            // check patch:
-            //        operation: MERGE
-            assertEquals("MERGE", envoyFilterConfigPatchesCluster.getPatch().getOperation().name());
-
-            // check patch->value->name
-            EnvoyClusterPatch envoyCluster = YAML_MAPPER.convertValue(envoyFilterConfigPatchesCluster.getPatch().getValue(), EnvoyClusterPatch.class);
-            assertEquals("patched." + rateLimiterName + "." + namespace + ".svc.cluster.local", envoyCluster.getName());
-
-            //VIRTUAL_HOST
-            EnvoyConfigObjectPatch envoyFilterConfigPatchesVirtualHost = envoyFilter.getSpec().getConfigPatches().stream()
-                    .filter(i -> i.getApplyTo().name().equals("VIRTUAL_HOST")).findFirst()
-                    .orElseThrow(() -> new IllegalStateException("Dont find VIRTUAL_HOST block from envoy filter"));
-            assertEquals(rateLimiterConfig.getSpec().getApplyTo().toString(), envoyFilterConfigPatchesVirtualHost
-                    .getMatch().getContext().name()); // check context: GATEWAY
-
-            // check routeConfiguration->vhost->name
-            RouteConfigurationObjectTypes routeConfigurationObjectTypes =
-                    (RouteConfigurationObjectTypes) envoyFilterConfigPatchesVirtualHost.getMatch().getObjectTypes();
-            switch (rateLimiterConfig.getSpec().getApplyTo()) {
-                case GATEWAY:
-                case ANY:
-                case SIDECAR_OUTBOUND:
-                    assertEquals(rateLimiterConfig.getSpec().getHost() + ":" + rateLimiterConfig.getSpec()
-                            .getPort(), routeConfigurationObjectTypes.getRouteConfiguration().getVhost().getName());
-                    break;
-                case SIDECAR_INBOUND:
-                    assertEquals("inbound|http|" + rateLimiterConfig.getSpec()
-                            .getPort(), routeConfigurationObjectTypes.getRouteConfiguration().getVhost().getName());
-                    break;
+        public void validateRateLimits(RateLimiterConfig rateLimiterConfig, ResourceSnapshot snapshot) {
+            Cached<ConfigMap> cached = snapshot.get(CONFIG_MAP, rateLimiterConfig.getSpec().getRateLimiter());
+            RateLimitServiceEmulator rateLimitService = new RateLimitServiceEmulator(() -> 0L).load(cached);
+            String domain = rateLimiterConfig.getMetadata().getName();
+            for (RateLimiterConfig.RateLimiterConfigDescriptors descriptor : rateLimiterConfig.getSpec().getDescriptors()) {
+                RateLimitDescriptor.Builder path = RateLimitDescriptor.newBuilder();
+                for (RateLimiterConfig.RateLimiterConfigDescriptors level = descriptor; level != null;
+                     level = level.getRateLimiterConfigDescriptors()) {
+                    path.addEntriesBuilder()
+                            .setKey(level.getKey())
+                            .setValue(level.getValue() == null ? "any-value" : level.getValue());
+                    if (level.getRateLimit() != null) {
+                        assertLimits(rateLimitService, cached, RateLimitRequest.newBuilder()
+                                .setDomain(domain)
+                                .addDescriptors(path)
+                                .build(), level.getRateLimit().getRequestsPerUnit());
+                    }
+                }
             }
+        }
 
-            // check operation: MERGE
-            assertEquals("MERGE", envoyFilterConfigPatchesVirtualHost.getPatch().getOperation().name());
-
-            // patch -> value -> rate_limits->actions->request_headers->{descriptor_key, header_name}
-            EnvoyGatewayPatch envoyClusterPatch = YAML_MAPPER.convertValue(envoyFilterConfigPatchesVirtualHost.getPatch().getValue(), EnvoyGatewayPatch.class);
-
-            assertEquals(rateLimiterConfig.getSpec().getRateLimits(), envoyClusterPatch.getRateLimits());
-            assertEquals(rateLimiterConfig.getSpec().getWorkloadSelector().getLabels(), envoyFilter.getSpec().getWorkloadSelector().getLabels());
+        private static void assertLimits(RateLimitServiceEmulator rateLimitService, Cached<ConfigMap> cached,
+                                         RateLimitRequest request, int requestsPerUnit) {
+            String descriptor = TextFormat.shortDebugString(request);
+            for (int hit = 1; hit <= requestsPerUnit + 1; hit++) {
+                RateLimitResponse response = rateLimitService.shouldRateLimit(request);
+                RateLimitResponse.DescriptorStatus status = response.getStatuses(0);
+                assertEquals(requestsPerUnit, status.getCurrentLimit().getRequestsPerUnit(),
+                        cached + " has another limit of " + descriptor);
+                assertEquals(hit > requestsPerUnit ? RateLimitResponse.Code.OVER_LIMIT : RateLimitResponse.Code.OK,
+                        response.getOverallCode(), cached + " decides wrong on hit " + hit + " of " + descriptor);
+            }
         }
 
+        @Override
+        public void validateEnvoyFilter(RateLimiterConfig rateLimiterConfig, ResourceSnapshot snapshot) {
+            Cached<EnvoyFilter> cached = snapshot.get(ENVOY_FILTER, rateLimiterConfig.getMetadata().getName());
+            log.info("Check {}", cached);
+            assertNoDivergences(cached, diff(ExpectedManifests.envoyFilter(rateLimiterConfig),
+                    JSON_MAPPER.valueToTree(cached.orElseThrow())));
+        }
     }
 
     public static class RateLimiterConfigRemovedValidator implements RateLimiterConfigValidator {
 
         @Override
-        public void validateRatelimiterConfig(RateLimiterConfig rateLimiterConfig, K8sRequester requester) {
-            try {
-                requester.getRateLimiterConfig(rateLimiterConfig.getMetadata().getName());
-                throw new IllegalStateException("RatelimiterConfig already exist!");
-            } catch (KubernetesClientException exception) {
-                log.info("RateLimiterConfig not exist");
-            }
+        public void validateRatelimiterConfig(RateLimiterConfig rateLimiterConfig, ResourceSnapshot snapshot) {
+            assertAbsent(snapshot.get(RATE_LIMITER_CONFIG, rateLimiterConfig.getMetadata().getName()));
         }
 
         @Override
-        public void validateConfigMap(RateLimiterConfig rateLimiterConfig, K8sRequester requester) {
-            Resource<ConfigMap, DoneableConfigMap> configMap = requester.getConfigMap(rateLimiterConfig.getSpec().getRateLimiter());
-            if (configMap.get() != null) {
-                throw new IllegalStateException("Ratelimiter ConfigMap already exist!");
+        public void validateConfigMap(RateLimiterConfig rateLimiterConfig, ResourceSnapshot snapshot) {
+            assertAbsent(snapshot.get(CONFIG_MAP, rateLimiterConfig.getSpec().getRateLimiter()));
+        }
+
+        /**
+         * The RateLimiter may outlive the config, then the service must not know its domain.
+         */
+        @Override
+        public void validateRateLimits(RateLimiterConfig rateLimiterConfig, ResourceSnapshot snapshot) {
+            Cached<ConfigMap> cached = snapshot.get(CONFIG_MAP, rateLimiterConfig.getSpec().getRateLimiter());
+            if (cached.exists()) {
+                Set<String> domains = new RateLimitServiceEmulator().load(cached).domains();
+                if (domains.contains(rateLimiterConfig.getMetadata().getName())) {
+                    throw new IllegalStateException(cached + " still has domain " + rateLimiterConfig.getMetadata().getName());
+                }
             }
-            log.info("RateLimiter ConfigMap not exist");
         }
 
         @Override
-        public void validateEnvoyFilter(RateLimiterConfig rateLimiterConfig, K8sRequester requester) {
-            String rateLimiterConfigName = rateLimiterConfig.getMetadata().getName();
-            try {
-                requester.getEnvoyFilter(rateLimiterConfigName);
-                throw new IllegalStateException("EnvoyFilter already exist!");
-            } catch (KubernetesClientException ex) {
-                log.info("EnvoyFilter not exist");
+        public void validateEnvoyFilter(RateLimiterConfig rateLimiterConfig, ResourceSnapshot snapshot) {
+            assertAbsent(snapshot.get(ENVOY_FILTER, rateLimiterConfig.getMetadata().getName()));
+        }
+
+        private static void assertAbsent(Cached<?> cached) {
+            if (cached.exists()) {
+                throw new IllegalStateException(cached + " already exist!");
             }
+            log.info("{} not exist", cached.getKind() + "/" + cached.getName());
         }
     }
 }
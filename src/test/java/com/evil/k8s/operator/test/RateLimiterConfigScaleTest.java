@@ -0,0 +1,118 @@
+package com.evil.k8s.operator.test;
+
+import com.evil.k8s.operator.test.ResourceCache.Cached;
+import com.evil.k8s.operator.test.models.RateLimiterConfig;
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.client.utils.Serialization;
+import lombok.SneakyThrows;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static com.evil.k8s.operator.test.ResourceKind.CONFIG_MAP;
+import static com.evil.k8s.operator.test.ResourceKind.ENVOY_FILTER;
+
+/**
+ * Нагрузочный сценарий: тысячи RateLimiterConfig на один RateLimiter.
+ * Конфиги создаются ступенями, после каждой ступени фиксируются время реконсиляции конфигов ступени,
+ * размер общего ConfigMap относительно лимита в 1 MiB и число EnvoyFilter.
+ * Рост останавливается на первой ступени, где время или размер выходят за пределы, — это и есть точка отказа.
+ */
+@Slf4j
+@Tag("benchmark")
+class RateLimiterConfigScaleTest extends K8sRateLimitAbstractTest {
+
+    public static final String MAX_CONFIGS_PROPERTY = "k8s.scale.configs";
+    public static final String STEP_PROPERTY = "k8s.scale.step";
+    public static final String LATENCY_LIMIT_PROPERTY = "k8s.scale.latency.limit.ms";
+
+    /**
+     * Kubernetes rejects a ConfigMap whose data exceeds 1 MiB, well below the etcd request limit.
+     */
+    private static final long CONFIG_MAP_LIMIT_BYTES = 1024 * 1024;
+
+    private final String rateLimiterName = "rate-limiter-scale";
+
+    @Test
+    public void thousandsOfRateLimiterConfigs() {
+        int maxConfigs = Integer.getInteger(MAX_CONFIGS_PROPERTY, 5_000);
+        int step = Integer.getInteger(STEP_PROPERTY, 500);
+        Duration latencyLimit = Duration.ofMillis(Long.getLong(LATENCY_LIMIT_PROPERTY, 5_000));
+
+        List<ScaleStep> steps = new ArrayList<>();
+        ScaleStep breakdown = null;
+        try (
+                RateLimiterProcessor rateLimiterProcessor = new RateLimiterProcessor(requester);
+                RateLimiterConfigProcessor rateLimiterConfigProcessor = new RateLimiterConfigProcessor(requester);
+        ) {
+            rateLimiterProcessor.create(TestResources.rateLimiter(client, namespace, rateLimiterName));
+
+            int created = 0;
+            while (created < maxConfigs && breakdown == null) {
+                LatencyStats stats = new LatencyStats();
+                int stepEnd = Math.min(created + step, maxConfigs);
+                for (; created < stepEnd; created++) {
+                    RateLimiterConfig rateLimiterConfig = TestResources.rateLimiterConfig(namespace,
+                            rateLimiterName + "-config-" + created, rateLimiterName);
+                    rateLimiterConfig.getSpec().getWorkloadSelector()
+                            .setLabels(Collections.singletonMap("app", "scale-app-" + created));
+                    rateLimiterConfigProcessor.create(rateLimiterConfig);
+                    stats.record("create RateLimiterConfig", requester.getLastConvergence());
+                }
+                ScaleStep scaleStep = measure(created, stats.summary("create RateLimiterConfig"));
+                steps.add(scaleStep);
+                log.info("{}", scaleStep);
+                if (scaleStep.brokeDown(latencyLimit)) {
+                    breakdown = scaleStep;
+                }
+            }
+        }
+
+        StringBuilder report = new StringBuilder(String.format("%7s %8s %8s %8s %8s %10s %6s %6s%n",
+                "configs", "timeouts", "p50 ms", "p99 ms", "max ms", "cm bytes", "cm %", "filters"));
+        steps.forEach(scaleStep -> report.append(scaleStep).append(System.lineSeparator()));
+        report.append(breakdown == null
+                ? "No breakdown up to " + maxConfigs + " configs"
+                : "Breakdown at " + breakdown.getConfigs() + " configs");
+        log.info("RateLimiterConfig scale, latency limit {} ms:{}{}",
+                latencyLimit.toMillis(), System.lineSeparator(), report);
+    }
+
+    @SneakyThrows
+    private ScaleStep measure(int configs, LatencyStats.Summary latency) {
+        Cached<ConfigMap> configMap = requester.read(CONFIG_MAP, rateLimiterName);
+        long configMapBytes = configMap.exists()
+                ? Serialization.jsonMapper().writeValueAsBytes(configMap.getResource()).length
+                : 0;
+        int envoyFilters = requester.list(ENVOY_FILTER, Collections.emptyMap()).getItems().size();
+        return new ScaleStep(configs, latency, configMapBytes, envoyFilters);
+    }
+
+    @Value
+    static class ScaleStep {
+        int configs;
+        LatencyStats.Summary latency;
+        long configMapBytes;
+        int envoyFilters;
+
+        boolean brokeDown(Duration latencyLimit) {
+            return latency.timeouts() > 0
+                    || latency.percentile(99).compareTo(latencyLimit) > 0
+                    || configMapBytes >= CONFIG_MAP_LIMIT_BYTES
+                    || envoyFilters < configs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%7d %8d %8d %8d %8d %10d %5.1f%% %6d", configs, latency.timeouts(),
+                    latency.percentile(50).toMillis(), latency.percentile(99).toMillis(), latency.max().toMillis(),
+                    configMapBytes, 100.0 * configMapBytes / CONFIG_MAP_LIMIT_BYTES, envoyFilters);
+        }
+    }
+}
@@ -1,11 +1,11 @@
 package com.evil.k8s.operator.test;
 
-import com.evil.k8s.operator.test.models.ConfigMapRateLimitProperty;
+import com.evil.k8s.operator.test.ResourceCache.Cached;
+import com.evil.k8s.operator.test.StructuralDiff.Divergence;
 import com.evil.k8s.operator.test.models.RateLimiter;
-import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import io.fabric8.kubernetes.api.model.*;
 import io.fabric8.kubernetes.api.model.apps.Deployment;
-import io.fabric8.kubernetes.client.KubernetesClientException;
 import lombok.RequiredArgsConstructor;
 import lombok.SneakyThrows;
 import lombok.extern.slf4j.Slf4j;
@@ -14,10 +14,11 @@ import java.util.*;
 import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
+import static com.evil.k8s.operator.test.ResourceKind.*;
+import static com.evil.k8s.operator.test.StructuralDiff.assertNoDivergences;
+import static com.evil.k8s.operator.test.StructuralDiff.diff;
 import static com.evil.k8s.operator.test.utils.Utils.*;
-import static java.lang.Boolean.FALSE;
-import static java.lang.Boolean.TRUE;
-import static org.junit.jupiter.api.Assertions.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
 
 @Slf4j
 @RequiredArgsConstructor
@@ -39,24 +40,23 @@ public class RateLimiterProcessor implements AutoCloseable {
     }
 
     public RateLimiterProcessor validateRateLimiter() {
-        currentStatus.getInstance().validateRateLimiter(currentRateLimiter, requester);
+        currentStatus.getInstance().validateRateLimiter(currentRateLimiter, requester.snapshot(currentRateLimiter));
         return this;
     }
 
     public RateLimiterProcessor validateRateLimiterDeployment() {
-        currentStatus.getInstance().validateRateLimiterDeployment(currentRateLimiter, requester);
+        currentStatus.getInstance().validateRateLimiterDeployment(currentRateLimiter, requester.snapshot(currentRateLimiter));
         return this;
     }
 
     public RateLimiterProcessor editRateLimiterDeployment(Consumer<Deployment> deploymentConsumer) {
         Deployment deployment = requester.getDeployment(currentRateLimiter.getMetadata().getName());
-        deploymentConsumer.accept(deployment);
-        requester.editDeployment(deployment);
+        requester.editDeployment(deployment, deploymentConsumer);
         return this;
     }
 
     public RateLimiterProcessor validateRedisDeployment() {
-        currentStatus.getInstance().validateRedisDeployment(currentRateLimiter, requester);
+        currentStatus.getInstance().validateRedisDeployment(currentRateLimiter, requester.snapshot(currentRateLimiter));
         return this;
     }
 
@@ -68,24 +68,22 @@ public class RateLimiterProcessor implements AutoCloseable {
 
     public RateLimiterProcessor editRedisDeployment(Consumer<Deployment> deploymentConsumer) {
         Deployment deployment = requester.getDeployment(generateRedisName(currentRateLimiter.getMetadata().getName()));
-        deploymentConsumer.accept(deployment);
-        requester.editDeployment(deployment);
+        requester.editDeployment(deployment, deploymentConsumer);
         return this;
     }
 
     public RateLimiterProcessor edit(Consumer<RateLimiter> function) {
-        function.accept(currentRateLimiter);
-        requester.editRateLimiter(currentRateLimiter);
+        requester.editRateLimiter(currentRateLimiter, function);
         return this;
     }
 
     public RateLimiterProcessor validateConfigMap() {
-        currentStatus.getInstance().validateConfigMap(currentRateLimiter, requester);
+        currentStatus.getInstance().validateConfigMap(currentRateLimiter, requester.snapshot(currentRateLimiter));
         return this;
     }
 
     public RateLimiterProcessor validateServices() {
-        currentStatus.getInstance().validateServices(currentRateLimiter, requester);
+        currentStatus.getInstance().validateServices(currentRateLimiter, requester.snapshot(currentRateLimiter));
         return this;
     }
 
@@ -127,15 +125,17 @@ public class RateLimiterProcessor implements AutoCloseable {
 
     private RateLimiterProcessor editService(Consumer<Service> сonsumer, String name) {
         Service service = requester.getServiceByName(name);
-        сonsumer.accept(service);
-        requester.editService(service);
+        requester.editService(service, сonsumer);
         return this;
     }
 
     @Override
     public void close() {
-        rateLimiters.forEach(this::delete);
+        List<String> names = rateLimiters.stream()
+                .map(rateLimiter -> rateLimiter.getMetadata().getName())
+                .collect(Collectors.toList());
         rateLimiters.clear();
+        requester.deleteRateLimiters(names);
     }
 
     public RateLimiterProcessor delete() {
@@ -162,27 +162,27 @@ public class RateLimiterProcessor implements AutoCloseable {
         private static final RateLimiterValidator removed = new RateLimiterRemovedvalidator();
         private static final RateLimiterValidator undefined = new RateLimiterValidator() {
             @Override
-            public void validateRateLimiter(RateLimiter rateLimiter, K8sRequester requester) {
+            public void validateRateLimiter(RateLimiter rateLimiter, ResourceSnapshot snapshot) {
                 throw new UnsupportedOperationException("Illegal operation with status UNDEFINED");
             }
 
             @Override
-            public void validateRateLimiterDeployment(RateLimiter rateLimiter, K8sRequester requester) {
+            public void validateRateLimiterDeployment(RateLimiter rateLimiter, ResourceSnapshot snapshot) {
                 throw new UnsupportedOperationException("Illegal operation with status UNDEFINED");
             }
 
             @Override
-            public void validateRedisDeployment(RateLimiter rateLimiter, K8sRequester requester) {
+            public void validateRedisDeployment(RateLimiter rateLimiter, ResourceSnapshot snapshot) {
                 throw new UnsupportedOperationException("Illegal operation with status UNDEFINED");
             }
 
             @Override
-            public void validateConfigMap(RateLimiter rateLimiter, K8sRequester requester) {
+            public void validateConfigMap(RateLimiter rateLimiter, ResourceSnapshot snapshot) {
                 throw new UnsupportedOperationException("Illegal operation with status UNDEFINED");
             }
 
             @Override
-            public void validateServices(RateLimiter rateLimiter, K8sRequester requester) {
+            public void validateServices(RateLimiter rateLimiter, ResourceSnapshot snapshot) {
                 throw new UnsupportedOperationException("Illegal operation with status UNDEFINED");
             }
         };
@@ -201,211 +201,101 @@ public class RateLimiterProcessor implements AutoCloseable {
     }
 
     interface RateLimiterValidator {
-        void validateRateLimiter(RateLimiter rateLimiter, K8sRequester requester);
+        void validateRateLimiter(RateLimiter rateLimiter, ResourceSnapshot snapshot);
 
-        void validateRateLimiterDeployment(RateLimiter rateLimiter, K8sRequester requester);
+        void validateRateLimiterDeployment(RateLimiter rateLimiter, ResourceSnapshot snapshot);
 
-        void validateRedisDeployment(RateLimiter rateLimiter, K8sRequester requester);
+        void validateRedisDeployment(RateLimiter rateLimiter, ResourceSnapshot snapshot);
 
-        void validateConfigMap(RateLimiter rateLimiter, K8sRequester requester);
+        void validateConfigMap(RateLimiter rateLimiter, ResourceSnapshot snapshot);
 
-        void validateServices(RateLimiter rateLimiter, K8sRequester requester);
+        void validateServices(RateLimiter rateLimiter, ResourceSnapshot snapshot);
     }
 
     public static class RateLimiterCreatedValidator implements RateLimiterValidator {
 
         @Override
-        public void validateRateLimiter(RateLimiter rateLimiter, K8sRequester requester) {
-            RateLimiter rateLimiterFromK8s = requester.getRateLimiter(rateLimiter.getMetadata().getName());
-            assertEquals(rateLimiter, rateLimiterFromK8s);
+        public void validateRateLimiter(RateLimiter rateLimiter, ResourceSnapshot snapshot) {
+            Cached<RateLimiter> cached = snapshot.get(RATE_LIMITER, rateLimiter.getMetadata().getName());
+            assertEquals(rateLimiter, cached.orElseThrow(), cached.toString());
         }
 
         @Override
-        public void validateRateLimiterDeployment(RateLimiter rateLimiter, K8sRequester requester) {
-            String name = rateLimiter.getMetadata().getName();
-            Deployment deployment = requester.getDeployment(name);
-            assertEquals(rateLimiter.getSpec().getSize(), deployment.getSpec().getReplicas());
-
-            // Check environment
-            List<Container> containers = deployment.getSpec().getTemplate().getSpec().getContainers();
-            Map<String, String> collect = containers.stream()
+        public void validateRateLimiterDeployment(RateLimiter rateLimiter, ResourceSnapshot snapshot) {
+            Cached<Deployment> cached = snapshot.get(DEPLOYMENT, rateLimiter.getMetadata().getName());
+            Deployment deployment = cached.orElseThrow();
+            Map<String, String> environment = deployment.getSpec().getTemplate().getSpec().getContainers().stream()
                     .map(Container::getEnv)
                     .flatMap(Collection::stream)
-                    .collect(Collectors.toMap(EnvVar::getName, EnvVar::getValue));
-
-            log.info("Check RateLimiter deployment environment level");
-            assertEquals(rateLimiter.getSpec().getLogLevel(), collect.get("LOG_LEVEL"));
-            assertEquals(TCP, collect.get("REDIS_SOCKET_TYPE"));
-            assertEquals(generateRedisName(name) + ":6379", collect.get("REDIS_URL"));
-            assertEquals(TRUE.toString(), collect.get("RUNTIME_IGNOREDOTFILES"));
-            assertEquals(FALSE.toString(), collect.get("RUNTIME_WATCH_ROOT"));
-
-            String runtimeRoot = collect.get("RUNTIME_ROOT");
-            String runtimeSubdirectory = collect.get("RUNTIME_SUBDIRECTORY");
-            String mountPath = containers.stream().findFirst()
-                    .orElseThrow(() -> new IllegalStateException("Non config map"))
-                    .getVolumeMounts()
-                    .stream().findFirst()
-                    .orElseThrow(() -> new IllegalStateException("Non config map"))
-                    .getMountPath();
-            assertNotNull(runtimeRoot);
-            assertNotNull(runtimeSubdirectory);
-
-            assertEquals(generateMountPath(runtimeRoot, runtimeSubdirectory), mountPath);
-
-            //Check port
-            assertTrue(containers.stream()
-                    .map(Container::getPorts)
-                    .flatMap(Collection::stream)
-                    .anyMatch(containerPort -> Objects.equals(8081, containerPort.getContainerPort())));
+                    .filter(envVar -> envVar.getValue() != null)
+                    .collect(Collectors.toMap(EnvVar::getName, EnvVar::getValue, (first, second) -> first));
+            JsonNode expected = ExpectedManifests.rateLimiterDeployment(rateLimiter,
+                    environment.get("RUNTIME_ROOT"), environment.get("RUNTIME_SUBDIRECTORY"));
+            assertNoDivergences(cached, diff(expected, JSON_MAPPER.valueToTree(deployment)));
         }
 
         @Override
-        public void validateRedisDeployment(RateLimiter rateLimiter, K8sRequester requester) {
-            String redisName = generateRedisName(rateLimiter.getMetadata().getName());
-            Deployment redisDeployment = requester.getDeployment(redisName);
-
-            assertEquals(1, redisDeployment.getSpec().getReplicas());
-
-            PodTemplateSpec template = redisDeployment.getSpec().getTemplate();
-
-            template.getMetadata().getLabels().entrySet()
-                    .stream()
-                    .filter(stringStringEntry -> stringStringEntry.getKey().equals("app") && stringStringEntry.getValue().equals(redisName))
-                    .findAny()
-                    .orElseThrow(() -> new IllegalStateException("Not exist label selector"));
-
-            template.getSpec()
-                    .getContainers()
-                    .stream()
-                    .map(Container::getPorts)
-                    .flatMap(Collection::stream)
-                    .filter(containerPort -> containerPort.getContainerPort().equals(6379))
-                    .findAny()
-                    .orElseThrow(() -> new IllegalStateException("Illegal port from redis deployment"));
+        public void validateRedisDeployment(RateLimiter rateLimiter, ResourceSnapshot snapshot) {
+            Cached<Deployment> cached = snapshot.get(DEPLOYMENT, generateRedisName(rateLimiter.getMetadata().getName()));
+            assertNoDivergences(cached, diff(ExpectedManifests.redisDeployment(rateLimiter),
+                    JSON_MAPPER.valueToTree(cached.orElseThrow())));
         }
 
         @Override
-        public void validateConfigMap(RateLimiter rateLimiter, K8sRequester requester) {
+        public void validateConfigMap(RateLimiter rateLimiter, ResourceSnapshot snapshot) {
             String name = rateLimiter.getMetadata().getName();
-            Map<String, String> data = requester.getConfigMap(name).get().getData();
-            if (data != null) {
-                List<ConfigMapRateLimitProperty> rateLimitersConfig = data.values()
-                        .stream()
-                        .map(s -> {
-                            try {
-                                return YAML_MAPPER.readValue(s, ConfigMapRateLimitProperty.class);
-                            } catch (JsonProcessingException e) {
-                                throw new RuntimeException(e);
-                            }
-                        })
-                        .collect(Collectors.toList());
-
-                Collection<String> allDomains = rateLimitersConfig.stream()
-                        .map(ConfigMapRateLimitProperty::getDomain)
-                        .collect(Collectors.toList());
-
-                Collection<String> distinctDomain = rateLimitersConfig.stream()
-                        .map(ConfigMapRateLimitProperty::getDomain)
-                        .collect(Collectors.toSet());
-
-                assertEquals(distinctDomain.size(), allDomains.size(), "Exist not unique domains");
-            }
+            ConfigMapFiles.Parsed files = snapshot.files(name);
+            Cached<ConfigMap> cached = snapshot.get(CONFIG_MAP, name);
+            assertEquals(Collections.emptyMap(), files.unparsable(), "Exist unparsable files in " + cached);
+            assertEquals(Collections.emptySet(), files.duplicateDomains(), "Exist not unique domains in " + cached);
         }
 
         @Override
-        public void validateServices(RateLimiter rateLimiter, K8sRequester requester) {
-            String name = rateLimiter.getMetadata().getName();
-
-            Service service = requester.getServiceByName(name);
-            ServiceSpec rateLimiterServiceSpec = service.getSpec();
-
-            //Check port block
-            rateLimiterServiceSpec.getPorts()
-                    .forEach(servicePort -> {
-                        assertEquals("grpc-" + name, servicePort.getName());
-                        assertEquals("TCP", servicePort.getProtocol());
-                        assertEquals(8081, servicePort.getPort());
-                        assertEquals(8081, servicePort.getTargetPort().getIntVal());
-                    });
-            //Check selector block
-            rateLimiterServiceSpec.getSelector().entrySet().stream()
-                    .filter(stringStringEntry -> stringStringEntry.getKey().equals("app") && stringStringEntry.getValue().equals(name))
-                    .findAny().orElseThrow(() -> new IllegalStateException("Not exist lable from ratelimiter service selector"));
-
-            Service redisService = requester.getServiceByName(generateRedisName(name));
-            ServiceSpec redisRateLimiterServiceSpec = redisService.getSpec();
-
-            //Check port block
-            redisRateLimiterServiceSpec.getPorts().forEach(servicePort -> {
-                assertEquals(generateRedisName(name), servicePort.getName());
-                assertEquals(TCP, servicePort.getProtocol());
-                assertEquals(redisPort, servicePort.getPort());
-                assertEquals(redisPort, servicePort.getTargetPort().getIntVal());
-            });
-            //Check selector block
-            redisRateLimiterServiceSpec.getSelector().entrySet().stream()
-                    .filter(stringStringEntry -> stringStringEntry.getKey().equals("app") && stringStringEntry.getValue().equals(generateRedisName(name)))
-                    .findAny()
-                    .orElseThrow(() -> new IllegalStateException("Not exist lable from ratelimiter service selector"));
+        public void validateServices(RateLimiter rateLimiter, ResourceSnapshot snapshot) {
+            Cached<Service> service = snapshot.get(SERVICE, rateLimiter.getMetadata().getName());
+            Cached<Service> redisService = snapshot.get(SERVICE, generateRedisName(rateLimiter.getMetadata().getName()));
+            Map<Cached<Service>, List<Divergence>> divergences = new LinkedHashMap<>();
+            divergences.put(service, diff(ExpectedManifests.rateLimiterService(rateLimiter),
+                    JSON_MAPPER.valueToTree(service.orElseThrow())));
+            divergences.put(redisService, diff(ExpectedManifests.redisService(rateLimiter),
+                    JSON_MAPPER.valueToTree(redisService.orElseThrow())));
+            assertNoDivergences(divergences);
         }
     }
 
     public static class RateLimiterRemovedvalidator implements RateLimiterValidator {
 
         @Override
-        public void validateRateLimiter(RateLimiter rateLimiter, K8sRequester requester) {
-            try {
-                requester.getRateLimiter(rateLimiter.getMetadata().getName());
-                throw new IllegalStateException("Ratelimiter already exist");
-            } catch (KubernetesClientException ex) {
-                log.info("Ratelimiter not exist.");
-            }
+        public void validateRateLimiter(RateLimiter rateLimiter, ResourceSnapshot snapshot) {
+            assertAbsent(snapshot.get(RATE_LIMITER, rateLimiter.getMetadata().getName()));
         }
 
         @Override
-        public void validateRateLimiterDeployment(RateLimiter rateLimiter, K8sRequester requester) {
-            try {
-                requester.getDeployment(rateLimiter.getMetadata().getName());
-                throw new IllegalStateException("Ratelimiter Deployment already exist");
-            } catch (IllegalStateException ex) {
-                log.info("Ratelimiter Deployment not exist.");
-            }
+        public void validateRateLimiterDeployment(RateLimiter rateLimiter, ResourceSnapshot snapshot) {
+            assertAbsent(snapshot.get(DEPLOYMENT, rateLimiter.getMetadata().getName()));
         }
 
         @Override
-        public void validateRedisDeployment(RateLimiter rateLimiter, K8sRequester requester) {
-            try {
-                requester.getDeployment(generateRedisName(rateLimiter.getMetadata().getName()));
-                throw new IllegalStateException("Ratelimiter Redis Deployment already exist");
-            } catch (IllegalStateException ex) {
-                log.info("Ratelimiter Redis Deployment not exist.");
-            }
+        public void validateRedisDeployment(RateLimiter rateLimiter, ResourceSnapshot snapshot) {
+            assertAbsent(snapshot.get(DEPLOYMENT, generateRedisName(rateLimiter.getMetadata().getName())));
         }
 
         @Override
-        public void validateConfigMap(RateLimiter rateLimiter, K8sRequester requester) {
-            if (requester.getConfigMap(rateLimiter.getMetadata().getName()).get() == null) {
-                log.info("Ratelimiter configMap not exist.");
-            } else {
-                throw new IllegalStateException("Ratelimiter configMap already exist");
-            }
+        public void validateConfigMap(RateLimiter rateLimiter, ResourceSnapshot snapshot) {
+            assertAbsent(snapshot.get(CONFIG_MAP, rateLimiter.getMetadata().getName()));
         }
 
         @Override
-        public void validateServices(RateLimiter rateLimiter, K8sRequester requester) {
-            try {
-                requester.getServiceByName(rateLimiter.getMetadata().getName());
-                throw new IllegalStateException("Ratelimiter already exist");
-            } catch (IllegalStateException ex) {
-                log.info("Ratelimiter service not exist.");
-            }
-            try {
-                requester.getServiceByName(generateRedisName(rateLimiter.getMetadata().getName()));
-                throw new IllegalStateException("Ratelimiter already exist");
-            } catch (IllegalStateException ex) {
-                log.info("RatelimiterRedis not exist.");
+        public void validateServices(RateLimiter rateLimiter, ResourceSnapshot snapshot) {
+            assertAbsent(snapshot.get(SERVICE, rateLimiter.getMetadata().getName()));
+            assertAbsent(snapshot.get(SERVICE, generateRedisName(rateLimiter.getMetadata().getName())));
+        }
+
+        private static void assertAbsent(Cached<?> cached) {
+            if (cached.exists()) {
+                throw new IllegalStateException(cached + " already exist");
             }
+            log.info("{} not exist.", cached.getKind() + "/" + cached.getName());
         }
     }
 }
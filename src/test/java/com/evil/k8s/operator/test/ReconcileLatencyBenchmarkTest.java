@@ -0,0 +1,64 @@
+package com.evil.k8s.operator.test;
+
+import com.evil.k8s.operator.test.models.RateLimiter;
+import com.evil.k8s.operator.test.models.RateLimiterConfig;
+import lombok.extern.slf4j.Slf4j;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+
+import java.util.Collections;
+
+/**
+ * Замер времени реконсиляции оператора: от записи в API до появления ожидаемого дочернего ресурса.
+ * Запускается профилем {@code benchmark}, результат — перцентили по каждому типу операции.
+ */
+@Slf4j
+@Tag("benchmark")
+class ReconcileLatencyBenchmarkTest extends K8sRateLimitAbstractTest {
+
+    public static final String ITERATIONS_PROPERTY = "k8s.benchmark.iterations";
+    public static final String WARMUP_PROPERTY = "k8s.benchmark.warmup";
+
+    private final String rateLimiterName = "rate-limiter-benchmark";
+
+    @Test
+    public void reconcileLatency() {
+        int warmup = Integer.getInteger(WARMUP_PROPERTY, 2);
+        int iterations = Integer.getInteger(ITERATIONS_PROPERTY, 20);
+        LatencyStats stats = new LatencyStats();
+        for (int i = 0; i < warmup + iterations; i++) {
+            iteration(i, i < warmup ? new LatencyStats() : stats);
+        }
+        log.info("Reconcile latency, {} iterations after {} warmup:{}{}",
+                iterations, warmup, System.lineSeparator(), stats.report());
+    }
+
+    private void iteration(int iteration, LatencyStats stats) {
+        RateLimiter rateLimiter = TestResources.rateLimiter(client, namespace, rateLimiterName);
+        RateLimiterConfig rateLimiterConfig = TestResources.rateLimiterConfig(namespace, rateLimiterName, rateLimiterName);
+        try (
+                RateLimiterProcessor rateLimiterProcessor = new RateLimiterProcessor(requester);
+                RateLimiterConfigProcessor rateLimiterConfigProcessor = new RateLimiterConfigProcessor(requester);
+        ) {
+            // Deployment with the spec replicas and log level
+            rateLimiterProcessor.create(rateLimiter);
+            stats.record("create RateLimiter", requester.getLastConvergence());
+            rateLimiterProcessor.edit($rateLimiter -> $rateLimiter
+                    .updateSpec(rateLimiterSpec -> rateLimiterSpec.setSize(2)));
+            stats.record("edit RateLimiter", requester.getLastConvergence());
+
+            // EnvoyFilter and the <name>.yaml entry of the ConfigMap
+            rateLimiterConfigProcessor.create(rateLimiterConfig);
+            stats.record("create RateLimiterConfig", requester.getLastConvergence());
+            rateLimiterConfigProcessor.edit(rlConfig -> rlConfig
+                    .updateSpec(rateLimiterConfigSpec -> rateLimiterConfigSpec.getWorkloadSelector()
+                            .setLabels(Collections.singletonMap("app", "benchmark-" + iteration))));
+            stats.record("edit RateLimiterConfig", requester.getLastConvergence());
+
+            rateLimiterConfigProcessor.delete();
+            stats.record("delete RateLimiterConfig", requester.getLastConvergence());
+            rateLimiterProcessor.delete();
+            stats.record("delete RateLimiter", requester.getLastConvergence());
+        }
+    }
+}
@@ -0,0 +1,356 @@
+package com.evil.k8s.operator.test;
+
+import io.micrometer.core.instrument.*;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.Buffer;
+import okio.BufferedSource;
+import okio.ForwardingSource;
+import okio.Okio;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Where the time of a run goes: Micrometer meters of the {@link K8sRequester} calls, of the requests they send to
+ * the API server and of the waits they make on purpose, in an in-memory registry shared by the requesters of a run.
+ * <ul>
+ * <li>{@value #CALLS}: every requester call by operation, resource kind and outcome, waits included;</li>
+ * <li>{@value #REQUESTS}: every HTTP request by resource (the plural of the URL), verb and status, with the
+ * request and response body sizes in {@value #REQUEST_BYTES} and {@value #RESPONSE_BYTES} and the failed ones in
+ * {@value #ERRORS};</li>
+ * <li>{@value #WAITS}: convergence, cache catch-up, teardown, conflict backoff and throttle waits.</li>
+ * </ul>
+ * The timers keep a percentile histogram over the whole run. {@link #dump()} logs the summary at the end of it.
+ */
+@Slf4j
+public class RequesterMetrics {
+
+    public static final String ENABLED_PROPERTY = "k8s.metrics.enabled";
+
+    public static final String CALLS = "k8s.requester.calls";
+    public static final String WAITS = "k8s.requester.waits";
+    public static final String REQUESTS = "k8s.api.requests";
+    public static final String REQUEST_BYTES = "k8s.api.request.bytes";
+    public static final String RESPONSE_BYTES = "k8s.api.response.bytes";
+    public static final String ERRORS = "k8s.api.errors";
+
+    /**
+     * Long enough for the percentiles of a run not to decay before its summary.
+     */
+    private static final Duration RUN = Duration.ofDays(1);
+
+    private static final RequesterMetrics SHARED = new RequesterMetrics(isEnabled()
+            ? new SimpleMeterRegistry()
+            : new CompositeMeterRegistry());
+
+    @Getter
+    private final MeterRegistry registry;
+
+    public RequesterMetrics(MeterRegistry registry) {
+        this.registry = registry;
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"));
+    }
+
+    /**
+     * The metrics of the run, a no-op registry when disabled with {@link #ENABLED_PROPERTY}.
+     */
+    public static RequesterMetrics shared() {
+        return SHARED;
+    }
+
+    /**
+     * Starts timing a requester call; the call counts as failed unless {@link Call#succeeded()} is reached.
+     */
+    public Call call(String operation, ResourceKind<?> kind) {
+        return new Call(operation, kind.getName());
+    }
+
+    public void waited(String wait, Duration duration) {
+        timer(WAITS, Tags.of("wait", wait)).record(duration);
+    }
+
+    public void waited(String wait, long nanos) {
+        timer(WAITS, Tags.of("wait", wait)).record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public Interceptor interceptor() {
+        return new Interceptor();
+    }
+
+    /**
+     * Logs the summary of the meters and starts the next run from zero.
+     */
+    public void dump() {
+        if (!registry.getMeters().isEmpty()) {
+            log.info("Requester metrics:{}{}", System.lineSeparator(), summary());
+        }
+        registry.clear();
+    }
+
+    public String summary() {
+        StringBuilder summary = new StringBuilder();
+        section(summary, "Requester calls", CALLS, "operation", "kind", "outcome");
+        section(summary, "API requests", REQUESTS, "resource", "verb", "status");
+        section(summary, "Intentional waits", WAITS, "wait");
+        List<Meter> bytes = meters(REQUEST_BYTES);
+        if (!bytes.isEmpty()) {
+            summary.append(String.format("%nAPI bytes%n%-44s %8s %12s %12s%n", "resource verb", "requests",
+                    "sent", "received"));
+            bytes.stream()
+                    .map(DistributionSummary.class::cast)
+                    .sorted(Comparator.comparingDouble((DistributionSummary sent) -> sent.totalAmount()
+                            + received(sent)).reversed())
+                    .forEach(sent -> summary.append(String.format("%-44s %8d %12.0f %12.0f%n",
+                            tags(sent, "resource", "verb"), sent.count(), sent.totalAmount(), received(sent))));
+        }
+        List<Meter> errors = meters(ERRORS);
+        if (!errors.isEmpty()) {
+            summary.append(String.format("%nAPI errors%n"));
+            errors.forEach(error -> summary.append(String.format("%-44s %8.0f%n",
+                    tags(error, "resource", "verb", "status"), ((Counter) error).count())));
+        }
+        return summary.toString();
+    }
+
+    /**
+     * Timers of the name, the longest in total first.
+     */
+    private void section(StringBuilder summary, String title, String name, String... tagKeys) {
+        List<Meter> timers = meters(name);
+        if (timers.isEmpty()) {
+            return;
+        }
+        summary.append(String.format("%n%s%n%-44s %7s %10s %8s %8s %8s %8s%n", title, String.join(" ", tagKeys),
+                "count", "total ms", "mean ms", "p50 ms", "p95 ms", "max ms"));
+        timers.stream()
+                .map(Timer.class::cast)
+                .sorted(Comparator.comparingDouble((Timer timer) -> timer.totalTime(TimeUnit.MILLISECONDS)).reversed())
+                .forEach(timer -> {
+                    HistogramSnapshot snapshot = timer.takeSnapshot();
+                    summary.append(String.format("%-44s %7d %10.0f %8.1f %8.1f %8.1f %8.1f%n", tags(timer, tagKeys),
+                            snapshot.count(), snapshot.total(TimeUnit.MILLISECONDS),
+                            snapshot.mean(TimeUnit.MILLISECONDS), percentile(snapshot, 0.5),
+                            percentile(snapshot, 0.95), snapshot.max(TimeUnit.MILLISECONDS)));
+                });
+    }
+
+    private double received(DistributionSummary sent) {
+        DistributionSummary received = registry.find(RESPONSE_BYTES).tags(sent.getId().getTags()).summary();
+        return received == null ? 0 : received.totalAmount();
+    }
+
+    private List<Meter> meters(String name) {
+        return registry.getMeters().stream()
+                .filter(meter -> meter.getId().getName().equals(name))
+                .collect(Collectors.toList());
+    }
+
+    private static String tags(Meter meter, String... keys) {
+        StringBuilder tags = new StringBuilder();
+        for (String key : keys) {
+            tags.append(tags.length() == 0 ? "" : " ").append(meter.getId().getTag(key));
+        }
+        return tags.toString();
+    }
+
+    private static double percentile(HistogramSnapshot snapshot, double percentile) {
+        for (ValueAtPercentile value : snapshot.percentileValues()) {
+            if (value.percentile() == percentile) {
+                return value.value(TimeUnit.MILLISECONDS);
+            }
+        }
+        return Double.NaN;
+    }
+
+    private Timer timer(String name, Tags tags) {
+        return Timer.builder(name)
+                .tags(tags)
+                .publishPercentiles(0.5, 0.95)
+                .publishPercentileHistogram()
+                .distributionStatisticExpiry(RUN)
+                .distributionStatisticBufferLength(1)
+                .register(registry);
+    }
+
+    private DistributionSummary bytes(String name, Tags tags) {
+        return DistributionSummary.builder(name).baseUnit("bytes").tags(tags).register(registry);
+    }
+
+    /**
+     * One requester call, closed by its try-with-resources.
+     */
+    public class Call implements AutoCloseable {
+        private final String operation;
+        private final String kind;
+        private final long start = System.nanoTime();
+        private boolean succeeded;
+
+        private Call(String operation, String kind) {
+            this.operation = operation;
+            this.kind = kind;
+        }
+
+        public void succeeded() {
+            succeeded = true;
+        }
+
+        public <T> T succeeded(T result) {
+            succeeded = true;
+            return result;
+        }
+
+        @Override
+        public void close() {
+            timer(CALLS, Tags.of("operation", operation, "kind", kind, "outcome", succeeded ? "success" : "error"))
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Times the requests of a client and measures their bodies. A response body of unknown length is counted as
+     * it is read, up to where the caller stops reading it.
+     */
+    public class Interceptor implements okhttp3.Interceptor {
+
+        private Interceptor() {
+        }
+
+        @Override
+        public Response intercept(Chain chain) throws IOException {
+            Request request = chain.request();
+            Tags tags = tags(request);
+            if (request.body() != null && request.body().contentLength() >= 0) {
+                bytes(REQUEST_BYTES, tags).record(request.body().contentLength());
+            } else {
+                bytes(REQUEST_BYTES, tags).record(0);
+            }
+            long start = System.nanoTime();
+            Response response;
+            try {
+                response = chain.proceed(request);
+            } catch (IOException ex) {
+                timer(REQUESTS, tags.and("status", "IO")).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                registry.counter(ERRORS, tags.and("status", "IO")).increment();
+                throw ex;
+            }
+            String status = String.valueOf(response.code());
+            timer(REQUESTS, tags.and("status", status)).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            if (response.code() >= 400) {
+                registry.counter(ERRORS, tags.and("status", status)).increment();
+            }
+            ResponseBody body = response.body();
+            DistributionSummary received = bytes(RESPONSE_BYTES, tags);
+            // The web socket of a watch takes over the connection of a 101, its response must stay as it is
+            if (body == null || response.code() == 101) {
+                received.record(0);
+                return response;
+            }
+            if (body.contentLength() >= 0) {
+                received.record(body.contentLength());
+                return response;
+            }
+            return response.newBuilder().body(new CountingBody(body, received)).build();
+        }
+
+        /**
+         * Resource and verb of a request to {@code /api/v1/...} or {@code /apis/<group>/<version>/...}.
+         */
+        private Tags tags(Request request) {
+            HttpUrl url = request.url();
+            List<String> segments = url.pathSegments();
+            int prefix = !segments.isEmpty() && "apis".equals(segments.get(0)) ? 3 : 2;
+            List<String> path = segments.size() > prefix ? segments.subList(prefix, segments.size()) : List.of();
+            if (path.size() >= 3 && "namespaces".equals(path.get(0))) {
+                path = path.subList(2, path.size());
+            }
+            String resource = path.isEmpty() ? "other" : path.get(0);
+            boolean named = path.size() > 1;
+            String subresource = path.size() > 2 ? " " + path.get(2) : "";
+            String verb;
+            switch (request.method()) {
+                case "GET":
+                    verb = "true".equals(url.queryParameter("watch")) ? "watch" : named ? "get" : "list";
+                    break;
+                case "POST":
+                    verb = "create";
+                    break;
+                case "PUT":
+                    verb = "update";
+                    break;
+                case "PATCH":
+                    verb = "patch";
+                    break;
+                case "DELETE":
+                    verb = named ? "delete" : "deletecollection";
+                    break;
+                default:
+                    verb = request.method().toLowerCase();
+            }
+            return Tags.of("resource", resource, "verb", verb + subresource);
+        }
+    }
+
+    private static class CountingBody extends ResponseBody {
+        private final ResponseBody body;
+        private final BufferedSource source;
+
+        private CountingBody(ResponseBody body, DistributionSummary received) {
+            this.body = body;
+            AtomicBoolean recorded = new AtomicBoolean();
+            long[] read = {0};
+            this.source = Okio.buffer(new ForwardingSource(body.source()) {
+                @Override
+                public long read(Buffer sink, long byteCount) throws IOException {
+                    long bytes = super.read(sink, byteCount);
+                    if (bytes >= 0) {
+                        read[0] += bytes;
+                    } else if (recorded.compareAndSet(false, true)) {
+                        received.record(read[0]);
+                    }
+                    return bytes;
+                }
+
+                @Override
+                public void close() throws IOException {
+                    if (recorded.compareAndSet(false, true)) {
+                        received.record(read[0]);
+                    }
+                    super.close();
+                }
+            });
+        }
+
+        @Override
+        public MediaType contentType() {
+            return body.contentType();
+        }
+
+        @Override
+        public long contentLength() {
+            return -1;
+        }
+
+        @Override
+        public BufferedSource source() {
+            return source;
+        }
+    }
+}
@@ -0,0 +1,302 @@
+package com.evil.k8s.operator.test;
+
+import com.evil.k8s.operator.test.ConvergenceAwaiter.ObservedVersion;
+import com.evil.k8s.operator.test.ResourceKind.Listed;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import lombok.SneakyThrows;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static com.evil.k8s.operator.test.ResourceKind.*;
+
+/**
+ * Watch-backed local store of the child resources in one namespace: Deployments, Services, ConfigMaps and EnvoyFilters.
+ * <p>
+ * Every kind is listed once and then watched from the resourceVersion of the list, so the store only moves
+ * forward; it is listed again only when its watch is closed for good, e.g. on 410 Gone. Reads are O(1) lookups
+ * in the store and never hit the API server. Every read returns the resourceVersion of the object and of the last
+ * list or event the store has applied, and {@link #awaitObserved} lets a caller block until the store has caught
+ * up with a version seen elsewhere, e.g. by a {@link ConvergenceAwaiter} watch.
+ * <p>
+ * The cache owns its watches, unlike fabric8 4.10 informers that stop without closing theirs, so {@link #close}
+ * releases the threads and request slots they hold in the shared HTTP client.
+ */
+@Slf4j
+public class ResourceCache implements AutoCloseable {
+
+    public static final String ENABLED_PROPERTY = "k8s.cache.enabled";
+
+    private static final int VERSION_HISTORY = 32;
+    private static final String DELETED = "";
+
+    private final KubernetesClient client;
+    private final String namespace;
+    private final Map<ResourceKind<?>, Store<?>> stores = new LinkedHashMap<>();
+    /**
+     * Recent resourceVersions delivered per key, {@link #DELETED} marks a deletion.
+     */
+    private final Map<String, Deque<String>> versions = new HashMap<>();
+    private final ExecutorService relists;
+    /**
+     * Number of events delivered so far, see {@link #awaitDelivery}.
+     */
+    private long deliveries;
+    private volatile boolean closed;
+
+    public ResourceCache(KubernetesClient client, String namespace) {
+        this.client = client;
+        this.namespace = namespace;
+        this.relists = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "resource-cache-" + namespace);
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (ResourceKind<?> kind : Arrays.asList(DEPLOYMENT, SERVICE, CONFIG_MAP, ENVOY_FILTER)) {
+            stores.put(kind, new Store<>(kind));
+        }
+    }
+
+    public static boolean isEnabled() {
+        return Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, Boolean.TRUE.toString()));
+    }
+
+    /**
+     * Lists every kind and opens its watch; the store is complete when this returns.
+     */
+    public ResourceCache start() {
+        stores.values().forEach(Store::sync);
+        log.info("Resource cache for namespace [{}] synced", namespace);
+        return this;
+    }
+
+    public boolean contains(ResourceKind<?> kind) {
+        return stores.containsKey(kind);
+    }
+
+    public synchronized <T> Cached<T> get(ResourceKind<T> kind, String name) {
+        Store<T> store = store(kind);
+        T resource = store.resources.get(name);
+        return new Cached<>(kind, name, resource,
+                resource == null ? null : kind.metadata(resource).getResourceVersion(), store.syncResourceVersion);
+    }
+
+    /**
+     * Copies the current store content of the kind, keeping the resources that carry all the labels.
+     */
+    public synchronized <T> Listed<T> list(ResourceKind<T> kind, Map<String, String> labels) {
+        Store<T> store = store(kind);
+        List<T> items = store.resources.values().stream()
+                .filter(resource -> Optional.ofNullable(kind.metadata(resource).getLabels())
+                        .orElse(Collections.emptyMap())
+                        .entrySet().containsAll(labels.entrySet()))
+                .collect(Collectors.toList());
+        return new Listed<>(items, store.syncResourceVersion);
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> Store<T> store(ResourceKind<T> kind) {
+        Store<T> store = (Store<T>) stores.get(kind);
+        if (store == null) {
+            throw new IllegalArgumentException("Kind " + kind + " isn't cached");
+        }
+        return store;
+    }
+
+    /**
+     * Blocks until the store has delivered the observed state: the resourceVersion, or the deletion when it is null.
+     */
+    @SneakyThrows
+    public synchronized void awaitObserved(ObservedVersion observed, Duration timeout) {
+        if (!contains(observed.getKind())) {
+            return;
+        }
+        String expected = observed.getResourceVersion() == null ? DELETED : observed.getResourceVersion();
+        String key = observed.getKind() + "/" + key(observed.getName());
+        long deadline = System.nanoTime() + timeout.toNanos();
+        while (!isObserved(observed, key, expected)) {
+            long left = deadline - System.nanoTime();
+            if (left <= 0) {
+                log.warn("Resource cache hasn't observed {}/{} at resourceVersion {} in {}",
+                        observed.getKind(), observed.getName(), observed.getResourceVersion(), timeout);
+                return;
+            }
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+    }
+
+    public synchronized long getDeliveries() {
+        return deliveries;
+    }
+
+    /**
+     * Blocks until an event is delivered after the {@code after}-th one or the timeout passes.
+     */
+    @SneakyThrows
+    public synchronized void awaitDelivery(long after, Duration timeout) {
+        long deadline = System.nanoTime() + timeout.toNanos();
+        long left;
+        while (deliveries == after && (left = deadline - System.nanoTime()) > 0) {
+            TimeUnit.NANOSECONDS.timedWait(this, left);
+        }
+    }
+
+    private boolean isObserved(ObservedVersion observed, String key, String expected) {
+        if (expected.equals(DELETED)) {
+            // An earlier deletion of the same name doesn't count, only the current absence does
+            return !get(observed.getKind(), observed.getName()).exists();
+        }
+        return versions.getOrDefault(key, new ArrayDeque<>()).contains(expected);
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        stores.values().forEach(Store::closeWatch);
+        relists.shutdownNow();
+    }
+
+    /**
+     * The resources of one kind and the watch that keeps them current.
+     */
+    private class Store<T> {
+        private final ResourceKind<T> kind;
+        private final Map<String, T> resources = new HashMap<>();
+        private String syncResourceVersion;
+        private Watch watch;
+
+        Store(ResourceKind<T> kind) {
+            this.kind = kind;
+        }
+
+        /**
+         * Replaces the content with a fresh list, delivering what changed since the last one, and watches from it.
+         */
+        void sync() {
+            Listed<T> listed = kind.list(client, namespace, Collections.emptyMap());
+            synchronized (ResourceCache.this) {
+                Map<String, T> previous = new HashMap<>(resources);
+                resources.clear();
+                for (T resource : listed.getItems()) {
+                    String name = kind.metadata(resource).getName();
+                    resources.put(name, resource);
+                    T known = previous.remove(name);
+                    String resourceVersion = kind.metadata(resource).getResourceVersion();
+                    if (known == null || !resourceVersion.equals(kind.metadata(known).getResourceVersion())) {
+                        delivered(kind, resource, resourceVersion);
+                    }
+                }
+                previous.values().forEach(resource -> delivered(kind, resource, DELETED));
+                syncResourceVersion = listed.getResourceVersion();
+            }
+            Watch opened = kind.watch(client, namespace, null, listed.getResourceVersion(), new Watcher<T>() {
+                @Override
+                public void eventReceived(Action action, T resource) {
+                    if (action != Action.ERROR) {
+                        applied(action, resource);
+                    }
+                }
+
+                @Override
+                public void onClose(KubernetesClientException cause) {
+                    if (cause == null || closed) {
+                        return;
+                    }
+                    log.warn("Resource cache watch of {} in [{}] closed, listing it again: {}",
+                            kind, namespace, cause.getMessage());
+                    relists.execute(Store.this::sync);
+                }
+            });
+            synchronized (ResourceCache.this) {
+                watch = opened;
+            }
+            if (closed) {
+                opened.close();
+            }
+        }
+
+        private void applied(Watcher.Action action, T resource) {
+            String name = kind.metadata(resource).getName();
+            String resourceVersion = kind.metadata(resource).getResourceVersion();
+            synchronized (ResourceCache.this) {
+                if (action == Watcher.Action.DELETED) {
+                    resources.remove(name);
+                    delivered(kind, resource, DELETED);
+                } else {
+                    resources.put(name, resource);
+                    delivered(kind, resource, resourceVersion);
+                }
+                syncResourceVersion = resourceVersion;
+            }
+        }
+
+        void closeWatch() {
+            Watch opened;
+            synchronized (ResourceCache.this) {
+                opened = watch;
+                watch = null;
+            }
+            if (opened != null) {
+                opened.close();
+            }
+        }
+    }
+
+    private synchronized <T> void delivered(ResourceKind<T> kind, T resource, String resourceVersion) {
+        Deque<String> history = versions.computeIfAbsent(kind + "/" + key(kind.metadata(resource).getName()),
+                key -> new ArrayDeque<>());
+        if (history.size() == VERSION_HISTORY) {
+            history.removeFirst();
+        }
+        history.addLast(resourceVersion);
+        deliveries++;
+        notifyAll();
+    }
+
+    private String key(String name) {
+        return namespace + "/" + name;
+    }
+
+    /**
+     * A cached read together with the versions it reflects.
+     */
+    @Value
+    public static class Cached<T> {
+        ResourceKind<T> kind;
+        String name;
+        /**
+         * Null when the resource is absent from the cache.
+         */
+        T resource;
+        String resourceVersion;
+        /**
+         * resourceVersion of the last list or watch event the store has applied.
+         */
+        String syncResourceVersion;
+
+        public boolean exists() {
+            return resource != null;
+        }
+
+        public T orElseThrow() {
+            if (resource == null) {
+                throw new IllegalStateException("Not exist " + kind + ": " + name);
+            }
+            return resource;
+        }
+
+        @Override
+        public String toString() {
+            return kind + "/" + name + "@" + (exists() ? resourceVersion : "absent") + " (synced at " + syncResourceVersion + ")";
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package com.evil.k8s.operator.test;
+
+import com.evil.k8s.operator.test.models.RateLimiter;
+import com.evil.k8s.operator.test.models.RateLimiterConfig;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.KubernetesResourceList;
+import io.fabric8.kubernetes.api.model.ListOptions;
+import io.fabric8.kubernetes.api.model.ListOptionsBuilder;
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.api.model.Service;
+import io.fabric8.kubernetes.api.model.apps.Deployment;
+import io.fabric8.kubernetes.client.HttpClientAware;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.KubernetesClientException;
+import io.fabric8.kubernetes.client.Watch;
+import io.fabric8.kubernetes.client.Watcher;
+import io.fabric8.kubernetes.client.dsl.MixedOperation;
+import io.fabric8.kubernetes.client.dsl.Resource;
+import io.fabric8.kubernetes.client.dsl.base.CustomResourceDefinitionContext;
+import io.fabric8.kubernetes.client.dsl.base.OperationSupport;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import lombok.Value;
+import me.snowdrop.istio.api.networking.v1alpha3.EnvoyFilter;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import static com.evil.k8s.operator.test.CustomResourcesConstants.*;
+import static com.evil.k8s.operator.test.utils.Utils.JSON_MAPPER;
+
+/**
+ * Kinds of resources the tests observe: the custom resources and the children the operator generates from them.
+ * Hides the difference between typed fabric8 operations and raw custom resource operations.
+ */
+public abstract class ResourceKind<T> {
+
+    public static final ResourceKind<Deployment> DEPLOYMENT =
+            new Typed<>("Deployment", "apis/apps/v1", "deployments", client -> client.apps().deployments(),
+                    Deployment::getMetadata);
+    public static final ResourceKind<Service> SERVICE =
+            new Typed<>("Service", "api/v1", "services", KubernetesClient::services, Service::getMetadata);
+    public static final ResourceKind<ConfigMap> CONFIG_MAP =
+            new Typed<>("ConfigMap", "api/v1", "configmaps", KubernetesClient::configMaps, ConfigMap::getMetadata);
+    public static final ResourceKind<EnvoyFilter> ENVOY_FILTER =
+            new Custom<>("EnvoyFilter", envoyFilterContext, EnvoyFilter.class, EnvoyFilter::getMetadata);
+    public static final ResourceKind<RateLimiter> RATE_LIMITER =
+            new Custom<>("RateLimiter", rateLimitCrdContext, RateLimiter.class, RateLimiter::getMetadata);
+    public static final ResourceKind<RateLimiterConfig> RATE_LIMITER_CONFIG =
+            new Custom<>("RateLimiterConfig", rateLimitConfigCrdContext, RateLimiterConfig.class, RateLimiterConfig::getMetadata);
+
+    private static final MediaType MERGE_PATCH = MediaType.get("application/merge-patch+json");
+
+    @Getter
+    private final String name;
+    private final Function<T, ObjectMeta> metadata;
+
+    private ResourceKind(String name, Function<T, ObjectMeta> metadata) {
+        this.name = name;
+        this.metadata = metadata;
+    }
+
+    public ObjectMeta metadata(T resource) {
+        return metadata.apply(resource);
+    }
+
+    /**
+     * @return current state of the resource or null if it doesn't exist
+     */
+    public abstract T get(KubernetesClient client, String namespace, String resourceName);
+
+    /**
+     * Lists the resources of the kind in the namespace that carry all the labels, in a single request.
+     */
+    public abstract Listed<T> list(KubernetesClient client, String namespace, Map<String, String> labels);
+
+    /**
+     * Watches a single resource by name, or every resource of the namespace when the name is null, or of the cluster
+     * when the namespace is null too. Events are delivered starting after {@code resourceVersion}, or from the
+     * current state when it is null.
+     */
+    public abstract Watch watch(KubernetesClient client, String namespace, String resourceName,
+                                String resourceVersion, Watcher<T> watcher);
+
+    /**
+     * Sends a JSON merge patch, see {@link MergePatch}. The fabric8 version in use can only patch a typed resource
+     * with a JSON patch it computes against a fresh read, and a custom resource not at all, so the request goes
+     * through the HTTP client of the fabric8 client, with its authentication.
+     *
+     * @return the patched resource as the API server answered
+     * @throws KubernetesClientException with the status of the answer when the API server refuses the patch
+     */
+    @SneakyThrows
+    public JsonNode patch(KubernetesClient client, String namespace, String resourceName, byte[] mergePatch) {
+        String masterUrl = client.getMasterUrl().toString();
+        Request request = new Request.Builder()
+                .url(masterUrl + (masterUrl.endsWith("/") ? "" : "/") + path(namespace, resourceName))
+                .patch(RequestBody.create(MERGE_PATCH, mergePatch))
+                .build();
+        try (Response response = ((HttpClientAware) client).getHttpClient().newCall(request).execute()) {
+            if (!response.isSuccessful()) {
+                throw OperationSupport.requestFailure(request, OperationSupport.createStatus(response));
+            }
+            return JSON_MAPPER.readTree(response.body().byteStream());
+        }
+    }
+
+    /**
+     * Path of a resource relative to the master URL.
+     */
+    protected abstract String path(String namespace, String resourceName);
+
+    @Override
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * Result of a list together with the resourceVersion it was served at.
+     */
+    @Value
+    public static class Listed<T> {
+        List<T> items;
+        String resourceVersion;
+    }
+
+    private static class Typed<T> extends ResourceKind<T> {
+        private final String apiPath;
+        private final String plural;
+        private final Function<KubernetesClient, MixedOperation<T, ?, ?, ? extends Resource<T, ?>>> operation;
+
+        private Typed(String name, String apiPath, String plural,
+                      Function<KubernetesClient, MixedOperation<T, ?, ?, ? extends Resource<T, ?>>> operation,
+                      Function<T, ObjectMeta> metadata) {
+            super(name, metadata);
+            this.apiPath = apiPath;
+            this.plural = plural;
+            this.operation = operation;
+        }
+
+        @Override
+        protected String path(String namespace, String resourceName) {
+            return apiPath + "/namespaces/" + namespace + "/" + plural + "/" + resourceName;
+        }
+
+        @Override
+        public T get(KubernetesClient client, String namespace, String resourceName) {
+            return operation.apply(client).inNamespace(namespace).withName(resourceName).get();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public Listed<T> list(KubernetesClient client, String namespace, Map<String, String> labels) {
+            KubernetesResourceList<?> list = (KubernetesResourceList<?>) operation.apply(client)
+                    .inNamespace(namespace).withLabels(labels).list();
+            return new Listed<>((List<T>) list.getItems(), list.getMetadata().getResourceVersion());
+        }
+
+        @Override
+        public Watch watch(KubernetesClient client, String namespace, String resourceName,
+                           String resourceVersion, Watcher<T> watcher) {
+            ListOptions options = new ListOptionsBuilder().withResourceVersion(resourceVersion).build();
+            if (namespace == null) {
+                return operation.apply(client).inAnyNamespace().watch(options, watcher);
+            }
+            if (resourceName == null) {
+                return operation.apply(client).inNamespace(namespace).watch(options, watcher);
+            }
+            return operation.apply(client).inNamespace(namespace).withName(resourceName).watch(options, watcher);
+        }
+    }
+
+    private static class Custom<T> extends ResourceKind<T> {
+        private final CustomResourceDefinitionContext context;
+        private final ObjectReader reader;
+
+        private Custom(String name, CustomResourceDefinitionContext context, Class<T> type,
+                       Function<T, ObjectMeta> metadata) {
+            super(name, metadata);
+            this.context = context;
+            this.reader = JSON_MAPPER.readerFor(type).without(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+        }
+
+        @Override
+        protected String path(String namespace, String resourceName) {
+            return "apis/" + context.getGroup() + "/" + context.getVersion() + "/namespaces/" + namespace + "/"
+                    + context.getPlural() + "/" + resourceName;
+        }
+
+        @Override
+        @SneakyThrows
+        public T get(KubernetesClient client, String namespace, String resourceName) {
+            try {
+                JsonNode resource = JSON_MAPPER.valueToTree(client.customResource(context).get(namespace, resourceName));
+                return reader.readValue(resource);
+            } catch (KubernetesClientException ex) {
+                if (ex.getCode() == 404) {
+                    return null;
+                }
+                throw ex;
+            }
+        }
+
+        @Override
+        @SneakyThrows
+        public Listed<T> list(KubernetesClient client, String namespace, Map<String, String> labels) {
+            JsonNode list = JSON_MAPPER.valueToTree(client.customResource(context).list(namespace, labels));
+            List<T> items = new ArrayList<>();
+            for (JsonNode item : list.path("items")) {
+                items.add(reader.readValue(item));
+            }
+            return new Listed<>(items, list.path("metadata").path("resourceVersion").asText(null));
+        }
+
+        @Override
+        @SneakyThrows
+        public Watch watch(KubernetesClient client, String namespace, String resourceName,
+                           String resourceVersion, Watcher<T> watcher) {
+            return client.customResource(context).watch(namespace, resourceName, null, resourceVersion,
+                    new Watcher<String>() {
+                        @Override
+                        @SneakyThrows
+                        public void eventReceived(Action action, String resource) {
+                            watcher.eventReceived(action, reader.readValue(resource));
+                        }
+
+                        @Override
+                        public void onClose(KubernetesClientException cause) {
+                            watcher.onClose(cause);
+                        }
+                    });
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package com.evil.k8s.operator.test;
+
+import com.evil.k8s.operator.test.ResourceCache.Cached;
+import com.evil.k8s.operator.test.ResourceKind.Listed;
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.api.model.OwnerReference;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static com.evil.k8s.operator.test.ResourceKind.CONFIG_MAP;
+
+/**
+ * Point-in-time view of a custom resource and the resources it owns.
+ * <p>
+ * The owner is read once and every child kind is listed once, so the whole graph costs one request per kind
+ * and all validators of a step check the same state. Children are resolved through their ownerReferences;
+ * a child without any ownerReference is matched by the name the operator gives it.
+ */
+@Slf4j
+public class ResourceSnapshot {
+
+    /**
+     * Label selector of the child lists, {@code key=value[,key=value]}.
+     */
+    public static final String SELECTOR_PROPERTY = "k8s.snapshot.selector";
+
+    private final String description;
+    private final K8sRequester requester;
+    private final Map<ResourceKind<?>, Map<String, Cached<?>>> resources = new LinkedHashMap<>();
+
+    private ResourceSnapshot(String description, K8sRequester requester) {
+        this.description = description;
+        this.requester = requester;
+    }
+
+    public static Map<String, String> selectorFromSystemProperties() {
+        String selector = System.getProperty(SELECTOR_PROPERTY, "");
+        return Arrays.stream(selector.split(","))
+                .map(String::trim)
+                .filter(label -> !label.isEmpty())
+                .map(label -> label.split("=", 2))
+                .collect(Collectors.toMap(label -> label[0], label -> label.length > 1 ? label[1] : ""));
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> Cached<T> get(ResourceKind<T> kind, String name) {
+        Cached<?> cached = resources.getOrDefault(kind, Collections.emptyMap()).get(name);
+        if (cached == null) {
+            throw new IllegalArgumentException(kind + "/" + name + " isn't part of " + this);
+        }
+        return (Cached<T>) cached;
+    }
+
+    /**
+     * Parsed files of a ConfigMap of the snapshot, reusing what earlier snapshots have parsed.
+     */
+    public ConfigMapFiles.Parsed files(String configMapName) {
+        return requester.getConfigMapFiles().parse(get(CONFIG_MAP, configMapName));
+    }
+
+    private void put(Cached<?> cached) {
+        resources.computeIfAbsent(cached.getKind(), kind -> new LinkedHashMap<>()).put(cached.getName(), cached);
+    }
+
+    @Override
+    public String toString() {
+        return "snapshot of " + description + " " + resources.values().stream()
+                .flatMap(byName -> byName.values().stream())
+                .map(Cached::toString)
+                .collect(Collectors.toList());
+    }
+
+    @RequiredArgsConstructor
+    private static class Owned<T> {
+        private final ResourceKind<?> ownerKind;
+        private final String ownerName;
+        private final ResourceKind<T> kind;
+        private final String name;
+    }
+
+    /**
+     * Declares the owner and the children expected from it, then takes the snapshot with {@link #build()}.
+     */
+    public static class Builder {
+        private final K8sRequester requester;
+        private final Map<String, String> selector;
+        private final List<Cached<?>> owners = new ArrayList<>();
+        private final List<Owned<?>> owned = new ArrayList<>();
+
+        public Builder(K8sRequester requester, Map<String, String> selector) {
+            this.requester = requester;
+            this.selector = selector;
+        }
+
+        /**
+         * Reads the owner itself, so its children are matched by uid as well.
+         */
+        public Builder owner(ResourceKind<?> kind, String name) {
+            owners.add(requester.read(kind, name));
+            return this;
+        }
+
+        /**
+         * Children of the last owner read by {@link #owner}.
+         */
+        public Builder owned(ResourceKind<?> kind, String... names) {
+            if (owners.isEmpty()) {
+                throw new IllegalStateException("Owner isn't declared");
+            }
+            Cached<?> owner = owners.get(owners.size() - 1);
+            return ownedBy(owner.getKind(), owner.getName(), kind, names);
+        }
+
+        /**
+         * Children of an owner that isn't read, matched by its kind and name only.
+         */
+        public <T> Builder ownedBy(ResourceKind<?> ownerKind, String ownerName, ResourceKind<T> kind, String... names) {
+            Arrays.stream(names).forEach(name -> owned.add(new Owned<>(ownerKind, ownerName, kind, name)));
+            return this;
+        }
+
+        public ResourceSnapshot build() {
+            ResourceSnapshot snapshot = new ResourceSnapshot(owners.stream()
+                    .map(owner -> owner.getKind() + "/" + owner.getName())
+                    .collect(Collectors.joining(", ")), requester);
+            owners.forEach(snapshot::put);
+            Map<ResourceKind<?>, List<Owned<?>>> byKind = owned.stream()
+                    .collect(Collectors.groupingBy(child -> child.kind, LinkedHashMap::new, Collectors.toList()));
+            byKind.forEach((kind, children) -> resolve(snapshot, kind, children));
+            log.debug("Took {}", snapshot);
+            return snapshot;
+        }
+
+        @SuppressWarnings("unchecked")
+        private <T> void resolve(ResourceSnapshot snapshot, ResourceKind<T> kind, List<Owned<?>> children) {
+            Listed<T> listed = requester.list(kind, selector);
+            for (Owned<?> child : children) {
+                T resource = resolve(listed.getItems(), (Owned<T>) child);
+                snapshot.put(new Cached<>(kind, child.name, resource,
+                        resource == null ? null : kind.metadata(resource).getResourceVersion(), listed.getResourceVersion()));
+            }
+        }
+
+        private <T> T resolve(List<T> items, Owned<T> child) {
+            String ownerUid = owners.stream()
+                    .filter(owner -> owner.getKind() == child.ownerKind && owner.getName().equals(child.ownerName))
+                    .filter(Cached::exists)
+                    .map(owner -> metadata(owner).getUid())
+                    .findFirst()
+                    .orElse(null);
+            List<T> named = items.stream()
+                    .filter(item -> child.name.equals(child.kind.metadata(item).getName()))
+                    .collect(Collectors.toList());
+            Optional<T> byOwner = named.stream()
+                    .filter(item -> ownerReferences(child.kind.metadata(item)).stream()
+                            .anyMatch(reference -> child.ownerKind.getName().equals(reference.getKind())
+                                    && child.ownerName.equals(reference.getName())
+                                    && (ownerUid == null || ownerUid.equals(reference.getUid()))))
+                    .findFirst();
+            if (byOwner.isPresent()) {
+                return byOwner.get();
+            }
+            return named.stream()
+                    .filter(item -> ownerReferences(child.kind.metadata(item)).isEmpty())
+                    .findFirst()
+                    .orElse(null);
+        }
+
+        private static <T> ObjectMeta metadata(Cached<T> cached) {
+            return cached.getKind().metadata(cached.getResource());
+        }
+
+        private static List<OwnerReference> ownerReferences(ObjectMeta metadata) {
+            return Optional.ofNullable(metadata.getOwnerReferences()).orElse(Collections.emptyList());
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.evil.k8s.operator.test;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.MissingNode;
+import lombok.Value;
+
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Compares an expected manifest against the actual resource in a single traversal and collects every divergence
+ * as a JSON pointer into the actual resource.
+ * <p>
+ * The expected manifest holds only the fields the operator owns:
+ * <ul>
+ *     <li>object fields missing from the expected manifest or null in it aren't compared, the server and other
+ *     controllers add their own;</li>
+ *     <li>arrays Kubernetes merges by key ({@link #MERGE_KEYS}) must contain every expected element, matched by
+ *     that key, in any order;</li>
+ *     <li>other arrays are compared element by element and must have the same length;</li>
+ *     <li>numbers are compared by value, everything else by equality.</li>
+ * </ul>
+ */
+public class StructuralDiff {
+
+    /**
+     * Merge keys of the lists in the manifests, the way strategic merge patch matches their elements.
+     * Candidates are tried in order, the first one present in the expected element is used.
+     */
+    private static final Map<String, List<String>> MERGE_KEYS = Map.of(
+            "env", List.of("name"),
+            "volumes", List.of("name"),
+            "volumeMounts", List.of("mountPath"),
+            "ports", List.of("containerPort", "port"),
+            "configPatches", List.of("applyTo"));
+
+    private final List<Divergence> divergences = new ArrayList<>();
+
+    private StructuralDiff() {
+    }
+
+    public static List<Divergence> diff(JsonNode expected, JsonNode actual) {
+        return diff("", expected, actual);
+    }
+
+    /**
+     * @param path JSON pointer of {@code actual} inside the resource, prefixes every reported path
+     */
+    public static List<Divergence> diff(String path, JsonNode expected, JsonNode actual) {
+        StructuralDiff diff = new StructuralDiff();
+        diff.compare(path, null, expected, actual == null ? MissingNode.getInstance() : actual);
+        return diff.divergences;
+    }
+
+    /**
+     * Fails with all the divergences of the subject, one per line.
+     */
+    public static void assertNoDivergences(Object subject, List<Divergence> divergences) {
+        assertNoDivergences(Collections.singletonMap(subject, divergences));
+    }
+
+    /**
+     * Fails with the divergences of all the subjects at once.
+     */
+    public static void assertNoDivergences(Map<?, List<Divergence>> divergences) {
+        String report = divergences.entrySet().stream()
+                .filter(entry -> !entry.getValue().isEmpty())
+                .map(entry -> entry.getValue().stream()
+                        .map(Divergence::toString)
+                        .collect(Collectors.joining(System.lineSeparator() + "  ",
+                                entry.getKey() + " diverges from the expected manifest:" + System.lineSeparator() + "  ", "")))
+                .collect(Collectors.joining(System.lineSeparator()));
+        if (!report.isEmpty()) {
+            fail(report);
+        }
+    }
+
+    public static String pointer(String path, String field) {
+        return path + "/" + field.replace("~", "~0").replace("/", "~1");
+    }
+
+    private void compare(String path, String field, JsonNode expected, JsonNode actual) {
+        if (expected.isNull()) {
+            return;
+        }
+        if (actual.isMissingNode() || actual.isNull()) {
+            divergences.add(new Divergence(path, expected, MissingNode.getInstance()));
+        } else if (expected.isObject()) {
+            compareObject(path, expected, actual);
+        } else if (expected.isArray()) {
+            compareArray(path, field, expected, actual);
+        } else if (expected.isNumber() && actual.isNumber()
+                ? expected.decimalValue().compareTo(actual.decimalValue()) != 0
+                : !expected.equals(actual)) {
+            divergences.add(new Divergence(path, expected, actual));
+        }
+    }
+
+    private void compareObject(String path, JsonNode expected, JsonNode actual) {
+        if (!actual.isObject()) {
+            divergences.add(new Divergence(path, expected, actual));
+            return;
+        }
+        expected.fields().forEachRemaining(entry -> compare(pointer(path, entry.getKey()), entry.getKey(),
+                entry.getValue(), actual.path(entry.getKey())));
+    }
+
+    private void compareArray(String path, String field, JsonNode expected, JsonNode actual) {
+        if (!actual.isArray()) {
+            divergences.add(new Divergence(path, expected, actual));
+            return;
+        }
+        String key = mergeKey(field, expected);
+        if (key == null) {
+            for (int i = 0; i < Math.max(expected.size(), actual.size()); i++) {
+                if (i < expected.size()) {
+                    compare(path + "/" + i, null, expected.get(i), actual.path(i));
+                } else {
+                    divergences.add(new Divergence(path + "/" + i, MissingNode.getInstance(), actual.get(i)));
+                }
+            }
+            return;
+        }
+        Map<JsonNode, Integer> actualIndexes = new HashMap<>();
+        for (int i = 0; i < actual.size(); i++) {
+            actualIndexes.putIfAbsent(actual.get(i).path(key), i);
+        }
+        for (JsonNode element : expected) {
+            Integer index = actualIndexes.get(element.get(key));
+            if (index == null) {
+                // "-" points past the last element: the expected element isn't there
+                divergences.add(new Divergence(path + "/-", element, MissingNode.getInstance()));
+            } else {
+                compare(path + "/" + index, null, element, actual.get(index));
+            }
+        }
+    }
+
+    /**
+     * @return the merge key every expected element carries or null to compare the arrays element by element
+     */
+    private static String mergeKey(String field, JsonNode expected) {
+        if (field == null || expected.size() == 0) {
+            return null;
+        }
+        for (String key : MERGE_KEYS.getOrDefault(field, Collections.emptyList())) {
+            boolean keyed = true;
+            for (JsonNode element : expected) {
+                keyed &= element.hasNonNull(key);
+            }
+            if (keyed) {
+                return key;
+            }
+        }
+        return null;
+    }
+
+    @Value
+    public static class Divergence {
+        String path;
+        /**
+         * {@link MissingNode} when the actual resource has an element the manifest doesn't expect.
+         */
+        JsonNode expected;
+        /**
+         * {@link MissingNode} when the expected value is absent.
+         */
+        JsonNode actual;
+
+        @Override
+        public String toString() {
+            if (actual.isMissingNode()) {
+                return path + ": expected " + expected + ", absent";
+            }
+            if (expected.isMissingNode()) {
+                return path + ": unexpected " + actual;
+            }
+            return path + ": expected " + expected + ", actual " + actual;
+        }
+    }
+}
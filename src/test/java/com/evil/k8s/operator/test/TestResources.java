@@ -0,0 +1,136 @@
+package com.evil.k8s.operator.test;
+
+import com.evil.k8s.operator.test.ResourceCache.Cached;
+import com.evil.k8s.operator.test.models.ConfigMapRateLimitProperty;
+import com.evil.k8s.operator.test.models.EnvoyGatewayPatch;
+import com.evil.k8s.operator.test.models.RateLimiter;
+import com.evil.k8s.operator.test.models.RateLimiterConfig;
+import com.evil.k8s.operator.test.models.WorkloadSelector;
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
+import io.fabric8.kubernetes.api.model.ObjectMeta;
+import io.fabric8.kubernetes.client.KubernetesClient;
+import lombok.SneakyThrows;
+
+import java.util.*;
+
+import static com.evil.k8s.operator.test.ResourceKind.CONFIG_MAP;
+import static com.evil.k8s.operator.test.models.RateLimiterConfig.Context.GATEWAY;
+import static com.evil.k8s.operator.test.utils.Utils.YAML_MAPPER;
+
+/**
+ * Default RateLimiter and RateLimiterConfig the scenarios start from.
+ */
+public final class TestResources {
+
+    private TestResources() {
+    }
+
+    public static RateLimiter rateLimiter(KubernetesClient client, String namespace, String name) {
+        return new RateLimiter(client)
+                .updateMetadata(objectMeta -> {
+                    objectMeta.setName(name);
+                    objectMeta.setNamespace(namespace);
+                })
+                .setSpec(new RateLimiter.RateLimiterSpec(1, "INFO"));
+    }
+
+    public static RateLimiterConfig rateLimiterConfig(String namespace, String name, String rateLimiterName) {
+        ObjectMeta objectMeta = new ObjectMeta();
+        objectMeta.setName(name);
+        objectMeta.setNamespace(namespace);
+
+        RateLimiterConfig.RateLimit rateLimit = new RateLimiterConfig.RateLimit()
+                .setRequestsPerUnit(1)
+                .setUnit("minute");
+
+        RateLimiterConfig.RateLimiterConfigDescriptors rateLimiterConfigDescriptors =
+                new RateLimiterConfig.RateLimiterConfigDescriptors()
+                        .setKey("header-key")
+                        .setValue("header-val")
+                        .setRateLimit(rateLimit);
+
+        List<RateLimiterConfig.RateLimiterConfigDescriptors> descriptors =
+                Collections.singletonList(rateLimiterConfigDescriptors);
+
+        EnvoyGatewayPatch.RateLimitAction action = new EnvoyGatewayPatch.RateLimitAction()
+                .setRequestHeaders(
+                        new EnvoyGatewayPatch.ActionRequestHeader()
+                                .setDescriptionKey("header-key")
+                                .setHeaderName("header-key"));
+
+        EnvoyGatewayPatch.GatewayRateLimit envoyFilterRateLimit = new EnvoyGatewayPatch.GatewayRateLimit()
+                .setActions(Collections.singletonList(action));
+
+        List<EnvoyGatewayPatch.GatewayRateLimit> rateLimits = Collections.singletonList(envoyFilterRateLimit);
+
+        RateLimiterConfig.RateLimiterConfigSpec rateLimiterConfigSpec =
+                new RateLimiterConfig.RateLimiterConfigSpec()
+                        .setApplyTo(GATEWAY)
+                        .setHost("host-info-srv.org")
+                        .setPort(80)
+                        .setRateLimiter(rateLimiterName)
+                        .setDescriptors(descriptors)
+                        .setRateLimits(rateLimits)
+                        .setRateLimitRequestTimeout("1s")
+                        .setWorkloadSelector(new WorkloadSelector(Collections.singletonMap("app", "application-app")));
+
+        return RateLimiterConfig.builder()
+                .metadata(objectMeta)
+                .spec(rateLimiterConfigSpec)
+                .build();
+    }
+
+    /**
+     * The default config with {@code descriptors} descriptors and as many rate limits, each descriptor nested
+     * {@code depth} levels deep.
+     */
+    public static RateLimiterConfig rateLimiterConfig(String namespace, String name, String rateLimiterName,
+                                                      int descriptors, int depth) {
+        List<RateLimiterConfig.RateLimiterConfigDescriptors> configDescriptors = new ArrayList<>();
+        List<EnvoyGatewayPatch.GatewayRateLimit> rateLimits = new ArrayList<>();
+        for (int i = 0; i < descriptors; i++) {
+            RateLimiterConfig.RateLimiterConfigDescriptors descriptor = null;
+            List<EnvoyGatewayPatch.RateLimitAction> actions = new ArrayList<>();
+            for (int level = depth - 1; level >= 0; level--) {
+                String key = "header-key-" + i + "-" + level;
+                descriptor = new RateLimiterConfig.RateLimiterConfigDescriptors()
+                        .setKey(key)
+                        .setValue("header-val-" + i + "-" + level)
+                        .setRateLimit(new RateLimiterConfig.RateLimit().setRequestsPerUnit(i + 1).setUnit("minute"))
+                        .setRateLimiterConfigDescriptors(descriptor);
+                actions.add(0, new EnvoyGatewayPatch.RateLimitAction()
+                        .setRequestHeaders(new EnvoyGatewayPatch.ActionRequestHeader()
+                                .setDescriptionKey(key)
+                                .setHeaderName(key)));
+            }
+            configDescriptors.add(descriptor);
+            rateLimits.add(new EnvoyGatewayPatch.GatewayRateLimit().setActions(actions));
+        }
+        RateLimiterConfig rateLimiterConfig = rateLimiterConfig(namespace, name, rateLimiterName);
+        rateLimiterConfig.getSpec()
+                .setDescriptors(configDescriptors)
+                .setRateLimits(rateLimits);
+        return rateLimiterConfig;
+    }
+
+    /**
+     * The ConfigMap the operator keeps for the RateLimiter with these configs, as the cache would hold it; for the
+     * code that reads ConfigMap files without a cluster.
+     */
+    @SneakyThrows
+    public static Cached<ConfigMap> rateLimiterConfigMap(String rateLimiterName, String resourceVersion,
+                                                         Collection<RateLimiterConfig> rateLimiterConfigs) {
+        Map<String, String> data = new HashMap<>();
+        for (RateLimiterConfig rateLimiterConfig : rateLimiterConfigs) {
+            data.put(ExpectedManifests.configMapFile(rateLimiterConfig), YAML_MAPPER.writeValueAsString(
+                    new ConfigMapRateLimitProperty(rateLimiterConfig.getMetadata().getName(),
+                            rateLimiterConfig.getSpec().getDescriptors())));
+        }
+        ConfigMap configMap = new ConfigMapBuilder()
+                .withNewMetadata().withName(rateLimiterName).withResourceVersion(resourceVersion).endMetadata()
+                .withData(data)
+                .build();
+        return new Cached<>(CONFIG_MAP, rateLimiterName, configMap, resourceVersion, resourceVersion);
+    }
+}
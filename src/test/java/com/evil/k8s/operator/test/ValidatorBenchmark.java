@@ -0,0 +1,151 @@
+package com.evil.k8s.operator.test;
+
+import com.evil.k8s.operator.test.ResourceCache.Cached;
+import com.evil.k8s.operator.test.StructuralDiff.Divergence;
+import com.evil.k8s.operator.test.models.ConfigMapRateLimitProperty;
+import com.evil.k8s.operator.test.models.RateLimiterConfig;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.fabric8.kubernetes.api.model.ConfigMap;
+import io.fabric8.kubernetes.api.model.ConfigMapBuilder;
+import me.snowdrop.istio.api.networking.v1alpha3.EnvoyFilter;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static com.evil.k8s.operator.test.ResourceKind.CONFIG_MAP;
+import static com.evil.k8s.operator.test.utils.Utils.JSON_MAPPER;
+import static com.evil.k8s.operator.test.utils.Utils.YAML_MAPPER;
+
+/**
+ * CPU cost of the validator logic that runs without the API server: parsing the RateLimiter ConfigMap files and
+ * checking domain uniqueness, rendering the expected EnvoyFilter and diffing it against the actual one.
+ * Run by {@link JmhBenchmarkTest}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ValidatorBenchmark {
+
+    private static final String RATE_LIMITER = "rate-limiter-benchmark";
+
+    @State(Scope.Thread)
+    public static class ConfigMapState {
+
+        /**
+         * Number of RateLimiterConfig files in the ConfigMap.
+         */
+        @Param({"16", "512"})
+        public int files;
+
+        /**
+         * Two versions of the ConfigMap that differ in the content of one file.
+         */
+        private Cached<ConfigMap> first;
+        private Cached<ConfigMap> second;
+        private boolean flip;
+        private ConfigMapFiles configMapFiles;
+        private ConfigMapFiles.Parsed parsed;
+
+        @Setup
+        public void setUp() throws IOException {
+            Map<String, String> data = new HashMap<>();
+            for (int i = 0; i < files; i++) {
+                RateLimiterConfig rateLimiterConfig = TestResources.rateLimiterConfig("benchmark",
+                        "rate-limiter-config-" + i, RATE_LIMITER, 2, 2);
+                data.put(ExpectedManifests.configMapFile(rateLimiterConfig), YAML_MAPPER.writeValueAsString(
+                        new ConfigMapRateLimitProperty(rateLimiterConfig.getMetadata().getName(),
+                                rateLimiterConfig.getSpec().getDescriptors())));
+            }
+            first = configMap(data, "1");
+            String changed = ExpectedManifests.configMapFile(TestResources.rateLimiterConfig("benchmark",
+                    "rate-limiter-config-0", RATE_LIMITER));
+            data.put(changed, data.get(changed).replace("minute", "second"));
+            second = configMap(data, "2");
+            configMapFiles = new ConfigMapFiles();
+            parsed = configMapFiles.parse(first);
+        }
+
+        Cached<ConfigMap> next() {
+            flip = !flip;
+            return flip ? second : first;
+        }
+
+        private static Cached<ConfigMap> configMap(Map<String, String> data, String resourceVersion) {
+            ConfigMap configMap = new ConfigMapBuilder()
+                    .withNewMetadata()
+                    .withName(RATE_LIMITER)
+                    .withResourceVersion(resourceVersion)
+                    .endMetadata()
+                    .withData(new HashMap<>(data))
+                    .build();
+            return new Cached<>(CONFIG_MAP, RATE_LIMITER, configMap, resourceVersion, resourceVersion);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class EnvoyFilterState {
+
+        /**
+         * Number of rate limits in the virtual host patch.
+         */
+        @Param({"1", "32"})
+        public int rateLimits;
+
+        private RateLimiterConfig rateLimiterConfig;
+        private EnvoyFilter actual;
+
+        @Setup
+        public void setUp() {
+            rateLimiterConfig = TestResources.rateLimiterConfig("benchmark", RATE_LIMITER, RATE_LIMITER, rateLimits, 2);
+            ObjectNode envoyFilter = (ObjectNode) ExpectedManifests.envoyFilter(rateLimiterConfig);
+            envoyFilter.put("apiVersion", "networking.istio.io/v1alpha3").put("kind", "EnvoyFilter");
+            envoyFilter.with("metadata").put("name", RATE_LIMITER).put("namespace", "benchmark");
+            actual = JSON_MAPPER.convertValue(envoyFilter, EnvoyFilter.class);
+            List<Divergence> divergences = StructuralDiff.diff(ExpectedManifests.envoyFilter(rateLimiterConfig),
+                    JSON_MAPPER.valueToTree(actual));
+            if (!divergences.isEmpty()) {
+                throw new IllegalStateException("Synthetic EnvoyFilter diverges: " + divergences);
+            }
+        }
+    }
+
+    /**
+     * First validation of a ConfigMap: every file is parsed.
+     */
+    @Benchmark
+    public ConfigMapFiles.Parsed parseAllFiles(ConfigMapState state) {
+        return new ConfigMapFiles().parse(state.first);
+    }
+
+    /**
+     * A new resourceVersion with one file changed: only that file is parsed again.
+     */
+    @Benchmark
+    public ConfigMapFiles.Parsed parseChangedFile(ConfigMapState state) {
+        return state.configMapFiles.parse(state.next());
+    }
+
+    @Benchmark
+    public Set<String> duplicateDomains(ConfigMapState state) {
+        return state.parsed.duplicateDomains();
+    }
+
+    @Benchmark
+    public JsonNode renderEnvoyFilter(EnvoyFilterState state) {
+        return ExpectedManifests.envoyFilter(state.rateLimiterConfig);
+    }
+
+    /**
+     * What the EnvoyFilter validator does with a cached EnvoyFilter: render, convert, diff.
+     */
+    @Benchmark
+    public List<Divergence> diffEnvoyFilter(EnvoyFilterState state) {
+        return StructuralDiff.diff(ExpectedManifests.envoyFilter(state.rateLimiterConfig),
+                JSON_MAPPER.valueToTree(state.actual));
+    }
+}